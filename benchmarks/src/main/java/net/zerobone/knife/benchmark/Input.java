@@ -0,0 +1,34 @@
+package net.zerobone.knife.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Token ids and token values ending with T_EOF, built with add() and finish().
+ */
+public final class Input {
+
+    public int[] tokenIds = new int[64];
+
+    public Object[] tokens = new Object[64];
+
+    public int length = 0;
+
+    void add(int tokenId, Object token) {
+
+        if (length == tokenIds.length) {
+            tokenIds = Arrays.copyOf(tokenIds, length << 1);
+            tokens = Arrays.copyOf(tokens, length << 1);
+        }
+
+        tokenIds[length] = tokenId;
+        tokens[length] = token;
+        length++;
+
+    }
+
+    Input finish(int eof) {
+        add(eof, null);
+        return this;
+    }
+
+}
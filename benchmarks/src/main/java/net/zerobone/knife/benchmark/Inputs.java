@@ -0,0 +1,240 @@
+package net.zerobone.knife.benchmark;
+
+import net.zerobone.knife.lexer.Lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Deterministic inputs of at least the requested number of tokens for every grammar.
+ */
+public final class Inputs {
+
+    private static final String[] grammarFiles = {
+        "epsilonelim.kn",
+        "factorterm.kn",
+        "factortermlr.kn",
+        "knife.kn",
+        "leftrecursive.kn",
+        "lrvalues.kn",
+        "manycycles.kn",
+        "prefix.kn",
+        "sa.kn",
+        "unreachable.kn"
+    };
+
+    private Inputs() {}
+
+    public static Input create(String grammar, int size) {
+
+        switch (grammar) {
+
+            case "knife":
+                return knife(size);
+
+            case "factorterm":
+                return factorterm(size);
+
+            case "prefix":
+                return prefix(size);
+
+            case "sa":
+                return sa(size);
+
+            default:
+                throw new IllegalArgumentException("Unknown grammar '" + grammar + "'.");
+
+        }
+
+    }
+
+    /**
+     * The bundled grammars lexed by knife's own lexer, repeated file by file until size is reached.
+     */
+    private static Input knife(int size) {
+
+        // the lexer produces the token ids of knife's bootstrap parser
+        checkSameTerminals(net.zerobone.knife.parser.Parser.class, net.zerobone.knife.benchmark.knife.nodes.Parser.class);
+
+        Input input = new Input();
+
+        while (input.length < size) {
+
+            for (String grammarFile : grammarFiles) {
+
+                InputStream stream = Inputs.class.getResourceAsStream("/grammars/" + grammarFile);
+
+                if (stream == null) {
+                    throw new IllegalStateException("Grammar '" + grammarFile + "' is missing from the resources.");
+                }
+
+                try {
+
+                    Lexer lexer = new Lexer(stream);
+
+                    for (;;) {
+
+                        int tokenId = lexer.next();
+
+                        if (tokenId == net.zerobone.knife.parser.Parser.T_EOF) {
+                            break;
+                        }
+
+                        input.add(tokenId, lexer.token());
+
+                    }
+
+                    stream.close();
+
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                if (input.length >= size) {
+                    break;
+                }
+
+            }
+
+        }
+
+        return input.finish(net.zerobone.knife.parser.Parser.T_EOF);
+
+    }
+
+    private static void checkSameTerminals(Class<?> expected, Class<?> actual) {
+
+        for (Field field : expected.getFields()) {
+
+            if (!field.getName().startsWith("T_")) {
+                continue;
+            }
+
+            try {
+                if (field.getInt(null) != actual.getField(field.getName()).getInt(null)) {
+                    throw new IllegalStateException("Terminal " + field.getName() + " has a different id in " + actual.getName() + ".");
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+
+        }
+
+    }
+
+    /**
+     * A sum of products with parenthesized subexpressions nested up to 4 levels deep.
+     */
+    private static Input factorterm(int size) {
+
+        Random random = new Random(42);
+
+        Input input = new Input();
+
+        factortermTerm(input, random, 0);
+
+        while (input.length < size) {
+            input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_PLUS, null);
+            factortermTerm(input, random, 0);
+        }
+
+        return input.finish(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_EOF);
+
+    }
+
+    private static void factortermTerm(Input input, Random random, int depth) {
+
+        factortermFactor(input, random, depth);
+
+        while (random.nextInt(3) == 0) {
+            input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_MUL, null);
+            factortermFactor(input, random, depth);
+        }
+
+    }
+
+    private static void factortermFactor(Input input, Random random, int depth) {
+
+        if (depth == 4 || random.nextInt(4) != 0) {
+            input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_ID, "x");
+            return;
+        }
+
+        input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_LEFT_PAREN, null);
+
+        factortermTerm(input, random, depth + 1);
+
+        while (random.nextInt(2) == 0) {
+            input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_PLUS, null);
+            factortermTerm(input, random, depth + 1);
+        }
+
+        input.add(net.zerobone.knife.benchmark.factorterm.nodes.Parser.T_RIGHT_PAREN, null);
+
+    }
+
+    /**
+     * A random prefix expression, which nests to a depth logarithmic in its size.
+     */
+    private static Input prefix(int size) {
+
+        Random random = new Random(42);
+
+        Input input = new Input();
+
+        // an expression with n operands consists of 2n - 1 tokens
+        prefixExpression(input, random, Math.max(1, (size + 2) / 2));
+
+        return input.finish(net.zerobone.knife.benchmark.prefix.nodes.Parser.T_EOF);
+
+    }
+
+    private static void prefixExpression(Input input, Random random, int operands) {
+
+        if (operands == 1) {
+            input.add(net.zerobone.knife.benchmark.prefix.nodes.Parser.T_ID, random.nextInt(100));
+            return;
+        }
+
+        switch (random.nextInt(3)) {
+            case 0:
+                input.add(net.zerobone.knife.benchmark.prefix.nodes.Parser.T_PLUS, null);
+                break;
+            case 1:
+                input.add(net.zerobone.knife.benchmark.prefix.nodes.Parser.T_MINUS, null);
+                break;
+            default:
+                input.add(net.zerobone.knife.benchmark.prefix.nodes.Parser.T_MUL, null);
+                break;
+        }
+
+        int left = 1 + random.nextInt(operands - 1);
+
+        prefixExpression(input, random, left);
+        prefixExpression(input, random, operands - left);
+
+    }
+
+    /**
+     * B...B A, parsed through a right-recursive production.
+     */
+    private static Input sa(int size) {
+
+        Input input = new Input();
+
+        while (input.length < size - 1) {
+            input.add(net.zerobone.knife.benchmark.sa.nodes.Parser.T_B, null);
+        }
+
+        input.add(net.zerobone.knife.benchmark.sa.nodes.Parser.T_A, null);
+
+        return input.finish(net.zerobone.knife.benchmark.sa.nodes.Parser.T_EOF);
+
+    }
+
+}
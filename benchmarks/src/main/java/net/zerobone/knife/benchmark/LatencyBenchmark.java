@@ -0,0 +1,43 @@
+package net.zerobone.knife.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to reset a parser and parse a small input, which is dominated by the fixed cost of a parse.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LatencyBenchmark {
+
+    @Param({"knife", "factorterm", "prefix", "sa"})
+    public String grammar;
+
+    @Param({"nodes", "frames", "values", "compressed", "rd"})
+    public String variant;
+
+    @Param({"16"})
+    public int size;
+
+    private Input input;
+
+    private ParseFunction parser;
+
+    @Setup
+    public void setup() {
+        input = Inputs.create(grammar, size);
+        parser = Parsers.create(grammar, variant);
+        Parsers.requireAccepted(parser.parse(input.tokenIds, input.tokens, input.length));
+    }
+
+    @Benchmark
+    public Object parse() {
+        return parser.parse(input.tokenIds, input.tokens, input.length);
+    }
+
+}
@@ -0,0 +1,15 @@
+package net.zerobone.knife.benchmark;
+
+/**
+ * Common view of the parsers generated for the benchmarks, which share no type.
+ */
+@FunctionalInterface
+public interface ParseFunction {
+
+    /**
+     * Resets the parser and parses the tokens, the last of which is T_EOF.
+     * @return value of the start symbol, or Parsers.SyntaxErrors if the input contains syntax errors
+     */
+    Object parse(int[] tokenIds, Object[] tokens, int length);
+
+}
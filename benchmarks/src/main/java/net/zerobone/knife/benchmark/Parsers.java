@@ -0,0 +1,351 @@
+package net.zerobone.knife.benchmark;
+
+/**
+ * Creates the parsers generated from run/*.kn by the pom, one package per grammar and variant:
+ * <ul>
+ *     <li>nodes: table backend with the default parse node stack</li>
+ *     <li>frames: table backend with --stack=frames</li>
+ *     <li>values: table backend with --stack=values</li>
+ *     <li>compressed: table backend with --stack=values --table=compressed</li>
+ *     <li>rd: --backend=recursive-descent</li>
+ * </ul>
+ */
+public final class Parsers {
+
+    private Parsers() {}
+
+    /**
+     * Result of a parse that found syntax errors, the parsers recover from them and read the whole input.
+     */
+    public static final class SyntaxErrors {
+
+        public final int count;
+
+        SyntaxErrors(int count) {
+            this.count = count;
+        }
+
+    }
+
+    /**
+     * @return the result if the input was accepted
+     * @throws IllegalStateException if the input contains a syntax error
+     */
+    public static Object requireAccepted(Object result) {
+
+        if (result instanceof SyntaxErrors) {
+            throw new IllegalStateException("The benchmark input contains a syntax error.");
+        }
+
+        return result;
+
+    }
+
+    public static ParseFunction create(String grammar, String variant) {
+
+        switch (grammar) {
+
+            case "knife":
+                return knife(variant);
+
+            case "factorterm":
+                return factorterm(variant);
+
+            case "prefix":
+                return prefix(variant);
+
+            case "sa":
+                return sa(variant);
+
+            default:
+                throw new IllegalArgumentException("Unknown grammar '" + grammar + "'.");
+
+        }
+
+    }
+
+    private static ParseFunction knife(String variant) {
+
+        switch (variant) {
+
+            case "nodes": {
+                net.zerobone.knife.benchmark.knife.nodes.Parser parser = new net.zerobone.knife.benchmark.knife.nodes.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "frames": {
+                net.zerobone.knife.benchmark.knife.frames.Parser parser = new net.zerobone.knife.benchmark.knife.frames.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "values": {
+                net.zerobone.knife.benchmark.knife.values.Parser parser = new net.zerobone.knife.benchmark.knife.values.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "compressed": {
+                net.zerobone.knife.benchmark.knife.compressed.Parser parser = new net.zerobone.knife.benchmark.knife.compressed.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "rd": {
+                net.zerobone.knife.benchmark.knife.rd.Parser parser = new net.zerobone.knife.benchmark.knife.rd.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown variant '" + variant + "'.");
+
+        }
+
+    }
+
+    private static ParseFunction factorterm(String variant) {
+
+        switch (variant) {
+
+            case "nodes": {
+                net.zerobone.knife.benchmark.factorterm.nodes.Parser parser = new net.zerobone.knife.benchmark.factorterm.nodes.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "frames": {
+                net.zerobone.knife.benchmark.factorterm.frames.Parser parser = new net.zerobone.knife.benchmark.factorterm.frames.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "values": {
+                net.zerobone.knife.benchmark.factorterm.values.Parser parser = new net.zerobone.knife.benchmark.factorterm.values.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "compressed": {
+                net.zerobone.knife.benchmark.factorterm.compressed.Parser parser = new net.zerobone.knife.benchmark.factorterm.compressed.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "rd": {
+                net.zerobone.knife.benchmark.factorterm.rd.Parser parser = new net.zerobone.knife.benchmark.factorterm.rd.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown variant '" + variant + "'.");
+
+        }
+
+    }
+
+    private static ParseFunction prefix(String variant) {
+
+        switch (variant) {
+
+            case "nodes": {
+                net.zerobone.knife.benchmark.prefix.nodes.Parser parser = new net.zerobone.knife.benchmark.prefix.nodes.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "frames": {
+                net.zerobone.knife.benchmark.prefix.frames.Parser parser = new net.zerobone.knife.benchmark.prefix.frames.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "values": {
+                net.zerobone.knife.benchmark.prefix.values.Parser parser = new net.zerobone.knife.benchmark.prefix.values.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "compressed": {
+                net.zerobone.knife.benchmark.prefix.compressed.Parser parser = new net.zerobone.knife.benchmark.prefix.compressed.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "rd": {
+                net.zerobone.knife.benchmark.prefix.rd.Parser parser = new net.zerobone.knife.benchmark.prefix.rd.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown variant '" + variant + "'.");
+
+        }
+
+    }
+
+    private static ParseFunction sa(String variant) {
+
+        switch (variant) {
+
+            case "nodes": {
+                net.zerobone.knife.benchmark.sa.nodes.Parser parser = new net.zerobone.knife.benchmark.sa.nodes.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "frames": {
+                net.zerobone.knife.benchmark.sa.frames.Parser parser = new net.zerobone.knife.benchmark.sa.frames.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "values": {
+                net.zerobone.knife.benchmark.sa.values.Parser parser = new net.zerobone.knife.benchmark.sa.values.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "compressed": {
+                net.zerobone.knife.benchmark.sa.compressed.Parser parser = new net.zerobone.knife.benchmark.sa.compressed.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            case "rd": {
+                net.zerobone.knife.benchmark.sa.rd.Parser parser = new net.zerobone.knife.benchmark.sa.rd.Parser();
+                return (tokenIds, tokens, length) -> {
+                    parser.reset();
+                    parser.parse(tokenIds, tokens, 0, length);
+                    if (!parser.successfullyParsed()) {
+                        return new SyntaxErrors(parser.getErrorCount());
+                    }
+                    return parser.getValue();
+                };
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown variant '" + variant + "'.");
+
+        }
+
+    }
+
+}
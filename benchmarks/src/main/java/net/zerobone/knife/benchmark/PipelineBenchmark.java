@@ -0,0 +1,213 @@
+package net.zerobone.knife.benchmark;
+
+import net.zerobone.knife.generator.Generator;
+import net.zerobone.knife.generator.GeneratorContext;
+import net.zerobone.knife.generator.GeneratorOptions;
+import net.zerobone.knife.grammar.Grammar;
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.grammar.verification.VerificationError;
+import net.zerobone.knife.synthetic.GrammarSynthesizer;
+import net.zerobone.knife.synthetic.SynthesizerOptions;
+import net.zerobone.knife.synthetic.SyntheticGrammar;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per phase of knife, run on grammars written by the GrammarSynthesizer with 4 productions per non-terminal.
+ * Every phase gets a grammar on which none of the measured work has been done yet,
+ * because the grammar caches its FIRST and FOLLOW sets and the eliminations modify it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Grammars {
+
+        @Param({"300", "3000"})
+        public int nonTerminals;
+
+        SyntheticGrammar ll1;
+
+        SyntheticGrammar leftRecursive;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ll1 = GrammarSynthesizer.synthesize(options(true));
+            leftRecursive = GrammarSynthesizer.synthesize(options(false));
+        }
+
+        private SynthesizerOptions options(boolean ll1) {
+
+            SynthesizerOptions options = new SynthesizerOptions();
+
+            options.terminals = 128;
+            options.nonTerminals = nonTerminals;
+            options.productions = 4 * nonTerminals;
+            options.nullable = nonTerminals / 10;
+            options.leftRecursiveCycles = ll1 ? 0 : nonTerminals / 20;
+            options.ll1 = ll1;
+            options.seed = 42;
+
+            return options;
+
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class FreshGrammar {
+
+        Grammar grammar;
+
+        @Setup(Level.Invocation)
+        public void setup(Grammars grammars) {
+            grammar = grammars.ll1.toGrammar();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class GrammarWithFirstSets {
+
+        Grammar grammar;
+
+        @Setup(Level.Invocation)
+        public void setup(Grammars grammars) {
+            grammar = grammars.ll1.toGrammar();
+            grammar.getFirstSets();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class GrammarWithFollowSets {
+
+        Grammar grammar;
+
+        @Setup(Level.Invocation)
+        public void setup(Grammars grammars) {
+            grammar = grammars.ll1.toGrammar();
+            grammar.getFollowSets();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class LeftRecursiveGrammar {
+
+        Grammar grammar;
+
+        @Setup(Level.Invocation)
+        public void setup(Grammars grammars) {
+            grammar = grammars.leftRecursive.toGrammar();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class LeftRecursiveGrammarWithoutEpsilon {
+
+        Grammar grammar;
+
+        @Setup(Level.Invocation)
+        public void setup(Grammars grammars) {
+            // knife eliminates epsilon productions before left recursion
+            grammar = grammars.leftRecursive.toGrammar();
+            grammar.eliminateEpsilonProductions();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Generation {
+
+        GeneratorContext context;
+
+        File outputDirectory;
+
+        @Setup(Level.Trial)
+        public void setup(Grammars grammars) throws IOException {
+
+            ParsingTable table = grammars.ll1.toGrammar().constructParsingTable();
+
+            if (table.conflicts.length != 0) {
+                throw new IllegalStateException("The synthetic grammar is not LL(1).");
+            }
+
+            outputDirectory = Files.createTempDirectory("knife-benchmark").toFile();
+
+            GeneratorOptions options = new GeneratorOptions();
+
+            options.outputDirectory = outputDirectory.getPath();
+
+            context = new GeneratorContext("net.zerobone.knife.benchmark.generated", table, new HashMap<>(), options);
+
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+
+            File[] files = outputDirectory.listFiles();
+
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+
+            outputDirectory.delete();
+
+        }
+
+    }
+
+    @Benchmark
+    public HashMap<Integer, HashSet<Integer>> firstSets(FreshGrammar state) {
+        return state.grammar.getFirstSets();
+    }
+
+    @Benchmark
+    public HashMap<Integer, HashSet<Integer>> followSets(GrammarWithFirstSets state) {
+        return state.grammar.getFollowSets();
+    }
+
+    @Benchmark
+    public ParsingTable constructParsingTable(GrammarWithFollowSets state) {
+        return state.grammar.constructParsingTable();
+    }
+
+    @Benchmark
+    public ArrayList<VerificationError> verify(FreshGrammar state) {
+        return state.grammar.verify();
+    }
+
+    @Benchmark
+    public Grammar eliminateEpsilonProductions(LeftRecursiveGrammar state) {
+        state.grammar.eliminateEpsilonProductions();
+        return state.grammar;
+    }
+
+    @Benchmark
+    public Grammar eliminateLeftRecursion(LeftRecursiveGrammarWithoutEpsilon state) {
+        state.grammar.eliminateLeftRecursion();
+        return state.grammar;
+    }
+
+    @Benchmark
+    public GeneratorContext generate(Generation state) throws IOException {
+        Generator.generate(state.context);
+        return state.context;
+    }
+
+}
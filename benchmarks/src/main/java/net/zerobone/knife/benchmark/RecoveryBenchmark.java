@@ -0,0 +1,57 @@
+package net.zerobone.knife.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a random sentence of about size tokens, derived from the grammar by knife's SentenceGenerator.
+ * With an errorRate above 0, every token is deleted, replaced or preceded by a random token with that
+ * probability, so part of the time goes into recovering from syntax errors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecoveryBenchmark {
+
+    @Param({"knife", "factorterm", "prefix"})
+    public String grammar;
+
+    @Param({"nodes", "frames", "values", "compressed", "rd"})
+    public String variant;
+
+    @Param({"0", "0.001", "0.01"})
+    public double errorRate;
+
+    @Param({"10000"})
+    public int size;
+
+    private Input input;
+
+    private ParseFunction parser;
+
+    @Setup
+    public void setup() {
+
+        input = Sentences.create(grammar, size, errorRate);
+
+        parser = Parsers.create(grammar, variant);
+
+        Object result = parser.parse(input.tokenIds, input.tokens, input.length);
+
+        if (errorRate == 0) {
+            Parsers.requireAccepted(result);
+        }
+
+    }
+
+    @Benchmark
+    public Object parse(ThroughputBenchmark.TokenCounter counter) {
+        counter.tokens += input.length;
+        return parser.parse(input.tokenIds, input.tokens, input.length);
+    }
+
+}
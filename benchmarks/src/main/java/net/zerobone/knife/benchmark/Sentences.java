@@ -0,0 +1,195 @@
+package net.zerobone.knife.benchmark;
+
+import net.zerobone.knife.ast.TranslationUnitNode;
+import net.zerobone.knife.ast.entities.ProductionSymbol;
+import net.zerobone.knife.ast.statements.ProductionStatementNode;
+import net.zerobone.knife.ast.statements.StatementNode;
+import net.zerobone.knife.grammar.Grammar;
+import net.zerobone.knife.grammar.Production;
+import net.zerobone.knife.grammar.Symbol;
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.lexer.Lexer;
+import net.zerobone.knife.lexer.tokens.CodeToken;
+import net.zerobone.knife.lexer.tokens.IdToken;
+import net.zerobone.knife.lexer.tokens.RegexToken;
+import net.zerobone.knife.lexer.tokens.Token;
+import net.zerobone.knife.synthetic.Sentence;
+import net.zerobone.knife.synthetic.SentenceGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Random sentences of the grammars in run, derived from their parsing tables by knife's SentenceGenerator.
+ */
+public final class Sentences {
+
+    private Sentences() {}
+
+    public static Input create(String grammar, int size, double errorRate) {
+
+        ParsingTable table = loadTable(grammar);
+
+        checkTerminals(table, parserClass(grammar));
+
+        SentenceGenerator generator = new SentenceGenerator(table, 42);
+
+        generator.setTargetLength(size);
+
+        generator.setErrorRate(errorRate);
+
+        generator.setTokenFactory(tokenFactory(grammar));
+
+        Sentence sentence = generator.generate();
+
+        Input input = new Input();
+
+        // the sentence already ends with the end of input
+        for (int i = 0; i < sentence.length() - 1; i++) {
+            input.add(sentence.tokenIds[i], sentence.tokens[i]);
+        }
+
+        return input.finish(sentence.tokenIds[sentence.length() - 1]);
+
+    }
+
+    private static Class<?> parserClass(String grammar) {
+
+        switch (grammar) {
+
+            case "knife":
+                return net.zerobone.knife.benchmark.knife.nodes.Parser.class;
+
+            case "factorterm":
+                return net.zerobone.knife.benchmark.factorterm.nodes.Parser.class;
+
+            case "prefix":
+                return net.zerobone.knife.benchmark.prefix.nodes.Parser.class;
+
+            case "sa":
+                return net.zerobone.knife.benchmark.sa.nodes.Parser.class;
+
+            default:
+                throw new IllegalArgumentException("Unknown grammar '" + grammar + "'.");
+
+        }
+
+    }
+
+    /**
+     * Token values the semantic actions of the grammars expect.
+     */
+    private static IntFunction<Object> tokenFactory(String grammar) {
+
+        switch (grammar) {
+
+            case "knife":
+                return tokenId -> {
+                    switch (tokenId) {
+                        case net.zerobone.knife.parser.Parser.T_ID:
+                            return new IdToken(1, "x");
+                        case net.zerobone.knife.parser.Parser.T_CODE:
+                            return new CodeToken(1, "");
+                        case net.zerobone.knife.parser.Parser.T_REGEX:
+                            return new RegexToken(1, "x");
+                        default:
+                            return new Token(1, tokenId);
+                    }
+                };
+
+            case "factorterm":
+                return tokenId -> "x";
+
+            case "prefix":
+                return tokenId -> 1;
+
+            default:
+                return null;
+
+        }
+
+    }
+
+    private static ParsingTable loadTable(String grammar) {
+
+        InputStream stream = Sentences.class.getResourceAsStream("/grammars/" + grammar + ".kn");
+
+        if (stream == null) {
+            throw new IllegalStateException("Grammar '" + grammar + "' is missing from the resources.");
+        }
+
+        net.zerobone.knife.parser.Parser parser = new net.zerobone.knife.parser.Parser();
+
+        try {
+            parser.parseAll(new Lexer(stream));
+            stream.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (!parser.successfullyParsed()) {
+            throw new IllegalStateException("Grammar '" + grammar + "' contains a syntax error.");
+        }
+
+        Grammar result = null;
+
+        for (StatementNode statement : ((TranslationUnitNode)parser.getValue()).statements) {
+
+            if (!(statement instanceof ProductionStatementNode)) {
+                continue;
+            }
+
+            ProductionStatementNode productionStatement = (ProductionStatementNode)statement;
+
+            Production production = new Production(productionStatement.code);
+
+            for (ProductionSymbol symbol : productionStatement.production) {
+                production.append(new Symbol(symbol.id, symbol.terminal, symbol.argument));
+            }
+
+            if (result == null) {
+                result = new Grammar(productionStatement.nonTerminal, production);
+            }
+            else {
+                result.addProduction(productionStatement.nonTerminal, production);
+            }
+
+        }
+
+        if (result == null) {
+            throw new IllegalStateException("Grammar '" + grammar + "' has no productions.");
+        }
+
+        return result.constructParsingTable();
+
+    }
+
+    /**
+     * The table is built the same way as by knife, so its terminal ids are those of the generated parser.
+     */
+    private static void checkTerminals(ParsingTable table, Class<?> parserClass) {
+
+        for (Map.Entry<String, Integer> entry : table.mapping.keyValueEntrySet()) {
+
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+
+            try {
+                if (parserClass.getField("T_" + entry.getKey()).getInt(null) != entry.getValue()) {
+                    throw new IllegalStateException("Terminal " + entry.getKey() + " has a different id in " + parserClass.getName() + ".");
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+
+        }
+
+    }
+
+}
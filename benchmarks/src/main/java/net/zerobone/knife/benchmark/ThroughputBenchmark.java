@@ -0,0 +1,60 @@
+package net.zerobone.knife.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses inputs of about size tokens. The tokens counter is reported in tokens per second,
+ * with -prof gc the allocation per token is gc.alloc.rate.norm divided by size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThroughputBenchmark {
+
+    @Param({"knife", "factorterm", "prefix"})
+    public String grammar;
+
+    @Param({"nodes", "frames", "values", "compressed", "rd"})
+    public String variant;
+
+    // the recursive-descent parsers recurse once per list element, so keep it moderate
+    @Param({"10000"})
+    public int size;
+
+    private Input input;
+
+    private ParseFunction parser;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class TokenCounter {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            tokens = 0;
+        }
+
+    }
+
+    @Setup
+    public void setup() {
+        input = Inputs.create(grammar, size);
+        parser = Parsers.create(grammar, variant);
+        // fails before the measurement if the input is not accepted
+        Parsers.requireAccepted(parser.parse(input.tokenIds, input.tokens, input.length));
+    }
+
+    @Benchmark
+    public Object parse(TokenCounter counter) {
+        counter.tokens += input.length;
+        return parser.parse(input.tokenIds, input.tokens, input.length);
+    }
+
+}
@@ -0,0 +1,11 @@
+package net.zerobone.knife.benchmark.grammar;
+
+public class IdNode {
+
+    public final Object id;
+
+    public IdNode(Object id) {
+        this.id = id;
+    }
+
+}
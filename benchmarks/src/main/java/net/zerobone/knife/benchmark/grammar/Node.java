@@ -0,0 +1,17 @@
+package net.zerobone.knife.benchmark.grammar;
+
+/**
+ * Value of the expressions of factorterm.kn.
+ */
+public class Node {
+
+    public final Object term;
+
+    public final Object rest;
+
+    public Node(Object term, Object rest) {
+        this.term = term;
+        this.rest = rest;
+    }
+
+}
@@ -4,9 +4,11 @@ import net.zerobone.knife.ast.TranslationUnitNode;
 import net.zerobone.knife.ast.entities.ProductionSymbol;
 import net.zerobone.knife.ast.statements.ProductionStatementNode;
 import net.zerobone.knife.ast.statements.StatementNode;
+import net.zerobone.knife.ast.statements.TokenStatementNode;
 import net.zerobone.knife.ast.statements.TypeStatementNode;
 import net.zerobone.knife.generator.Generator;
 import net.zerobone.knife.generator.GeneratorContext;
+import net.zerobone.knife.generator.GeneratorOptions;
 import net.zerobone.knife.grammar.Grammar;
 import net.zerobone.knife.grammar.table.ParsingTableConflict;
 import net.zerobone.knife.grammar.verification.VerificationError;
@@ -16,9 +18,13 @@ import net.zerobone.knife.grammar.Symbol;
 import net.zerobone.knife.lexer.Lexer;
 import net.zerobone.knife.lexer.LexerException;
 import net.zerobone.knife.lexer.tokens.Token;
+import net.zerobone.knife.lexical.LexerAutomaton;
+import net.zerobone.knife.lexical.RegexException;
+import net.zerobone.knife.lexical.TokenDefinition;
 import net.zerobone.knife.parser.ParseError;
 import net.zerobone.knife.parser.ParseUtils;
 import net.zerobone.knife.parser.Parser;
+import net.zerobone.knife.utils.StringUtils;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -34,9 +40,15 @@ public class Knife {
 
     private final HashMap<String, String> typeMap;
 
-    private Knife(Grammar grammar, HashMap<String, String> typeMap) {
+    private final ArrayList<TokenDefinition> tokens;
+
+    private final GeneratorOptions options;
+
+    private Knife(Grammar grammar, HashMap<String, String> typeMap, ArrayList<TokenDefinition> tokens, GeneratorOptions options) {
         this.grammar = grammar;
         this.typeMap = typeMap;
+        this.tokens = tokens;
+        this.options = options;
     }
 
     private void handleErrors(ArrayList<VerificationError> errors) {
@@ -75,7 +87,7 @@ public class Knife {
 
         try {
 
-            BufferedWriter grammarWriter = new BufferedWriter(new FileWriter("fixed_grammar.kn.txt"));
+            BufferedWriter grammarWriter = new BufferedWriter(new FileWriter(new File(options.outputDirectory, "fixed_grammar.kn.txt")));
 
             grammarWriter.write(grammar.toString());
 
@@ -106,9 +118,60 @@ public class Knife {
 
     }
 
+    /**
+     * @return the automaton of the token definitions, null if there are none or they are invalid
+     */
+    private LexerAutomaton constructLexer(ParsingTable table) {
+
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        HashSet<String> definedTerminals = new HashSet<>();
+
+        boolean valid = true;
+
+        for (TokenDefinition token : tokens) {
+
+            if (token.terminal == null) {
+                continue;
+            }
+
+            if (!table.mapping.containsKey(token.terminal) || table.mapping.mapKey(token.terminal) <= 0) {
+                System.err.println("Error: Token '" + token.terminal + "' is not a terminal of the grammar.");
+                valid = false;
+            }
+
+            definedTerminals.add(token.terminal);
+
+        }
+
+        for (String symbol : table.mapping.keys()) {
+
+            if (table.mapping.mapKey(symbol) > 0 && !definedTerminals.contains(symbol)) {
+                System.err.println("Error: Terminal '" + symbol + "' has no %token definition.");
+                valid = false;
+            }
+
+        }
+
+        if (!valid) {
+            return null;
+        }
+
+        try {
+            return LexerAutomaton.construct(tokens);
+        }
+        catch (RegexException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+
+    }
+
     private void exportDebugInfo(ParsingTable table) throws IOException {
 
-        BufferedWriter debugLogWriter = new BufferedWriter(new FileWriter("debug.log"));
+        BufferedWriter debugLogWriter = new BufferedWriter(new FileWriter(new File(options.outputDirectory, "debug.log")));
 
         debugLogWriter.write("Grammar:");
         debugLogWriter.newLine();
@@ -257,7 +320,40 @@ public class Knife {
             System.err.println("I/O error: " + e.getMessage());
         }
 
-        GeneratorContext context = new GeneratorContext("net.zerobone.knife.parser", table, typeMap);
+        if (options.chunkSymbol != null) {
+
+            if (!table.mapping.containsKey(options.chunkBoundary)) {
+                System.err.println("Error: The chunk boundary '" + options.chunkBoundary + "' is not a terminal of the grammar.");
+                return;
+            }
+
+            if (!table.mapping.containsKey(options.chunkSymbol)) {
+                System.err.println("Error: The chunk symbol '" + options.chunkSymbol + "' is not a non-terminal of the grammar.");
+                return;
+            }
+
+        }
+
+        LexerAutomaton lexer = constructLexer(table);
+
+        if (lexer == null && !tokens.isEmpty()) {
+            return;
+        }
+
+        GeneratorContext context = new GeneratorContext(options.packageName, table, typeMap, options);
+
+        context.setLexer(lexer);
+
+        if (options.tokenStore) {
+
+            String tokenStoreError = context.checkTokenStoreTypes();
+
+            if (tokenStoreError != null) {
+                System.err.println("Error: " + tokenStoreError);
+                return;
+            }
+
+        }
 
         try {
             Generator.generate(context);
@@ -283,17 +379,169 @@ public class Knife {
 
     }
 
+    private static boolean parseOption(String option, GeneratorOptions options) {
+
+        final String maxErrorsOption = "--max-errors=";
+
+        final String chunkBoundaryOption = "--chunk-boundary=";
+
+        final String chunkSymbolOption = "--chunk-symbol=";
+
+        final String packageOption = "--package=";
+
+        final String importOption = "--import=";
+
+        final String outputOption = "--output=";
+
+        if (option.startsWith(packageOption)) {
+            options.packageName = option.substring(packageOption.length());
+            return !options.packageName.isEmpty();
+        }
+
+        if (option.startsWith(outputOption)) {
+            options.outputDirectory = option.substring(outputOption.length());
+            return !options.outputDirectory.isEmpty();
+        }
+
+        if (option.startsWith(importOption)) {
+            String name = option.substring(importOption.length());
+            options.imports.add(name);
+            return !name.isEmpty();
+        }
+
+        if (option.startsWith(chunkBoundaryOption)) {
+            options.chunkBoundary = option.substring(chunkBoundaryOption.length());
+            return !options.chunkBoundary.isEmpty() && StringUtils.isTerminal(options.chunkBoundary);
+        }
+
+        if (option.startsWith(chunkSymbolOption)) {
+            options.chunkSymbol = option.substring(chunkSymbolOption.length());
+            return !options.chunkSymbol.isEmpty() && StringUtils.isNonTerminal(options.chunkSymbol);
+        }
+
+        if (option.startsWith(maxErrorsOption)) {
+
+            try {
+                options.maxErrors = Integer.parseInt(option.substring(maxErrorsOption.length()));
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+
+            return options.maxErrors >= 0;
+
+        }
+
+        switch (option) {
+
+            case "--backend=table":
+                options.backend = GeneratorOptions.Backend.TABLE;
+                return true;
+
+            case "--backend=recursive-descent":
+                options.backend = GeneratorOptions.Backend.RECURSIVE_DESCENT;
+                return true;
+
+            case "--table=dense":
+                options.table = GeneratorOptions.TableEncoding.DENSE;
+                return true;
+
+            case "--table=compressed":
+                options.table = GeneratorOptions.TableEncoding.COMPRESSED;
+                return true;
+
+            case "--stack=nodes":
+                options.stack = GeneratorOptions.StackMode.NODES;
+                return true;
+
+            case "--stack=frames":
+                options.stack = GeneratorOptions.StackMode.FRAMES;
+                return true;
+
+            case "--stack=values":
+                options.stack = GeneratorOptions.StackMode.VALUES;
+                return true;
+
+            case "--fail-fast":
+                options.maxErrors = 1;
+                return true;
+
+            case "--error-codes":
+                options.recordErrors = false;
+                return true;
+
+            case "--listener":
+                options.listener = true;
+                return true;
+
+            case "--token-store":
+                options.tokenStore = true;
+                return true;
+
+            case "--metrics":
+                options.metrics = true;
+                return true;
+
+            case "--jfr":
+                options.events = true;
+                return true;
+
+            case "--incremental":
+                options.incremental = true;
+                return true;
+
+            default:
+                return false;
+
+        }
+
+    }
+
     public static void main(String[] args) {
 
-        if (args.length == 1) {
+        GeneratorOptions options = new GeneratorOptions();
+
+        String fileName = null;
+
+        for (String arg : args) {
+
+            if (!arg.startsWith("--")) {
+
+                if (fileName != null) {
+                    fileName = null;
+                    break;
+                }
+
+                fileName = arg;
+
+                continue;
+
+            }
+
+            if (!parseOption(arg, options)) {
+                System.err.println("Unknown option '" + arg + "'.");
+                fileName = null;
+                break;
+            }
+
+        }
+
+        if (fileName != null) {
+
+            String optionsError = options.validate();
+
+            if (optionsError != null) {
+                System.err.println("Error: " + optionsError);
+                return;
+            }
 
             InputStream is;
 
             try {
-                is = new FileInputStream(args[0]);
+                is = new FileInputStream(fileName);
             }
             catch (FileNotFoundException e) {
-                System.out.println("I/O error: File '" + args[0] + "' was not found!");
+                System.out.println("I/O error: File '" + fileName + "' was not found!");
                 return;
             }
 
@@ -301,14 +549,7 @@ public class Knife {
             Parser parser = new Parser();
 
             try {
-
-                Token currentToken;
-
-                do {
-                    currentToken = lexer.lex();
-                    parser.parse(currentToken.type, currentToken);
-                } while (currentToken.type != Parser.T_EOF);
-
+                parser.parseAll(lexer);
             }
             catch (LexerException e) {
                 System.err.println("Syntax error: " + e.getMessage());
@@ -350,6 +591,8 @@ public class Knife {
 
             HashMap<String, String> typeMap = new HashMap<>();
 
+            ArrayList<TokenDefinition> tokens = new ArrayList<>();
+
             for (StatementNode stmt : translationUnit.statements) {
 
                 if (stmt instanceof ProductionStatementNode) {
@@ -378,6 +621,13 @@ public class Knife {
                     typeMap.put(symbol, type);
 
                 }
+                else if (stmt instanceof TokenStatementNode) {
+
+                    TokenStatementNode token = (TokenStatementNode)stmt;
+
+                    tokens.add(new TokenDefinition(token.terminal, token.regex));
+
+                }
 
             }
 
@@ -395,7 +645,7 @@ public class Knife {
                 }
             }
 
-            Knife knife = new Knife(grammar, typeMap);
+            Knife knife = new Knife(grammar, typeMap, tokens, options);
 
             knife.run();
 
@@ -404,7 +654,31 @@ public class Knife {
         }
 
         System.err.println("Invalid arguments!");
-        System.out.println("Usage: knife filename.kn");
+        System.out.println("Usage: knife [options] filename.kn");
+        System.out.println("Options:");
+        System.out.println("  --package=NAME      package of the generated classes (default net.zerobone.knife.parser)");
+        System.out.println("  --output=DIR        directory the generated files are written to (default: working directory)");
+        System.out.println("  --import=NAME       import a class or a package (NAME ending with .*) in the generated files,");
+        System.out.println("                      for the types used by the semantic actions, can be repeated");
+        System.out.println("  --backend=table     generate a table-driven push-down automaton (default)");
+        System.out.println("  --backend=recursive-descent");
+        System.out.println("                      generate one method per non-terminal, input is passed as arrays");
+        System.out.println("  --table=dense       embed the parsing table as a dense matrix (default)");
+        System.out.println("  --table=compressed  embed the parsing table using row displacement");
+        System.out.println("  --stack=nodes       keep one parse node per grammar symbol on the stack (default)");
+        System.out.println("  --stack=frames      keep (action, position) frames in a primitive int array");
+        System.out.println("  --stack=values      keep frames and a separate value stack, never create parse nodes");
+        System.out.println("  --max-errors=N      stop parsing after N syntax errors, 0 for no limit (default)");
+        System.out.println("  --fail-fast         stop parsing at the first syntax error, same as --max-errors=1");
+        System.out.println("  --error-codes       only count errors instead of creating ParseError objects");
+        System.out.println("  --listener          report every reduction to a generated ParseListener");
+        System.out.println("  --token-store       generate a TokenStore keeping tokens as offsets into the input");
+        System.out.println("  --metrics           count tokens, expansions, reductions and errors into ParserMetrics");
+        System.out.println("  --jfr               emit Java Flight Recorder events for every parse and sampled reductions");
+        System.out.println("  --incremental       generate an IncrementalParser reusing the previous parse after an edit");
+        System.out.println("  --chunk-boundary=TERMINAL --chunk-symbol=nonTerminal");
+        System.out.println("                      generate a ChunkedParser splitting the input after every TERMINAL");
+        System.out.println("                      and parsing the nonTerminal instances in parallel");
 
     }
 
@@ -0,0 +1,15 @@
+package net.zerobone.knife.ast.statements;
+
+public class TokenStatementNode extends StatementNode {
+
+    // terminal produced by the pattern, null if the matched input is skipped
+    public String terminal;
+
+    public String regex;
+
+    public TokenStatementNode(String terminal, String regex) {
+        this.terminal = terminal;
+        this.regex = regex;
+    }
+
+}
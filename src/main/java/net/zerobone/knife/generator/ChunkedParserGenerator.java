@@ -0,0 +1,271 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+class ChunkedParserGenerator {
+
+    // default minimal number of tokens per chunk
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private ChunkedParserGenerator() {}
+
+    private static TypeSpec constructResultClass(GeneratorContext context) {
+
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Result")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+
+        classBuilder.addField(
+            FieldSpec.builder(Object[].class, "values")
+                .addJavadoc("Value of every $L in input order, null for the ones with syntax errors.\n", context.options.chunkSymbol)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .build()
+        );
+
+        classBuilder.addField(ArrayTypeName.of(parseError), "errors", Modifier.PUBLIC, Modifier.FINAL);
+        classBuilder.addField(int.class, "errorCount", Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addParameter(Object[].class, "values")
+                .addParameter(ArrayTypeName.of(parseError), "errors")
+                .addParameter(int.class, "errorCount")
+                .addStatement("this.values = values")
+                .addStatement("this.errors = errors")
+                .addStatement("this.errorCount = errorCount")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("successfullyParsed")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return errorCount == 0")
+                .build()
+        );
+
+        return classBuilder.build();
+
+    }
+
+    private static MethodSpec constructChunkStartsMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("chunkStarts");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(int[].class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(int.class, "length");
+
+        // every chunk ends right after the first boundary that follows its minimal size,
+        // the last entry is the end of the input
+
+        b.addStatement("int[] starts = new int[length / chunkSize + 2]");
+        b.addStatement("int count = 0");
+        b.addStatement("int start = 0");
+
+        b.beginControlFlow("while (start < length)");
+        b.addStatement("starts[count++] = start");
+        b.addStatement("int i = start + chunkSize - 1");
+        b.beginControlFlow("while (i < length && tokenIds[i] != boundary)");
+        b.addStatement("i++");
+        b.endControlFlow();
+        b.addStatement("start = Math.min(i + 1, length)");
+        b.endControlFlow();
+
+        b.addStatement("starts[count++] = length");
+
+        b.addStatement("return $T.copyOf(starts, count)", ClassName.get("java.util", "Arrays"));
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructParseChunkMethod(GeneratorContext context) {
+
+        final ClassName arrayList = ClassName.get("java.util", "ArrayList");
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parseChunk");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(ClassName.get(context.packageName, "ChunkedParser", "Result"));
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens");
+        b.addParameter(int.class, "from");
+        b.addParameter(int.class, "to");
+
+        b.addStatement("Parser parser = parsers.poll()");
+
+        b.beginControlFlow("if (parser == null)");
+        b.addStatement("parser = new Parser()");
+        b.endControlFlow();
+
+        b.beginControlFlow("try");
+
+        b.addStatement("$T<Object> values = new $T<>()", arrayList, arrayList);
+        b.addStatement("$T<$T> errors = new $T<>()", arrayList, parseError, arrayList);
+        b.addStatement("int errorCount = 0");
+
+        b.addStatement("int start = from");
+
+        b.beginControlFlow("for (int i = from; i < to; i++)");
+
+        b.beginControlFlow("if (tokenIds[i] != boundary && i != to - 1)");
+        b.addStatement("continue");
+        b.endControlFlow();
+
+        // the tokens up to and including the boundary form one instance of the chunk symbol
+
+        b.addStatement("parser.resetChunk()");
+        b.addStatement("parser.parse(tokenIds, tokens, start, i + 1 - start)");
+        b.addStatement("parser.parse(Parser.T_EOF, null)");
+
+        b.beginControlFlow("if (parser.successfullyParsed())");
+        b.addStatement("values.add(parser.getChunkValue())");
+        b.nextControlFlow("else");
+        b.addStatement("values.add(null)");
+        b.addStatement("$T.addAll(errors, parser.getErrors())", ClassName.get("java.util", "Collections"));
+        b.addStatement("errorCount += parser.getErrorCount()");
+        b.endControlFlow();
+
+        b.addStatement("start = i + 1");
+
+        b.endControlFlow();
+
+        b.addStatement("return new Result(values.toArray(), errors.toArray(new ParseError[0]), errorCount)");
+
+        b.nextControlFlow("finally");
+        b.addStatement("parsers.offer(parser)");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructMergeMethod(GeneratorContext context) {
+
+        final ClassName result = ClassName.get(context.packageName, "ChunkedParser", "Result");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("merge");
+
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        b.returns(result);
+        b.addParameter(ArrayTypeName.of(result), "chunks");
+
+        b.addStatement("int valueCount = 0");
+        b.addStatement("int recordedErrors = 0");
+        b.addStatement("int errorCount = 0");
+
+        b.beginControlFlow("for (Result chunk : chunks)");
+        b.addStatement("valueCount += chunk.values.length");
+        b.addStatement("recordedErrors += chunk.errors.length");
+        b.addStatement("errorCount += chunk.errorCount");
+        b.endControlFlow();
+
+        b.addStatement("Object[] values = new Object[valueCount]");
+        b.addStatement("ParseError[] errors = new ParseError[recordedErrors]");
+        b.addStatement("valueCount = 0");
+        b.addStatement("recordedErrors = 0");
+
+        b.beginControlFlow("for (Result chunk : chunks)");
+        b.addStatement("System.arraycopy(chunk.values, 0, values, valueCount, chunk.values.length)");
+        b.addStatement("System.arraycopy(chunk.errors, 0, errors, recordedErrors, chunk.errors.length)");
+        b.addStatement("valueCount += chunk.values.length");
+        b.addStatement("recordedErrors += chunk.errors.length");
+        b.endControlFlow();
+
+        b.addStatement("return new Result(values, errors, errorCount)");
+
+        return b.build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final ClassName forkJoinPool = ClassName.get("java.util.concurrent", "ForkJoinPool");
+        final ClassName concurrentLinkedQueue = ClassName.get("java.util.concurrent", "ConcurrentLinkedQueue");
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+        final ClassName result = ClassName.get(context.packageName, "ChunkedParser", "Result");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ChunkedParser")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addJavadoc("Splits the input after every $L and parses the $L instances in between in parallel.\n", context.options.chunkBoundary, context.options.chunkSymbol);
+        classBuilder.addJavadoc("Every instance has to end with $L, and $L must not occur anywhere else in it.\n", context.options.chunkBoundary, context.options.chunkBoundary);
+
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "boundary", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("Parser.T_$L", context.options.chunkBoundary)
+                .build()
+        );
+
+        classBuilder.addField(forkJoinPool, "pool", Modifier.PRIVATE, Modifier.FINAL);
+
+        // every task takes a parser from here instead of Parser.acquire(),
+        // because join() can run tasks on the calling thread, which may be using its own acquired parser
+
+        classBuilder.addField(
+            FieldSpec.builder(ParameterizedTypeName.get(concurrentLinkedQueue, parser), "parsers", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", concurrentLinkedQueue)
+                .build()
+        );
+
+        classBuilder.addField(int.class, "chunkSize", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this($T.commonPool(), $L)", forkJoinPool, CHUNK_SIZE)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("@param chunkSize minimal number of tokens parsed by one task\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(forkJoinPool, "pool")
+                .addParameter(int.class, "chunkSize")
+                .beginControlFlow("if (chunkSize < 1)")
+                .addStatement("throw new IllegalArgumentException(\"chunkSize must be positive\")")
+                .endControlFlow()
+                .addStatement("this.pool = pool")
+                .addStatement("this.chunkSize = chunkSize")
+                .build()
+        );
+
+        // the parallel stream is started from a task of the pool,
+        // so that it is split among the workers of that pool
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("parse")
+                .addJavadoc("Parses the first length tokens, which must not contain T_EOF.\n")
+                .addJavadoc("@return values and errors of all chunks, in input order\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(result)
+                .addParameter(int[].class, "tokenIds")
+                .addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens")
+                .addParameter(int.class, "length")
+                .addStatement("int[] starts = chunkStarts(tokenIds, length)")
+                .addStatement(
+                    "Result[] chunks = pool.submit(() -> $T.range(0, starts.length - 1).parallel().mapToObj(i -> parseChunk(tokenIds, tokens, starts[i], starts[i + 1])).toArray(Result[]::new)).join()",
+                    ClassName.get("java.util.stream", "IntStream")
+                )
+                .addStatement("return merge(chunks)")
+                .build()
+        );
+
+        classBuilder.addMethod(constructChunkStartsMethod());
+        classBuilder.addMethod(constructParseChunkMethod(context));
+        classBuilder.addMethod(constructMergeMethod(context));
+
+        classBuilder.addType(constructResultClass(context));
+
+        return classBuilder;
+
+    }
+
+}
@@ -0,0 +1,97 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generates the Java Flight Recorder events emitted by a parser generated with --jfr.
+ */
+class EventsGenerator {
+
+    private static final ClassName event = ClassName.get("jdk.jfr", "Event");
+
+    private EventsGenerator() {}
+
+    private static AnnotationSpec annotation(String simpleName, String value) {
+        return AnnotationSpec.builder(ClassName.get("jdk.jfr", simpleName))
+            .addMember("value", "$S", value)
+            .build();
+    }
+
+    private static AnnotationSpec annotation(String simpleName, boolean value) {
+        return AnnotationSpec.builder(ClassName.get("jdk.jfr", simpleName))
+            .addMember("value", "$L", value)
+            .build();
+    }
+
+    private static FieldSpec field(TypeName type, String name, String label) {
+        return FieldSpec.builder(type, name)
+            .addAnnotation(annotation("Label", label))
+            .build();
+    }
+
+    /**
+     * Adds the annotations shared by both events, they have to be enabled in the recording settings.
+     */
+    private static TypeSpec.Builder eventBuilder(GeneratorContext context, String className, String name, String label) {
+
+        return TypeSpec.classBuilder(className)
+            .addModifiers(Modifier.FINAL)
+            .superclass(event)
+            .addAnnotation(annotation("Name", context.packageName + "." + name))
+            .addAnnotation(annotation("Label", label))
+            .addAnnotation(
+                AnnotationSpec.builder(ClassName.get("jdk.jfr", "Category"))
+                    .addMember("value", "$S", "Knife")
+                    .build()
+            )
+            .addAnnotation(annotation("Enabled", false))
+            .addAnnotation(annotation("StackTrace", false));
+
+    }
+
+    static TypeSpec.Builder generateParseEvent(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = eventBuilder(context, "ParseEvent", "Parse", "Parse");
+
+        classBuilder.addJavadoc("Spans a parse from its first token until the parser accepts no more input or is reset.\n");
+
+        classBuilder.addAnnotation(annotation("Description", "Input parsed by a single parser"));
+
+        classBuilder.addField(field(TypeName.INT, "tokens", "Tokens"));
+        classBuilder.addField(field(TypeName.INT, "errors", "Errors"));
+        classBuilder.addField(field(TypeName.INT, "peakDepth", "Peak Stack Depth"));
+        classBuilder.addField(field(TypeName.BOOLEAN, "reachedEof", "Reached EOF"));
+
+        return classBuilder;
+
+    }
+
+    static TypeSpec.Builder generateReductionEvent(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = eventBuilder(context, "ReductionEvent", "Reduction", "Reduction");
+
+        classBuilder.addJavadoc("Emitted for every n-th reduction, see Parser.setReductionSampling().\n");
+
+        classBuilder.addAnnotation(annotation("Description", "Sampled reduction of a production"));
+
+        classBuilder.addField(MetaGenerator.constructProductionDescriptions(context.table));
+
+        classBuilder.addField(field(ClassName.get(String.class), "production", "Production"));
+        classBuilder.addField(field(TypeName.INT, "tokenIndex", "Token Index"));
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("describe")
+                .addModifiers(Modifier.STATIC)
+                .returns(String.class)
+                .addParameter(int.class, "actionId")
+                .addStatement("return productions[actionId - 1]")
+                .build()
+        );
+
+        return classBuilder;
+
+    }
+
+}
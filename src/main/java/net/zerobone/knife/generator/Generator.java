@@ -3,6 +3,7 @@ package net.zerobone.knife.generator;
 import com.squareup.javapoet.JavaFile;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -10,6 +11,31 @@ public class Generator {
 
     private Generator() {}
 
+    /**
+     * Writes the file with the imports requested by the options following the package declaration.
+     */
+    private static void writeTo(GeneratorContext context, JavaFile javaFile, Appendable out) throws IOException {
+
+        if (context.options.imports.isEmpty()) {
+            javaFile.writeTo(out);
+            return;
+        }
+
+        String source = javaFile.toString();
+
+        int packageEnd = source.indexOf('\n') + 1;
+
+        out.append(source, 0, packageEnd);
+        out.append('\n');
+
+        for (String name : context.options.imports) {
+            out.append("import ").append(name).append(";\n");
+        }
+
+        out.append(source, packageEnd, source.length());
+
+    }
+
     public static void generate(GeneratorContext context) throws IOException {
 
         {
@@ -19,11 +45,129 @@ public class Generator {
                 .indent("\t")
                 .build();
 
-            BufferedWriter writer = new BufferedWriter(new FileWriter("ParseError.java"));
-            javaFile.writeTo(writer);
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParseError.java")));
+            writeTo(context, javaFile, writer);
             writer.close();
         }
 
+        {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, TokenSourceGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "TokenSource.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, ParallelParserGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParallelParser.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.lexer != null) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, LexerGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "Lexer.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.tokenStore) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, TokenStoreGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "TokenStore.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.metrics) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, MetricsGenerator.generateMetrics(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParserMetrics.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+
+            javaFile = JavaFile
+                .builder(context.packageName, MetricsGenerator.generateStats(context).build())
+                .indent("\t")
+                .build();
+
+            writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParserStats.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.events) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, EventsGenerator.generateParseEvent(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParseEvent.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+
+            javaFile = JavaFile
+                .builder(context.packageName, EventsGenerator.generateReductionEvent(context).build())
+                .indent("\t")
+                .build();
+
+            writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ReductionEvent.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.listener) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, ParseListenerGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParseListener.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.backend == GeneratorOptions.Backend.RECURSIVE_DESCENT) {
+
+            // semantic actions are inlined into the parser, no parse nodes are needed
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, RecursiveDescentParserGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "Parser.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+
+            return;
+        }
+
         {
 
             JavaFile javaFile = JavaFile
@@ -31,8 +175,8 @@ public class Generator {
                 .indent("\t")
                 .build();
 
-            BufferedWriter writer = new BufferedWriter(new FileWriter("ParseNode.java"));
-            javaFile.writeTo(writer);
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ParseNode.java")));
+            writeTo(context, javaFile, writer);
             writer.close();
         }
 
@@ -42,8 +186,32 @@ public class Generator {
                 .indent("\t")
                 .build();
 
-            BufferedWriter writer = new BufferedWriter(new FileWriter("Parser.java"));
-            javaFile.writeTo(writer);
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "Parser.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.chunkSymbol != null) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, ChunkedParserGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "ChunkedParser.java")));
+            writeTo(context, javaFile, writer);
+            writer.close();
+        }
+
+        if (context.options.incremental) {
+
+            JavaFile javaFile = JavaFile
+                .builder(context.packageName, IncrementalParserGenerator.generate(context).build())
+                .indent("\t")
+                .build();
+
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(context.options.outputDirectory, "IncrementalParser.java")));
+            writeTo(context, javaFile, writer);
             writer.close();
         }
 
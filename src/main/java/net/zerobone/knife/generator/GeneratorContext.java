@@ -2,6 +2,8 @@ package net.zerobone.knife.generator;
 
 import com.squareup.javapoet.ClassName;
 import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.lexical.LexerAutomaton;
+import net.zerobone.knife.utils.StringUtils;
 
 import java.util.HashMap;
 
@@ -13,12 +15,94 @@ public class GeneratorContext {
 
     final HashMap<String, String> typeMap;
 
+    final GeneratorOptions options;
+
     private ClassName tokenTypeName = null;
 
+    // automaton of the %token and %skip definitions, null if the grammar has none
+    LexerAutomaton lexer = null;
+
     public GeneratorContext(String packageName, ParsingTable table, HashMap<String, String> typeMap) {
+        this(packageName, table, typeMap, new GeneratorOptions());
+    }
+
+    public GeneratorContext(String packageName, ParsingTable table, HashMap<String, String> typeMap, GeneratorOptions options) {
         this.packageName = packageName;
         this.table = table;
         this.typeMap = typeMap;
+        this.options = options;
+    }
+
+    /**
+     * @return type of the symbol as declared with %type, Object if it is not declared
+     */
+    String symbolType(String symbol) {
+
+        String type = typeMap.get(symbol);
+
+        return type == null ? "Object" : type;
+
+    }
+
+    /**
+     * @return whether the symbol is a non-terminal with a primitive type and its values are kept in primitive slots
+     */
+    boolean hasPrimitiveSlot(String symbol) {
+        return StringUtils.isNonTerminal(symbol) && PrimitiveSlots.isPrimitive(symbolType(symbol));
+    }
+
+    boolean usesPrimitiveSlots() {
+
+        for (String symbol : typeMap.keySet()) {
+            if (hasPrimitiveSlot(symbol)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    private static boolean isType(String type, String simpleName) {
+        return type.equals(simpleName) || type.equals("java.lang." + simpleName);
+    }
+
+    /**
+     * @return whether the values of the terminal are String copies of the text of the token
+     */
+    boolean hasStringText(String terminal) {
+        return isType(symbolType(terminal), "String");
+    }
+
+    /**
+     * With --token-store, the value of a terminal is the text of the token,
+     * so the terminals can only be typed as a CharSequence, String or Object.
+     * @return message describing the first terminal with another type or null
+     */
+    public String checkTokenStoreTypes() {
+
+        for (String symbol : typeMap.keySet()) {
+
+            if (!StringUtils.isTerminal(symbol)) {
+                continue;
+            }
+
+            String type = typeMap.get(symbol);
+
+            if (isType(type, "CharSequence") || isType(type, "String") || isType(type, "Object")) {
+                continue;
+            }
+
+            return "Terminal '" + symbol + "' has type '" + type + "', but with --token-store the values of terminals are their text. Declare it as CharSequence to read the text without copying it, or as String to get a copy of it.";
+
+        }
+
+        return null;
+
+    }
+
+    public void setLexer(LexerAutomaton lexer) {
+        this.lexer = lexer;
     }
 
     public void setTokenTypeName(String basePackage, String className) {
@@ -0,0 +1,106 @@
+package net.zerobone.knife.generator;
+
+import java.util.ArrayList;
+
+public class GeneratorOptions {
+
+    public enum StackMode {
+        // one ParseNode per grammar symbol kept on a java.util.Stack
+        NODES,
+        // (action id, position) frames in a growable int array
+        FRAMES,
+        // frames plus a separate value stack, no ParseNode is ever instantiated
+        VALUES
+    }
+
+    public enum Backend {
+        // push-down automaton interpreting the LL(1) table
+        TABLE,
+        // one method per non-terminal
+        RECURSIVE_DESCENT
+    }
+
+    public enum TableEncoding {
+        // nonTerminalCount * terminalCount matrix
+        DENSE,
+        // row displacement with base, check and default arrays
+        COMPRESSED
+    }
+
+    public String packageName = "net.zerobone.knife.parser";
+
+    // directory the generated files are written to, null for the working directory
+    public String outputDirectory = null;
+
+    // classes or packages (ending with .*) imported by every generated file
+    public ArrayList<String> imports = new ArrayList<>();
+
+    public Backend backend = Backend.TABLE;
+
+    public TableEncoding table = TableEncoding.DENSE;
+
+    public StackMode stack = StackMode.NODES;
+
+    // default error limit of the generated parser, 0 means no limit
+    public int maxErrors = 0;
+
+    // whether the generated parser creates ParseError objects by default
+    public boolean recordErrors = true;
+
+    // whether reductions are reported to a generated ParseListener
+    public boolean listener = false;
+
+    // whether a TokenStore keeping tokens as offsets into the input is generated
+    public boolean tokenStore = false;
+
+    // whether the generated parser counts its work into a ParserMetrics
+    public boolean metrics = false;
+
+    // whether the generated parser emits Java Flight Recorder events
+    public boolean events = false;
+
+    // whether an IncrementalParser and the checkpoints of the parser it splices are generated
+    public boolean incremental = false;
+
+    // terminal ending every chunk symbol, null if no ChunkedParser is generated
+    public String chunkBoundary = null;
+
+    // non-terminal the parser restarts from after every boundary
+    public String chunkSymbol = null;
+
+    public GeneratorOptions() {}
+
+    public boolean usesFrames() {
+        return stack != StackMode.NODES;
+    }
+
+    /**
+     * @return message describing why the options cannot be combined or null
+     */
+    public String validate() {
+
+        if (backend == Backend.RECURSIVE_DESCENT && stack != StackMode.NODES) {
+            return "The recursive-descent backend does not use a parse stack, '--stack' cannot be specified.";
+        }
+
+        if (backend == Backend.RECURSIVE_DESCENT && table != TableEncoding.DENSE) {
+            return "The recursive-descent backend does not embed a parsing table, '--table' cannot be specified.";
+        }
+
+        if ((chunkBoundary == null) != (chunkSymbol == null)) {
+            return "'--chunk-boundary' and '--chunk-symbol' have to be specified together.";
+        }
+
+        if (backend == Backend.RECURSIVE_DESCENT && chunkSymbol != null) {
+            return "Chunked parsing is only supported by the table backend.";
+        }
+
+        if (backend == Backend.RECURSIVE_DESCENT && incremental) {
+            return "Incremental parsing is only supported by the table backend.";
+        }
+
+        return null;
+
+    }
+
+}
@@ -0,0 +1,232 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+class IncrementalParserGenerator {
+
+    private IncrementalParserGenerator() {}
+
+    private static final int DEFAULT_INTERVAL = 256;
+
+    private static MethodSpec constructReparseMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("reparse");
+
+        b.addJavadoc("Parses the buffer again after it has been edited.\n");
+        b.addJavadoc("The tokens before firstChangedToken have to be the same as in the previous call,\n");
+        b.addJavadoc("all tokens after it are parsed again.\n");
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens");
+        b.addParameter(int.class, "length");
+        b.addParameter(int.class, "firstChangedToken");
+
+        b.addStatement("int start = Math.min(firstChangedToken, Math.min(length, this.length))");
+        b.addStatement("reparse(tokenIds, tokens, length, start, this.length - start, length - start)");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructEditReparseMethod(GeneratorContext context) {
+
+        final ClassName checkpoint = ClassName.get(context.packageName, "Parser", "Checkpoint");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("reparse");
+
+        b.addJavadoc("Parses the buffer again after the removed tokens starting at start have been replaced by the inserted ones.\n");
+        b.addJavadoc("Parsing resumes from the last checkpoint before the edit. Once it reaches a checkpoint after the edit\n");
+        b.addJavadoc("with the same parser state as in the previous parse, the rest of the previous result is reused.\n");
+        b.addJavadoc("Frames that only wait for their last symbol may differ, so inserting or removing an element\n");
+        b.addJavadoc("of a right recursive list reuses the rest as well. The checkpoints after such an edit are\n");
+        b.addJavadoc("not restored anymore, so the next edit after them is parsed from the last checkpoint before them.\n");
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens");
+        b.addParameter(int.class, "length");
+        b.addParameter(int.class, "start");
+        b.addParameter(int.class, "removed");
+        b.addParameter(int.class, "inserted");
+
+        // method body
+
+        b.beginControlFlow("if (start < 0 || removed < 0 || inserted < 0 || start + removed > this.length || this.length - removed + inserted != length)");
+        b.addStatement("throw new IllegalArgumentException($S)", "the edit does not match the previous length");
+        b.endControlFlow();
+
+        b.addStatement("int shift = inserted - removed");
+
+        b.addStatement("int index = checkpoints.size() - 1");
+        b.beginControlFlow("while (checkpoints.get(index).position > start || checkpoints.get(index).stale)");
+        b.addStatement("index--");
+        b.endControlFlow();
+
+        b.addStatement("$T checkpoint = checkpoints.get(index)", checkpoint);
+        b.addStatement("parser.restore(checkpoint)");
+
+        // the checkpoints within the removed tokens are dropped, the ones after
+        // them move along with their tokens and are compared with the new states
+
+        b.addStatement("$T<$T> later = checkpoints.subList(index + 1, checkpoints.size())", ClassName.get("java.util", "List"), checkpoint);
+        b.addStatement("$T<$T> candidates = new ArrayDeque<>()", ClassName.get("java.util", "ArrayDeque"), checkpoint);
+        b.beginControlFlow("for ($T candidate : later)", checkpoint);
+        b.beginControlFlow("if (candidate.position >= start + removed)");
+        b.addStatement("candidate.position += shift");
+        b.addStatement("candidates.add(candidate)");
+        b.endControlFlow();
+        b.endControlFlow();
+        b.addStatement("later.clear()");
+
+        b.addStatement("this.length = length");
+
+        b.addStatement("int position = checkpoint.position");
+
+        b.beginControlFlow("while (position < length)");
+
+        b.addStatement("int next = Math.min(checkpoint.position + interval, length)");
+        b.beginControlFlow("if (!candidates.isEmpty())");
+        b.addStatement("next = Math.min(next, candidates.peek().position)");
+        b.endControlFlow();
+
+        b.addStatement("parser.parse(tokenIds, tokens, position, next - position)");
+        b.addStatement("position = next");
+
+        b.beginControlFlow("if (position == length)");
+        b.addStatement("break");
+        b.endControlFlow();
+
+        b.beginControlFlow("if (position > checkpoint.position)");
+        b.addStatement("checkpoint = parser.checkpoint()");
+        b.addStatement("checkpoints.add(checkpoint)");
+        b.endControlFlow();
+
+        b.beginControlFlow("if (!candidates.isEmpty() && candidates.peek().position == position)");
+        b.addStatement("$T candidate = candidates.poll()", checkpoint);
+        b.beginControlFlow("if (end != null && parser.splice(candidate, end, shift))");
+        // the frames below the ones that have symbols left differ from the later checkpoints as well
+        b.beginControlFlow("if (candidate.stale)");
+        b.beginControlFlow("for ($T rest : candidates)", checkpoint);
+        b.addStatement("rest.stale = true");
+        b.endControlFlow();
+        b.endControlFlow();
+        b.addStatement("checkpoints.addAll(candidates)");
+        b.addStatement("end = parser.snapshot()");
+        b.addStatement("return");
+        b.endControlFlow();
+        // otherwise the rest is parsed differently from here on
+        b.endControlFlow();
+
+        b.endControlFlow();
+
+        b.addStatement("end = parser.snapshot()");
+
+        return b.build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+        final ClassName snapshot = ClassName.get(context.packageName, "Parser", "Snapshot");
+        final ClassName checkpoint = ClassName.get(context.packageName, "Parser", "Checkpoint");
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+        final ClassName arrayList = ClassName.get("java.util", "ArrayList");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("IncrementalParser")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        // fields
+
+        classBuilder.addField(parser, "parser", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addField(int.class, "interval", Modifier.PRIVATE, Modifier.FINAL);
+
+        // states of the parser at least every interval tokens and at the ends of edits, ordered by position
+        classBuilder.addField(
+            FieldSpec.builder(ParameterizedTypeName.get(arrayList, checkpoint), "checkpoints")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new ArrayList<>()")
+                .build()
+        );
+
+        // state after all tokens of the previous parse, null before the first one
+        classBuilder.addField(snapshot, "end", Modifier.PRIVATE);
+
+        // number of tokens of the previous parse
+        classBuilder.addField(int.class, "length", Modifier.PRIVATE);
+
+        // methods
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this($L)", DEFAULT_INTERVAL)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("@param interval number of tokens between two captured states of the parser\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "interval")
+                .beginControlFlow("if (interval < 1)")
+                .addStatement("throw new IllegalArgumentException($S)", "interval must be positive")
+                .endControlFlow()
+                .addStatement("this.interval = interval")
+                .addStatement("parser = new Parser()")
+                .addStatement("checkpoints.add(parser.checkpoint())")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("parse")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(void.class)
+                .addParameter(int[].class, "tokenIds")
+                .addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens")
+                .addParameter(int.class, "length")
+                .addStatement("reparse(tokenIds, tokens, length, 0, this.length, length)")
+                .build()
+        );
+
+        classBuilder.addMethod(constructReparseMethod(context));
+        classBuilder.addMethod(constructEditReparseMethod(context));
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("successfullyParsed")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return parser.successfullyParsed()")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getValue")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addStatement("return parser.getValue()")
+                .build()
+        );
+
+        if (context.hasPrimitiveSlot(context.table.startSymbol)) {
+            String getter = PrimitiveSlots.valueGetterName(context.symbolType(context.table.startSymbol));
+            ParserGenerator.constructPrimitiveValueGetter(context, classBuilder, "parser." + getter + "()");
+        }
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getErrors")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(parseError))
+                .addStatement("return parser.getErrors()")
+                .build()
+        );
+
+        return classBuilder;
+
+    }
+
+}
@@ -0,0 +1,315 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+import net.zerobone.knife.lexical.LexerAutomaton;
+import net.zerobone.knife.lexical.TokenDefinition;
+
+import javax.lang.model.element.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+
+class LexerGenerator {
+
+    // characters below this bound are classified with a direct lookup
+    private static final int ASCII_LIMIT = 128;
+
+    // value of the accept table for input that is matched and dropped
+    private static final int SKIP = -1;
+
+    private LexerGenerator() {}
+
+    private static int classOf(LexerAutomaton automaton, int c) {
+
+        int interval = Arrays.binarySearch(automaton.intervalStarts, c);
+
+        if (interval < 0) {
+            interval = -interval - 2;
+        }
+
+        return automaton.intervalClasses[interval];
+
+    }
+
+    private static void constructClassTables(LexerAutomaton automaton, TypeSpec.Builder classBuilder) {
+
+        int[] asciiClasses = new int[ASCII_LIMIT];
+
+        for (int c = 0; c < ASCII_LIMIT; c++) {
+            asciiClasses[c] = classOf(automaton, c);
+        }
+
+        // the remaining characters are looked up in the intervals starting at or after ASCII_LIMIT
+
+        int first = 0;
+
+        while (first + 1 < automaton.intervalStarts.length && automaton.intervalStarts[first + 1] <= ASCII_LIMIT) {
+            first++;
+        }
+
+        int[] rangeStarts = Arrays.copyOfRange(automaton.intervalStarts, first, automaton.intervalStarts.length);
+        int[] rangeClasses = Arrays.copyOfRange(automaton.intervalClasses, first, automaton.intervalClasses.length);
+
+        rangeStarts[0] = ASCII_LIMIT;
+
+        classBuilder.addField(MetaGenerator.constructIntArray("asciiClasses", asciiClasses));
+        classBuilder.addField(MetaGenerator.constructIntArray("rangeStarts", rangeStarts));
+        classBuilder.addField(MetaGenerator.constructIntArray("rangeClasses", rangeClasses));
+
+    }
+
+    private static int[] constructAcceptTable(GeneratorContext context, LexerAutomaton automaton) {
+
+        int[] accept = new int[automaton.stateCount];
+
+        for (int state = 0; state < accept.length; state++) {
+
+            int rule = automaton.accept[state];
+
+            if (rule == LexerAutomaton.NO_RULE) {
+                continue;
+            }
+
+            TokenDefinition definition = automaton.rules[rule];
+
+            accept[state] = definition.terminal == null ? SKIP : context.table.mapping.mapKey(definition.terminal);
+
+        }
+
+        return accept;
+
+    }
+
+    private static MethodSpec constructScan(String name, String character) {
+
+        // longest match, the loop only reads the input array and the static tables
+
+        return MethodSpec.methodBuilder(name)
+            .addModifiers(Modifier.PRIVATE)
+            .returns(int.class)
+            .addStatement("int state = 0")
+            .addStatement("int matched = 0")
+            .addStatement("int matchEnd = position")
+            .beginControlFlow("for (int i = position; i < end; i++)")
+            .addStatement("int c = $L", character)
+            .addStatement("state = transitions[state * classCount + (c < $L ? asciiClasses[c] : classOf(c))]", ASCII_LIMIT)
+            .beginControlFlow("if (state < 0)")
+            .addStatement("break")
+            .endControlFlow()
+            .beginControlFlow("if (accept[state] != 0)")
+            .addStatement("matched = accept[state]")
+            .addStatement("matchEnd = i + 1")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("tokenEnd = matchEnd")
+            .addStatement("return matched")
+            .build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final LexerAutomaton automaton = context.lexer;
+
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+
+        final ClassName tokenSource = ClassName.get(context.packageName, "TokenSource");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Lexer")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(tokenSource, ClassName.get(ParseException.class)));
+
+        classBuilder.addJavadoc("Table-driven lexer generated from the %token and %skip definitions.\n");
+        classBuilder.addJavadoc("The longest match wins, between matches of the same length the definition declared first.\n");
+        classBuilder.addJavadoc("The value of a token is its text, byte input is read as ISO-8859-1.\n");
+
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "SKIP", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", SKIP)
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "classCount", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", automaton.classCount)
+                .build()
+        );
+
+        constructClassTables(automaton, classBuilder);
+
+        classBuilder.addField(MetaGenerator.constructIntArray("transitions", automaton.transitions));
+
+        // token id accepted in every state, 0 if the state is not final
+        classBuilder.addField(MetaGenerator.constructIntArray("accept", constructAcceptTable(context, automaton)));
+
+        classBuilder.addMethod(MetaGenerator.constructUnpackMethod());
+
+        // exactly one of the input arrays is set
+        classBuilder.addField(char[].class, "chars", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(byte[].class, "bytes", Modifier.PRIVATE, Modifier.FINAL);
+
+        // index of the first character of the input in the array
+        classBuilder.addField(int.class, "base", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(int.class, "end", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addField(int.class, "position", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "tokenStart", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "tokenEnd", Modifier.PRIVATE);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(char[].class, "input")
+                .addParameter(int.class, "offset")
+                .addParameter(int.class, "length")
+                .addStatement("chars = input")
+                .addStatement("bytes = null")
+                .addStatement("base = offset")
+                .addStatement("end = offset + length")
+                .addStatement("position = offset")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(char[].class, "input")
+                .addStatement("this(input, 0, input.length)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("The characters are copied once, so that scanning doesn't go through CharSequence.charAt.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(CharSequence.class, "input")
+                .addStatement("this(input.toString().toCharArray())")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("Reads the remaining bytes of the buffer, its position is not changed.\n")
+                .addJavadoc("Buffers without an accessible array are copied.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ByteBuffer.class, "input")
+                .addStatement("chars = null")
+                .beginControlFlow("if (input.hasArray())")
+                .addStatement("bytes = input.array()")
+                .addStatement("base = input.arrayOffset() + input.position()")
+                .nextControlFlow("else")
+                .addStatement("bytes = new byte[input.remaining()]")
+                .addStatement("input.duplicate().get(bytes)")
+                .addStatement("base = 0")
+                .endControlFlow()
+                .addStatement("end = base + input.remaining()")
+                .addStatement("position = base")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("classOf")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(int.class)
+                .addParameter(int.class, "c")
+                .addStatement("int low = 0")
+                .addStatement("int high = rangeStarts.length - 1")
+                .beginControlFlow("while (low < high)")
+                .addStatement("int middle = (low + high + 1) >>> 1")
+                .beginControlFlow("if (rangeStarts[middle] <= c)")
+                .addStatement("low = middle")
+                .nextControlFlow("else")
+                .addStatement("high = middle - 1")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return rangeClasses[low]")
+                .build()
+        );
+
+        classBuilder.addMethod(constructScan("scanChars", "chars[i]"));
+        classBuilder.addMethod(constructScan("scanBytes", "bytes[i] & 0xff"));
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("next")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addException(ParseException.class)
+                .beginControlFlow("while (true)")
+                .addStatement("tokenStart = position")
+                .beginControlFlow("if (position == end)")
+                .addStatement("tokenEnd = position")
+                .addStatement("return $T.T_EOF", parser)
+                .endControlFlow()
+                .addStatement("int matched = chars != null ? scanChars() : scanBytes()")
+                .beginControlFlow("if (matched == 0)")
+                .addStatement("char c = chars != null ? chars[position] : (char)(bytes[position] & 0xff)")
+                .addStatement("throw new $T(\"Unexpected character '\" + c + \"'\", position - base)", ParseException.class)
+                .endControlFlow()
+                .addStatement("position = tokenEnd")
+                .beginControlFlow("if (matched != SKIP)")
+                .addStatement("return matched")
+                .endControlFlow()
+                .endControlFlow()
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("token")
+                .addJavadoc("@return text of the last token, the value of T_EOF is the empty string\n")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(context.getTokenTypeName())
+                .beginControlFlow("if (chars != null)")
+                .addStatement("return new String(chars, tokenStart, tokenEnd - tokenStart)")
+                .endControlFlow()
+                .addStatement("return new String(bytes, tokenStart, tokenEnd - tokenStart, $T.ISO_8859_1)", StandardCharsets.class)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getTokenStart")
+                .addJavadoc("@return offset of the first character of the last token, counted from the start of the input\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return tokenStart - base")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getTokenEnd")
+                .addJavadoc("@return offset after the last character of the last token\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return tokenEnd - base")
+                .build()
+        );
+
+        if (context.options.tokenStore) {
+
+            final ClassName tokenStore = ClassName.get(context.packageName, "TokenStore");
+
+            classBuilder.addMethod(
+                MethodSpec.methodBuilder("tokenize")
+                    .addJavadoc("Reads the remaining input without creating any token value.\n")
+                    .addJavadoc("The offsets in the store are indexes into the array this lexer reads.\n")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(tokenStore)
+                    .addException(ParseException.class)
+                    .addStatement("$T store = chars != null ? new $T(chars) : new $T(bytes)", tokenStore, tokenStore, tokenStore)
+                    .addStatement("int tokenId")
+                    .beginControlFlow("while ((tokenId = next()) != $T.T_EOF)", parser)
+                    .addStatement("store.add(tokenId, tokenStart, tokenEnd)")
+                    .endControlFlow()
+                    .addStatement("return store")
+                    .build()
+            );
+
+        }
+
+        return classBuilder;
+
+    }
+
+}
@@ -1,12 +1,18 @@
 package net.zerobone.knife.generator;
 
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import net.zerobone.knife.grammar.Symbol;
+import net.zerobone.knife.grammar.table.CompressedParsingTable;
 import net.zerobone.knife.grammar.table.ParsingTable;
 import net.zerobone.knife.grammar.table.ParsingTableProduction;
 
 import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 class MetaGenerator {
@@ -71,77 +77,701 @@ class MetaGenerator {
 
     }
 
-    static FieldSpec constructTable(ParsingTable table) {
+    // number of values encoded into one string constant, at most 3 chars of 3 bytes each per value
+    // keep a constant below the limit of 65535 bytes of the class file
+    private static final int PACKED_VALUES_PER_STRING = 512;
+
+    // added to the zigzag encoded values, so that small values are printable ASCII chars
+    private static final int PACKED_OFFSET = 32;
+
+    /**
+     * Appends the value to the literal, the zigzag encoding of most table values fits into one char.
+     * A char 0 is followed by the high and low 16 bits of larger values.
+     */
+    private static void appendPacked(StringBuilder sb, int value) {
+
+        int zigzag = (value << 1) ^ (value >> 31);
+
+        if (zigzag >= 0 && zigzag <= 0xffff - PACKED_OFFSET) {
+            appendPackedChar(sb, (char)(zigzag + PACKED_OFFSET));
+            return;
+        }
+
+        appendPackedChar(sb, (char)0);
+        appendPackedChar(sb, (char)(zigzag >>> 16));
+        appendPackedChar(sb, (char)zigzag);
+
+    }
+
+    private static void appendPackedChar(StringBuilder sb, char c) {
+
+        if (c == '"' || c == '\\') {
+            sb.append('\\').append(c);
+        }
+        else if (c >= ' ' && c <= '~') {
+            sb.append(c);
+        }
+        else if (c < 0x100) {
+            // always three octal digits, so that a following digit is not part of the escape
+            sb.append(String.format("\\%03o", (int)c));
+        }
+        else {
+            // unicode escapes are translated before the literal is parsed,
+            // they are safe because line terminators, quotes and backslashes are below 0x100
+            sb.append(String.format("\\u%04x", (int)c));
+        }
+
+    }
+
+    /**
+     * @return arguments of unpack(), the number of values followed by the string constants encoding them
+     */
+    private static String packedArguments(int[] values) {
 
         StringBuilder sb = new StringBuilder();
 
-        sb.append('{');
+        sb.append(values.length);
+
+        for (int i = 0; i < values.length; i++) {
+
+            if (i % PACKED_VALUES_PER_STRING == 0) {
+                sb.append(i == 0 ? ",\n\"" : "\",\n\"");
+            }
+
+            appendPacked(sb, values[i]);
+
+        }
+
+        if (values.length != 0) {
+            sb.append('"');
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Large array initializers are compiled into the static initializer, which cannot exceed 64 KB of code.
+     * Tables are therefore encoded as string constants that are decoded once when the class is loaded.
+     * @return method decoding the values written by constructIntArray
+     */
+    static MethodSpec constructUnpackMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("unpack");
+
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        b.returns(int[].class);
+        b.addParameter(int.class, "length");
+        b.addParameter(String[].class, "parts");
+        b.varargs();
+
+        b.addStatement("int[] values = new int[length]");
+        b.addStatement("int i = 0");
+
+        b.beginControlFlow("for (String part : parts)");
+
+        b.beginControlFlow("for (int j = 0; j < part.length(); i++)");
+        b.addStatement("int zigzag = part.charAt(j++)");
+        b.beginControlFlow("if (zigzag == 0)");
+        b.addStatement("zigzag = part.charAt(j) << 16 | part.charAt(j + 1)");
+        b.addStatement("j += 2");
+        b.nextControlFlow("else");
+        b.addStatement("zigzag -= $L", PACKED_OFFSET);
+        b.endControlFlow();
+        b.addStatement("values[i] = (zigzag >>> 1) ^ -(zigzag & 1)");
+        b.endControlFlow();
+
+        b.endControlFlow();
+
+        b.addStatement("return values");
+
+        return b.build();
+
+    }
+
+    /**
+     * @return method splitting the values written by constructActionTable into one array per action
+     */
+    private static MethodSpec constructUnpackActionTableMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("unpackActionTable");
+
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        b.returns(int[][].class);
+        b.addParameter(int.class, "count");
+        b.addParameter(int[].class, "lengthsAndSymbols");
+
+        b.addStatement("int[][] actions = new int[count][]");
+        b.addStatement("int i = 0");
+
+        b.beginControlFlow("for (int action = 0; action < count; action++)");
+        b.addStatement("int length = lengthsAndSymbols[i++]");
+        b.addStatement("actions[action] = $T.copyOfRange(lengthsAndSymbols, i, i + length)", ClassName.get("java.util", "Arrays"));
+        b.addStatement("i += length");
+        b.endControlFlow();
+
+        b.addStatement("return actions");
+
+        return b.build();
+
+    }
+
+    static FieldSpec constructTable(ParsingTable table) {
+
+        int[] values = new int[table.nonTerminalCount * table.terminalCount];
 
         for (int y = 0; y < table.nonTerminalCount; y++) {
+            System.arraycopy(table.table[y], 0, values, y * table.terminalCount, table.terminalCount);
+        }
 
-            sb.append('\n');
+        return constructIntArray("table", values);
+
+    }
+
+    /**
+     * The class has to contain the method returned by constructUnpackMethod.
+     */
+    static FieldSpec constructIntArray(String name, int[] values) {
+
+        return FieldSpec.builder(int[].class, name)
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer("unpack($L)", packedArguments(values))
+            .build();
+
+    }
+
+    static void constructTable(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        if (context.options.table == GeneratorOptions.TableEncoding.DENSE) {
+            classBuilder.addField(constructTable(context.table));
+            return;
+        }
+
+        CompressedParsingTable compressed = context.table.getCompressedTable();
+
+        classBuilder.addField(constructIntArray("tableDefaults", compressed.defaults));
+        classBuilder.addField(constructIntArray("tableBase", compressed.base));
+        classBuilder.addField(constructIntArray("tableCheck", compressed.check));
+        classBuilder.addField(constructIntArray("tableEntries", compressed.entries));
+
+    }
+
+    static void addTableLookup(GeneratorContext context, MethodSpec.Builder b, String nonTerminalIndex) {
+
+        if (context.options.table == GeneratorOptions.TableEncoding.DENSE) {
+            b.addStatement("int actionId = table[($L) * terminalCount + tokenId]", nonTerminalIndex);
+            return;
+        }
+
+        b.addStatement("int tableRow = $L", nonTerminalIndex);
+        b.addStatement("int tableIndex = tableBase[tableRow] + tokenId");
+        b.addStatement("int actionId = tableCheck[tableIndex] == tableRow ? tableEntries[tableIndex] : tableDefaults[tableRow]");
+
+    }
+
+    static void constructThreadLocalInstance(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+
+        classBuilder.addField(
+            FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), parser), "LOCAL")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.withInitial(Parser::new)", ThreadLocal.class)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("acquire")
+                .addJavadoc("Returns the parser owned by the calling thread, reset and ready for a new input.\n")
+                .addJavadoc("The parser stays valid until the same thread calls acquire() again.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(parser)
+                .addStatement("Parser parser = LOCAL.get()")
+                .addStatement("parser.reset()")
+                .addStatement("return parser")
+                .build()
+        );
+
+    }
+
+    /**
+     * Generates the error limit, the primitive summary of the errors
+     * and their accessors, shared by both backends.
+     */
+    static void constructErrorLimit(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        // once maxErrors errors have been found the parser stops, 0 means no limit
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "maxErrors", Modifier.PRIVATE)
+                .initializer("$L", context.options.maxErrors)
+                .build()
+        );
+
+        // without ParseError objects the error path doesn't allocate
+        classBuilder.addField(
+            FieldSpec.builder(boolean.class, "recordErrors", Modifier.PRIVATE)
+                .initializer("$L", context.options.recordErrors)
+                .build()
+        );
+
+        classBuilder.addField(int.class, "errorCount", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "firstErrorExpected", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "firstErrorIndex", Modifier.PRIVATE);
+
+        // number of tokens fed since the last reset
+        classBuilder.addField(int.class, "tokenCount", Modifier.PRIVATE);
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("setMaxErrors")
+                .addJavadoc("Stops the parser once the given number of errors has been found, 0 disables the limit.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "maxErrors")
+                .beginControlFlow("if (maxErrors < 0)")
+                .addStatement("throw new IllegalArgumentException($S)", "maxErrors must not be negative")
+                .endControlFlow()
+                .addStatement("this.maxErrors = maxErrors")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("setRecordErrors")
+                .addJavadoc("If disabled, no ParseError is created and getErrors() returns an empty array,\n")
+                .addJavadoc("the errors are only counted.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(boolean.class, "recordErrors")
+                .addStatement("this.recordErrors = recordErrors")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getErrorCount")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return errorCount")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getFirstErrorExpected")
+                .addJavadoc("@return symbol expected by the first error, as in ParseError.expected\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("assert errorCount != 0")
+                .addStatement("return firstErrorExpected")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getFirstErrorIndex")
+                .addJavadoc("@return index of the token of the first error, counted from the last reset\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("assert errorCount != 0")
+                .addStatement("return firstErrorIndex")
+                .build()
+        );
+
+    }
+
+    static void constructListener(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        if (!context.options.listener) {
+            return;
+        }
+
+        final ClassName parseListener = ClassName.get(context.packageName, "ParseListener");
+
+        classBuilder.addField(
+            FieldSpec.builder(parseListener, "listener", Modifier.PRIVATE)
+                .initializer("ParseListener.NONE")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("setListener")
+                .addJavadoc("Sets the listener receiving the value of every reduced production, null removes it.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(parseListener, "listener")
+                .addStatement("this.listener = listener == null ? ParseListener.NONE : listener")
+                .build()
+        );
+
+    }
+
+    static void constructMetrics(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        if (!context.options.metrics) {
+            return;
+        }
+
+        final ClassName parserMetrics = ClassName.get(context.packageName, "ParserMetrics");
 
-            for (int x = 0; x < table.terminalCount; x++) {
+        classBuilder.addField(
+            FieldSpec.builder(parserMetrics, "metrics", Modifier.PRIVATE)
+                .initializer("ParserMetrics.GLOBAL")
+                .build()
+        );
 
-                sb.append(table.table[y][x]);
+        // counted in plain fields and published to the shared adders once per parse
 
-                if (x != table.terminalCount - 1 || y != table.nonTerminalCount - 1) {
-                    sb.append(',');
-                }
+        for (String counter : new String[] {"metricTokens", "metricErrors", "metricReductions", "metricSynchronizations", "metricMaxDepth"}) {
+            classBuilder.addField(long.class, counter, Modifier.PRIVATE);
+        }
+
+        classBuilder.addField(
+            FieldSpec.builder(long[].class, "metricExpansions", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new long[$L]", context.table.productionActions.length + 1)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("setMetrics")
+                .addJavadoc("Sets the counters this parser publishes to, null restores ParserMetrics.GLOBAL.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(parserMetrics, "metrics")
+                .addStatement("this.metrics = metrics == null ? ParserMetrics.GLOBAL : metrics")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("publishMetrics")
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("metrics.record(metricTokens, metricErrors, metricReductions, metricSynchronizations, metricMaxDepth, metricExpansions)")
+                .addStatement("metricTokens = 0")
+                .addStatement("metricErrors = 0")
+                .addStatement("metricReductions = 0")
+                .addStatement("metricSynchronizations = 0")
+                .addStatement("metricMaxDepth = 0")
+                .build()
+        );
+
+    }
+
+    /**
+     * @return the production without its code, for generated descriptions
+     */
+    static String describeProduction(ParsingTableProduction production) {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(production.label);
+        sb.append(" ->");
+
+        for (Symbol symbol : production.body) {
+            sb.append(' ');
+            sb.append(symbol.id);
+        }
+
+        return sb.toString();
+
+    }
 
+    /**
+     * @return field holding the description of every production, indexed by production id - 1
+     */
+    static FieldSpec constructProductionDescriptions(ParsingTable table) {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+
+        for (int i = 0; i < table.productionActions.length; i++) {
+
+            sb.append('\n');
+            sb.append(CodeBlock.of("$S", describeProduction(table.productionActions[i])));
+
+            if (i != table.productionActions.length - 1) {
+                sb.append(',');
             }
 
         }
 
         sb.append('}');
 
-        return FieldSpec.builder(int[].class, "table")
-            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        return FieldSpec.builder(String[].class, "productions", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
             .initializer("$L", sb.toString())
             .build();
 
     }
 
+    static void constructEvents(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        if (!context.options.events) {
+            return;
+        }
+
+        final ClassName eventType = ClassName.get("jdk.jfr", "EventType");
+        final ClassName parseEvent = ClassName.get(context.packageName, "ParseEvent");
+        final ClassName reductionEvent = ClassName.get(context.packageName, "ReductionEvent");
+
+        classBuilder.addField(
+            FieldSpec.builder(eventType, "PARSE_EVENT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.getEventType($T.class)", eventType, parseEvent)
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(eventType, "REDUCTION_EVENT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.getEventType($T.class)", eventType, reductionEvent)
+                .build()
+        );
+
+        // null unless a recording was running when the first token arrived
+        classBuilder.addField(parseEvent, "parseEvent", Modifier.PRIVATE);
+
+        classBuilder.addField(int.class, "peakDepth", Modifier.PRIVATE);
+
+        classBuilder.addField(boolean.class, "sampleReductions", Modifier.PRIVATE);
+
+        classBuilder.addField(int.class, "reductionCountdown", Modifier.PRIVATE);
+
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "reductionInterval", Modifier.PRIVATE)
+                .initializer("1024")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("setReductionSampling")
+                .addJavadoc("Sets after how many reductions a ReductionEvent is emitted while it is enabled.\n")
+                .addJavadoc("Takes effect with the next parse.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "interval")
+                .beginControlFlow("if (interval < 1)")
+                .addStatement("throw new IllegalArgumentException(\"interval must be positive\")")
+                .endControlFlow()
+                .addStatement("reductionInterval = interval")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("beginParseEvent")
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("peakDepth = 0")
+                .beginControlFlow("if (PARSE_EVENT.isEnabled())")
+                .addStatement("parseEvent = new ParseEvent()")
+                .addStatement("parseEvent.begin()")
+                .endControlFlow()
+                .addStatement("sampleReductions = REDUCTION_EVENT.isEnabled()")
+                .addStatement("reductionCountdown = reductionInterval")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("commitParseEvent")
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("sampleReductions = false")
+                .beginControlFlow("if (parseEvent == null)")
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("parseEvent.end()")
+                .beginControlFlow("if (parseEvent.shouldCommit())")
+                .addStatement("parseEvent.tokens = tokenCount")
+                .addStatement("parseEvent.errors = errorCount")
+                .addStatement("parseEvent.peakDepth = peakDepth")
+                .addStatement("parseEvent.reachedEof = reachedEof")
+                .addStatement("parseEvent.commit()")
+                .endControlFlow()
+                .addStatement("parseEvent = null")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("sampleReduction")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "actionId")
+                .addStatement("reductionCountdown = reductionInterval")
+                .addStatement("ReductionEvent event = new ReductionEvent()")
+                .beginControlFlow("if (event.shouldCommit())")
+                .addStatement("event.production = ReductionEvent.describe(actionId)")
+                .addStatement("event.tokenIndex = tokenCount - 1")
+                .addStatement("event.commit()")
+                .endControlFlow()
+                .build()
+        );
+
+    }
+
+    /**
+     * @return whether the recursive-descent backend keeps track of its nesting
+     */
+    static boolean tracksDepth(GeneratorContext context) {
+        return context.options.metrics || context.options.events;
+    }
+
+    static boolean hasReductionHooks(GeneratorContext context) {
+        return context.options.metrics || context.options.events;
+    }
+
+    /**
+     * Generates the instrumentation following the increment of tokenCount.
+     */
+    static void addTokenHooks(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (context.options.metrics) {
+            b.addStatement("metricTokens++");
+        }
+
+        if (context.options.events) {
+            b.beginControlFlow("if (tokenCount == 1)");
+            b.addStatement("beginParseEvent()");
+            b.endControlFlow();
+        }
+
+    }
+
+    /**
+     * Generates the instrumentation of an expanded production.
+     * @param depth expression evaluating to the depth of the parse stack after the expansion
+     */
+    static void addExpansionHooks(GeneratorContext context, MethodSpec.Builder b, String actionId, String depth) {
+
+        if (context.options.metrics) {
+            b.addStatement("metricExpansions[$L]++", actionId);
+            b.beginControlFlow("if ($L > metricMaxDepth)", depth);
+            b.addStatement("metricMaxDepth = $L", depth);
+            b.endControlFlow();
+        }
+
+        if (context.options.events) {
+            b.beginControlFlow("if ($L > peakDepth)", depth);
+            b.addStatement("peakDepth = $L", depth);
+            b.endControlFlow();
+        }
+
+    }
+
+    static void addReductionHooks(GeneratorContext context, MethodSpec.Builder b, String actionId) {
+
+        if (context.options.metrics) {
+            b.addStatement("metricReductions++");
+        }
+
+        if (context.options.events) {
+            b.beginControlFlow("if (sampleReductions && --reductionCountdown == 0)");
+            b.addStatement("sampleReduction($L)", actionId);
+            b.endControlFlow();
+        }
+
+    }
+
+    static void addSynchronizationHooks(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (context.options.metrics) {
+            b.addStatement("metricSynchronizations++");
+        }
+
+    }
+
+    /**
+     * Generates the instrumentation run once the parser accepts no more input or is reset.
+     */
+    static void addParseEndHooks(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (context.options.metrics) {
+            b.addStatement("publishMetrics()");
+        }
+
+        if (context.options.events) {
+            b.addStatement("commitParseEvent()");
+        }
+
+    }
+
+    /**
+     * Generates the body of the error method up to the check of the limit.
+     */
+    static void addErrorRecord(GeneratorContext context, MethodSpec.Builder b) {
+
+        b.addParameter(int.class, "expected");
+        b.addParameter(int.class, "tokenId");
+        b.addParameter(context.getTokenTypeName(), "token");
+
+        b.beginControlFlow("if (errorCount == 0)");
+        b.addStatement("firstErrorExpected = expected");
+        b.addStatement("firstErrorIndex = tokenCount - 1");
+        b.endControlFlow();
+
+        b.addStatement("errorCount++");
+
+        if (context.options.metrics) {
+            b.addStatement("metricErrors++");
+        }
+
+        b.beginControlFlow("if (recordErrors)");
+        b.addStatement("errors.add(new ParseError(expected, tokenId, token))");
+        b.endControlFlow();
+
+    }
+
     static FieldSpec constructActionTable(ParsingTable table) {
+        return constructActionTable(table, false);
+    }
 
-        StringBuilder sb = new StringBuilder();
+    static FieldSpec constructActionTable(ParsingTable table, boolean withRootAction) {
+        return constructActionTable(table, withRootAction, null);
+    }
 
-        sb.append('{');
+    static FieldSpec constructActionTable(ParsingTable table, boolean withRootAction, String chunkSymbol) {
 
-        for (ParsingTableProduction productionAction : table.productionActions) {
+        // every action is written as its length followed by the ids of its symbols
 
-            sb.append('\n');
+        ArrayList<Integer> values = new ArrayList<>();
 
-            sb.append('{');
+        int count = 0;
 
-            for (Symbol symbol : productionAction.body) {
+        if (withRootAction) {
 
-                int id = table.mapping.mapKey(symbol.id);
+            // the action at index 0 consists of the start symbol only,
+            // so that action ids can be used as indexes without subtracting 1
 
-                sb.append(id);
+            values.add(1);
+            values.add(table.mapping.mapKey(table.startSymbol));
+            count++;
 
-                sb.append(',');
+        }
 
-            }
+        for (ParsingTableProduction productionAction : table.productionActions) {
 
-            if (!productionAction.body.isEmpty()) {
-                sb.deleteCharAt(sb.length() - 1);
+            values.add(productionAction.body.size());
+
+            for (Symbol symbol : productionAction.body) {
+                values.add(table.mapping.mapKey(symbol.id));
             }
 
-            sb.append('}');
-            sb.append(',');
+            count++;
 
         }
 
-        sb.deleteCharAt(sb.length() - 1);
+        if (withRootAction && chunkSymbol != null) {
 
-        sb.append('}');
+            // root action of the chunked parser, placed after the productions
+
+            values.add(1);
+            values.add(table.mapping.mapKey(chunkSymbol));
+            count++;
+
+        }
+
+        int[] lengthsAndSymbols = new int[values.size()];
+
+        for (int i = 0; i < lengthsAndSymbols.length; i++) {
+            lengthsAndSymbols[i] = values.get(i);
+        }
 
         return FieldSpec.builder(int[][].class, "actionTable")
             .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
-            .initializer("$L", sb.toString())
+            .initializer("unpackActionTable($L, unpack($L))", count, packedArguments(lengthsAndSymbols))
             .build();
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Adds the methods decoding the tables written by constructTable and constructActionTable.
+     */
+    static void constructUnpackMethods(TypeSpec.Builder classBuilder) {
+        classBuilder.addMethod(constructUnpackMethod());
+        classBuilder.addMethod(constructUnpackActionTableMethod());
+    }
+
+}
@@ -0,0 +1,242 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generates the live ParserMetrics counters and their immutable ParserStats snapshot.
+ */
+class MetricsGenerator {
+
+    private static final ClassName longAdder = ClassName.get("java.util.concurrent.atomic", "LongAdder");
+
+    private static final ClassName longAccumulator = ClassName.get("java.util.concurrent.atomic", "LongAccumulator");
+
+    private static final String[] counters = {"tokens", "errors", "reductions", "synchronizations"};
+
+    private MetricsGenerator() {}
+
+    static TypeSpec.Builder generateMetrics(GeneratorContext context) {
+
+        final ClassName parserMetrics = ClassName.get(context.packageName, "ParserMetrics");
+        final ClassName parserStats = ClassName.get(context.packageName, "ParserStats");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParserMetrics")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addJavadoc("Counters shared by any number of parsers.\n");
+        classBuilder.addJavadoc("A parser counts in plain fields and adds them here once its input is complete and on reset(),\n");
+        classBuilder.addJavadoc("so the adders are only touched once per parse.\n");
+
+        classBuilder.addField(
+            FieldSpec.builder(parserMetrics, "GLOBAL", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("Counters of all parsers that haven't been given their own.\n")
+                .initializer("new ParserMetrics()")
+                .build()
+        );
+
+        for (String counter : counters) {
+            classBuilder.addField(
+                FieldSpec.builder(longAdder, counter, Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T()", longAdder)
+                    .build()
+            );
+        }
+
+        classBuilder.addField(
+            FieldSpec.builder(longAccumulator, "maxDepth", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T(Math::max, 0)", longAccumulator)
+                .build()
+        );
+
+        // one adder per production, in the order of the production ids
+        classBuilder.addField(ArrayTypeName.of(longAdder), "expansions", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("expansions = new $T[$L]", longAdder, context.table.productionActions.length)
+                .beginControlFlow("for (int i = 0; i < expansions.length; i++)")
+                .addStatement("expansions[i] = new $T()", longAdder)
+                .endControlFlow()
+                .build()
+        );
+
+        // called by the parser with its local counters, the expansions are indexed by action id
+
+        MethodSpec.Builder record = MethodSpec.methodBuilder("record")
+            .addJavadoc("Adds the counters of a parser, the expansion counts are cleared.\n")
+            .returns(void.class);
+
+        for (String counter : counters) {
+            record.addParameter(long.class, counter);
+        }
+
+        record.addParameter(long.class, "maxDepth");
+        record.addParameter(long[].class, "expansions");
+
+        for (String counter : counters) {
+            record.beginControlFlow("if ($L != 0)", counter);
+            record.addStatement("this.$L.add($L)", counter, counter);
+            record.endControlFlow();
+        }
+
+        record.beginControlFlow("if (maxDepth != 0)");
+        record.addStatement("this.maxDepth.accumulate(maxDepth)");
+        record.endControlFlow();
+
+        record.beginControlFlow("for (int i = 1; i < expansions.length; i++)");
+        record.beginControlFlow("if (expansions[i] != 0)");
+        record.addStatement("this.expansions[i - 1].add(expansions[i])");
+        record.addStatement("expansions[i] = 0");
+        record.endControlFlow();
+        record.endControlFlow();
+
+        classBuilder.addMethod(record.build());
+
+        MethodSpec.Builder snapshot = MethodSpec.methodBuilder("snapshot")
+            .addJavadoc("The counters are read one after another, so a snapshot taken while parsers\n")
+            .addJavadoc("are publishing may be slightly inconsistent.\n")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(parserStats)
+            .addStatement("long[] productionExpansions = new long[expansions.length]")
+            .beginControlFlow("for (int i = 0; i < expansions.length; i++)")
+            .addStatement("productionExpansions[i] = expansions[i].sum()")
+            .endControlFlow();
+
+        StringBuilder arguments = new StringBuilder();
+
+        for (String counter : counters) {
+            arguments.append(counter).append(".sum(), ");
+        }
+
+        snapshot.addStatement("return new ParserStats($LmaxDepth.get(), productionExpansions)", arguments.toString());
+
+        classBuilder.addMethod(snapshot.build());
+
+        MethodSpec.Builder reset = MethodSpec.methodBuilder("reset")
+            .addModifiers(Modifier.PUBLIC);
+
+        for (String counter : counters) {
+            reset.addStatement("$L.reset()", counter);
+        }
+
+        reset.addStatement("maxDepth.reset()");
+        reset.beginControlFlow("for ($T expansion : expansions)", longAdder);
+        reset.addStatement("expansion.reset()");
+        reset.endControlFlow();
+
+        classBuilder.addMethod(reset.build());
+
+        return classBuilder;
+
+    }
+
+    static TypeSpec.Builder generateStats(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParserStats")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addJavadoc("Snapshot of ParserMetrics.\n");
+
+        classBuilder.addField(MetaGenerator.constructProductionDescriptions(context.table));
+
+        classBuilder.addField(
+            FieldSpec.builder(long.class, "tokens", Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Tokens fed to the parsers.\n")
+                .build()
+        );
+
+        classBuilder.addField(long.class, "errors", Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addField(
+            FieldSpec.builder(long.class, "reductions", Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Productions whose symbols have all been matched.\n")
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(long.class, "synchronizations", Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Non-terminals skipped by error recovery at a synchronizing token.\n")
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(long.class, "maxDepth", Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Deepest parse stack reached by any parse, in symbols for the nodes stack,\n")
+                .addJavadoc("in frames for the other stacks and in nested calls for the recursive-descent backend.\n")
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(long[].class, "expansions", Modifier.PRIVATE, Modifier.FINAL)
+                .build()
+        );
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+
+        for (String counter : counters) {
+            constructor.addParameter(long.class, counter);
+            constructor.addStatement("this.$L = $L", counter, counter);
+        }
+
+        constructor.addParameter(long.class, "maxDepth");
+        constructor.addParameter(long[].class, "expansions");
+        constructor.addStatement("this.maxDepth = maxDepth");
+        constructor.addStatement("this.expansions = expansions");
+
+        classBuilder.addMethod(constructor.build());
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getProductionCount")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return expansions.length")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getExpansions")
+                .addJavadoc("@return how often the production was chosen by a lookup in the table\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(long.class)
+                .addParameter(int.class, "production")
+                .addStatement("return expansions[production]")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getProduction")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addParameter(int.class, "production")
+                .addStatement("return productions[production]")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("StringBuilder sb = new StringBuilder()")
+                .addStatement("sb.append(\"tokens=\").append(tokens)")
+                .addStatement("sb.append(\" errors=\").append(errors)")
+                .addStatement("sb.append(\" reductions=\").append(reductions)")
+                .addStatement("sb.append(\" synchronizations=\").append(synchronizations)")
+                .addStatement("sb.append(\" maxDepth=\").append(maxDepth)")
+                .beginControlFlow("for (int i = 0; i < expansions.length; i++)")
+                .beginControlFlow("if (expansions[i] != 0)")
+                .addStatement("sb.append('\\n').append(expansions[i]).append(' ').append(productions[i])")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return sb.toString()")
+                .build()
+        );
+
+        return classBuilder;
+
+    }
+
+}
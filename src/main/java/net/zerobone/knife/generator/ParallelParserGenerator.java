@@ -0,0 +1,177 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+class ParallelParserGenerator {
+
+    private ParallelParserGenerator() {}
+
+    private static TypeSpec constructResultClass(GeneratorContext context) {
+
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Result")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+
+        classBuilder.addField(Object.class, "value", Modifier.PUBLIC, Modifier.FINAL);
+        classBuilder.addField(ArrayTypeName.of(parseError), "errors", Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addField(
+            FieldSpec.builder(Exception.class, "exception")
+                .addJavadoc("Checked exception thrown by the token source, null if the whole input could be read.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .build()
+        );
+
+        classBuilder.addField(boolean.class, "success", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addParameter(Object.class, "value")
+                .addParameter(ArrayTypeName.of(parseError), "errors")
+                .addParameter(Exception.class, "exception")
+                .addParameter(boolean.class, "success")
+                .addStatement("this.value = value")
+                .addStatement("this.errors = errors")
+                .addStatement("this.exception = exception")
+                .addStatement("this.success = success")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("successfullyParsed")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return success")
+                .build()
+        );
+
+        return classBuilder.build();
+
+    }
+
+    private static MethodSpec constructParseDocumentMethod(GeneratorContext context) {
+
+        final ClassName tokenSource = ClassName.get(context.packageName, "TokenSource");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parseDocument");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(ClassName.get(context.packageName, "ParallelParser", "Result"));
+        b.addParameter(ParameterizedTypeName.get(tokenSource, WildcardTypeName.subtypeOf(Object.class)), "source");
+
+        b.addStatement("Parser parser = parsers.poll()");
+
+        // a parser from the queue has finished the previous document and has to start over
+
+        b.beginControlFlow("if (parser == null)");
+        b.addStatement("parser = new Parser()");
+        b.nextControlFlow("else");
+        b.addStatement("parser.reset()");
+        b.endControlFlow();
+
+        b.beginControlFlow("try");
+
+        b.beginControlFlow("try");
+        b.addStatement("parser.parseAll(source)");
+        b.nextControlFlow("catch (RuntimeException e)");
+        b.addStatement("throw e");
+        b.nextControlFlow("catch (Exception e)");
+        b.addStatement("return new Result(null, parser.getErrors(), e, false)");
+        b.endControlFlow();
+
+        b.addStatement("boolean success = parser.successfullyParsed()");
+        b.addStatement("return new Result(success ? parser.getValue() : null, parser.getErrors(), null, success)");
+
+        b.nextControlFlow("finally");
+        b.addStatement("parsers.offer(parser)");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final ClassName forkJoinPool = ClassName.get("java.util.concurrent", "ForkJoinPool");
+        final ClassName concurrentLinkedQueue = ClassName.get("java.util.concurrent", "ConcurrentLinkedQueue");
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+        final ClassName tokenSource = ClassName.get(context.packageName, "TokenSource");
+        final ClassName result = ClassName.get(context.packageName, "ParallelParser", "Result");
+
+        final TypeName anySource = ParameterizedTypeName.get(tokenSource, WildcardTypeName.subtypeOf(Object.class));
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParallelParser")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        classBuilder.addField(forkJoinPool, "pool", Modifier.PRIVATE, Modifier.FINAL);
+
+        // every task takes a parser from here instead of Parser.acquire(),
+        // because join() can run tasks on the calling thread, which may be using its own acquired parser
+
+        classBuilder.addField(
+            FieldSpec.builder(ParameterizedTypeName.get(concurrentLinkedQueue, parser), "parsers", Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T<>()", concurrentLinkedQueue)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this($T.commonPool())", forkJoinPool)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(forkJoinPool, "pool")
+                .addStatement("this.pool = pool")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("parse")
+                .addJavadoc("Parses every token source as a separate document.\n")
+                .addJavadoc("@return one result per source, in the order of the collection\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(result))
+                .addParameter(
+                    ParameterizedTypeName.get(ClassName.get("java.util", "Collection"), WildcardTypeName.subtypeOf(anySource)),
+                    "sources"
+                )
+                .addStatement("return parse(sources.spliterator())")
+                .build()
+        );
+
+        // the parallel stream is started from a task of the pool,
+        // so that it is split among the workers of that pool
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("parse")
+                .addJavadoc("Parses every token source as a separate document.\n")
+                .addJavadoc("@return one result per source, in encounter order\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(result))
+                .addParameter(
+                    ParameterizedTypeName.get(ClassName.get("java.util", "Spliterator"), WildcardTypeName.subtypeOf(anySource)),
+                    "sources"
+                )
+                .addStatement(
+                    "return pool.submit(() -> $T.stream(sources, true).map(this::parseDocument).toArray(Result[]::new)).join()",
+                    ClassName.get("java.util.stream", "StreamSupport")
+                )
+                .build()
+        );
+
+        classBuilder.addMethod(constructParseDocumentMethod(context));
+
+        classBuilder.addType(constructResultClass(context));
+
+        return classBuilder;
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+import net.zerobone.knife.grammar.table.ParsingTableProduction;
+
+import javax.lang.model.element.Modifier;
+import java.util.LinkedHashSet;
+
+class ParseListenerGenerator {
+
+    private ParseListenerGenerator() {}
+
+    private static String callbackName(String label) {
+        // non-terminals introduced by left recursion elimination contain primes
+        return "onReduce_" + label.replace('\'', '$');
+    }
+
+    /**
+     * @param typed the value already has the type of the non-terminal, otherwise it is cast to it
+     * @return expression passing the value of a reduced production through the listener
+     */
+    static String listenerCall(GeneratorContext context, String label, String value, boolean typed) {
+
+        String type = context.symbolType(label);
+
+        if (typed || type.equals("Object")) {
+            return "listener." + callbackName(label) + "(" + value + ")";
+        }
+
+        return "listener." + callbackName(label) + "((" + type + ")" + value + ")";
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final ClassName parseListener = ClassName.get(context.packageName, "ParseListener");
+
+        TypeSpec.Builder interfaceBuilder = TypeSpec.interfaceBuilder("ParseListener")
+            .addModifiers(Modifier.PUBLIC);
+
+        interfaceBuilder.addJavadoc("Receives the value of every production once it has been reduced.\n");
+        interfaceBuilder.addJavadoc("The value returned by a callback is passed on to the enclosing production,\n");
+        interfaceBuilder.addJavadoc("returning null releases a value that has already been processed.\n");
+
+        interfaceBuilder.addField(
+            FieldSpec.builder(parseListener, "NONE")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new ParseListener() {}")
+                .build()
+        );
+
+        // one callback per non-terminal, in the order of the productions
+
+        LinkedHashSet<String> labels = new LinkedHashSet<>();
+
+        for (ParsingTableProduction production : context.table.productionActions) {
+            labels.add(production.label);
+        }
+
+        for (String label : labels) {
+
+            TypeName type = TypeVariableName.get(context.symbolType(label));
+
+            interfaceBuilder.addMethod(
+                MethodSpec.methodBuilder(callbackName(label))
+                    .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                    .returns(type)
+                    .addParameter(type, "value")
+                    .addStatement("return value")
+                    .build()
+            );
+
+        }
+
+        return interfaceBuilder;
+
+    }
+
+}
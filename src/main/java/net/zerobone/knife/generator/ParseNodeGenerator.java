@@ -5,64 +5,271 @@ import net.zerobone.knife.grammar.Symbol;
 import net.zerobone.knife.grammar.table.ParsingTableProduction;
 
 import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
 
 class ParseNodeGenerator {
 
     private ParseNodeGenerator() {}
 
-    private static MethodSpec constructReduceMethod(GeneratorContext context) {
+    // number of productions dispatched by a single switch, small enough
+    // to keep every dispatch method far below HotSpot's HugeMethodLimit
+    private static final int DISPATCH_CHUNK_SHIFT = 6;
 
-        MethodSpec.Builder b = MethodSpec.methodBuilder("reduce");
+    private static String reduceMethodName(int actionId) {
+        return "reduce" + actionId;
+    }
 
-        b.returns(void.class);
+    private static MethodSpec constructProductionMethod(GeneratorContext context, int actionId, ParsingTableProduction production) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder(reduceMethodName(actionId));
+
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+
+        for (Symbol symbol : production.body) {
+
+            if (symbol.argumentName == null) {
+                continue;
+            }
+
+            b.addParameter(TypeVariableName.get(context.symbolType(symbol.id)), symbol.argumentName);
+
+        }
+
+        // v is untyped unless the value is kept in a primitive slot
+
+        if (context.hasPrimitiveSlot(production.label)) {
+            String type = context.symbolType(production.label);
+            b.returns(TypeVariableName.get(type));
+            b.addStatement("$L v = $L", type, PrimitiveSlots.defaultValue(type));
+        }
+        else {
+            b.returns(Object.class);
+            b.addStatement("Object v = null");
+        }
+
+        // b.addComment("--- user code begin ---");
+
+        b.addCode(production.code);
+        b.addCode("\n");
+
+        // b.addComment("--- user code end ---");
+
+        b.addStatement("return v");
+
+        return b.build();
+
+    }
+
+    /**
+     * @return expression for the value of the j-th symbol of the production being reduced
+     */
+    private static String argumentExpression(GeneratorContext context, ParsingTableProduction production, int j) {
+
+        Symbol symbol = production.body.get(j);
 
-        // b.addStatement("System.out.println(\"Reducing action + \" + actionId + \".\")");
+        String type = context.symbolType(symbol.id);
 
-        b.addStatement("Object v");
+        if (context.hasPrimitiveSlot(symbol.id)) {
+
+            switch (context.options.stack) {
+                case VALUES:
+                    return PrimitiveSlots.decode(type, "primitives[base + " + j + "]");
+                case FRAMES:
+                    return PrimitiveSlots.decode(type, "primitives[" + j + "]");
+                default:
+                    return PrimitiveSlots.decode(type, "children[" + j + "].primitive");
+            }
+
+        }
+
+        String cast = type.equals("Object") ? "" : "(" + type + ")";
+
+        switch (context.options.stack) {
+            case VALUES:
+                return cast + "values[base + " + j + "]";
+            case FRAMES:
+                return cast + "children[" + j + "]";
+            default:
+                return cast + "children[" + j + "].payload";
+        }
+
+    }
+
+    /**
+     * Generates the statements storing the value of the reduced production.
+     */
+    private static void addResultStore(GeneratorContext context, MethodSpec.Builder b, String label, String value, boolean typed) {
+
+        if (context.options.listener) {
+            value = ParseListenerGenerator.listenerCall(context, label, value, typed);
+        }
+
+        if (context.hasPrimitiveSlot(label)) {
+
+            String slot = PrimitiveSlots.encode(context.symbolType(label), value);
+
+            switch (context.options.stack) {
+                case VALUES:
+                    b.addStatement("primitives[base] = $L", slot);
+                    // the first argument may still occupy the slot
+                    b.addStatement("values[base] = null");
+                    return;
+                case FRAMES:
+                    b.addStatement("parent.storePrimitive(position, $L)", slot);
+                    return;
+                default:
+                    b.addStatement("primitive = $L", slot);
+                    return;
+            }
+
+        }
+
+        switch (context.options.stack) {
+            case VALUES:
+                b.addStatement("values[base] = $L", value);
+                return;
+            case FRAMES:
+                b.addStatement("parent.children[position] = $L", value);
+                return;
+            default:
+                b.addStatement("payload = $L", value);
+        }
+
+    }
+
+    private static void addDispatchParameters(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+
+            b.addModifiers(Modifier.STATIC);
+            b.addParameter(int.class, "actionId");
+            b.addParameter(Object[].class, "values");
+
+            if (context.usesPrimitiveSlots()) {
+                b.addParameter(long[].class, "primitives");
+            }
+
+            b.addParameter(int.class, "base");
+
+        }
+        else if (context.options.stack == GeneratorOptions.StackMode.FRAMES) {
+            // the value is stored into the slot of the parent
+            b.addParameter(ClassName.get(context.packageName, "ParseNode"), "parent");
+            b.addParameter(int.class, "position");
+        }
+
+        if (context.options.listener) {
+            b.addParameter(ClassName.get(context.packageName, "ParseListener"), "listener");
+        }
+
+    }
+
+    private static String dispatchArguments(GeneratorContext context) {
+
+        String arguments;
+
+        switch (context.options.stack) {
+            case VALUES:
+                arguments = context.usesPrimitiveSlots() ? "actionId, values, primitives, base" : "actionId, values, base";
+                break;
+            case FRAMES:
+                arguments = "parent, position";
+                break;
+            default:
+                arguments = "";
+                break;
+        }
+
+        if (!context.options.listener) {
+            return arguments;
+        }
+
+        return arguments.isEmpty() ? "listener" : arguments + ", listener";
+
+    }
+
+    /**
+     * Generates the switch calling the production methods of the actions in [from, to).
+     */
+    private static void addDispatchSwitch(GeneratorContext context, MethodSpec.Builder b, int from, int to) {
 
         b.beginControlFlow("switch (actionId - 1)");
 
-        for (int i = 0; i < context.table.productionActions.length; i++) {
+        // productions without code evaluate to null, or to
+        // the default value of their primitive type
+
+        for (int pass = 0; pass < 2 && !context.options.listener; pass++) {
+
+            final boolean primitive = pass == 1;
+
+            String label = null;
+
+            for (int i = from; i < to; i++) {
+
+                final ParsingTableProduction production = context.table.productionActions[i];
+
+                if (production.code == null && context.hasPrimitiveSlot(production.label) == primitive) {
+                    b.addCode("case $L:\n", i);
+                    label = production.label;
+                }
+
+            }
+
+            if (label == null) {
+                continue;
+            }
+
+            b.addCode("$>");
+            addResultStore(context, b, label, PrimitiveSlots.defaultValue(context.symbolType(label)), PrimitiveSlots.isTypedDefaultValue(context.symbolType(label)));
+            b.addStatement("break$<");
+
+        }
+
+        for (int i = from; i < to; i++) {
 
             final ParsingTableProduction production = context.table.productionActions[i];
 
             if (production.code == null) {
-                b.addStatement("case $L: break", i);
+
+                if (context.options.listener) {
+                    // the listener is also notified of productions without code
+                    b.addCode("case $L:\n$>", i);
+                    addResultStore(context, b, production.label, PrimitiveSlots.defaultValue(context.symbolType(production.label)), PrimitiveSlots.isTypedDefaultValue(context.symbolType(production.label)));
+                    b.addStatement("break$<");
+                }
+
                 continue;
+
             }
 
-            b.addCode("case $L:\n$>", i);
-            b.addCode("{$>\n");
+            StringBuilder call = new StringBuilder();
 
-            for (int j = 0; j < production.body.size(); j++) {
+            call.append(reduceMethodName(i + 1));
+            call.append('(');
 
-                Symbol symbol = production.body.get(j);
+            boolean first = true;
 
-                if (symbol.argumentName == null) {
+            for (int j = 0; j < production.body.size(); j++) {
+
+                if (production.body.get(j).argumentName == null) {
                     continue;
                 }
 
-                String symbolType = context.typeMap.get(symbol.id);
-
-                if (symbolType == null) {
-                    symbolType = "Object";
+                if (!first) {
+                    call.append(", ");
                 }
 
-                int childIndex = production.body.size() - 1 - j;
+                first = false;
 
-                b.addStatement(symbolType + " " + symbol.argumentName + " = (" + symbolType + ")((ParseNode)children.get(" + childIndex + ")).payload");
+                call.append(argumentExpression(context, production, j));
 
             }
 
-            // b.addComment("--- user code begin ---");
+            call.append(')');
 
-            b.addCode(production.code);
-            b.addCode("\n");
-
-            // b.addComment("--- user code end ---");
-
-            b.addCode("$<}");
-            b.addCode("\n");
+            b.addCode("case $L:\n$>", i);
+            // the reduce methods of non-terminals with a primitive slot return their type
+            addResultStore(context, b, production.label, call.toString(), context.hasPrimitiveSlot(production.label));
             b.addStatement("break$<");
 
         }
@@ -72,10 +279,155 @@ class ParseNodeGenerator {
 
         b.endControlFlow();
 
-        b.addStatement("payload = v");
-        b.addStatement("children = null");
+    }
 
-        return b.build();
+    private static void constructReduceMethods(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final int productionCount = context.table.productionActions.length;
+
+        final int chunkSize = 1 << DISPATCH_CHUNK_SHIFT;
+
+        // the value of the reduced production is stored into the payload of the node,
+        // the slot of the parent frame or the value stack, depending on the stack mode
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("reduce");
+
+        b.returns(void.class);
+
+        addDispatchParameters(context, b);
+
+        ArrayList<MethodSpec> chunkMethods = new ArrayList<>();
+
+        if (productionCount <= chunkSize) {
+            addDispatchSwitch(context, b, 0, productionCount);
+        }
+        else {
+
+            b.beginControlFlow("switch ((actionId - 1) >> $L)", DISPATCH_CHUNK_SHIFT);
+
+            for (int chunk = 0; chunk * chunkSize < productionCount; chunk++) {
+
+                b.addCode("case $L:\n", chunk);
+                b.addStatement("$>reduceChunk$L($L)", chunk, dispatchArguments(context));
+                b.addStatement("break$<");
+
+                MethodSpec.Builder chunkBuilder = MethodSpec.methodBuilder("reduceChunk" + chunk);
+
+                chunkBuilder.addModifiers(Modifier.PRIVATE);
+                chunkBuilder.returns(void.class);
+
+                addDispatchParameters(context, chunkBuilder);
+
+                addDispatchSwitch(context, chunkBuilder, chunk * chunkSize, Math.min(productionCount, (chunk + 1) * chunkSize));
+
+                chunkMethods.add(chunkBuilder.build());
+
+            }
+
+            b.addCode("default:\n$>");
+            b.addStatement("throw new IllegalStateException()$<");
+
+            b.endControlFlow();
+
+        }
+
+        if (context.options.stack == GeneratorOptions.StackMode.NODES) {
+            b.addStatement("children = null");
+        }
+
+        classBuilder.addMethod(b.build());
+
+        for (MethodSpec chunkMethod : chunkMethods) {
+            classBuilder.addMethod(chunkMethod);
+        }
+
+        // one method per production, with the arguments as typed parameters
+
+        for (int i = 0; i < productionCount; i++) {
+
+            final ParsingTableProduction production = context.table.productionActions[i];
+
+            if (production.code == null) {
+                continue;
+            }
+
+            classBuilder.addMethod(constructProductionMethod(context, i + 1, production));
+
+        }
+
+    }
+
+    private static TypeSpec.Builder generateFrameNode(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParseNode")
+            .addModifiers(Modifier.FINAL);
+
+        // fields
+
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "actionId")
+                .addModifiers(Modifier.FINAL)
+                .build()
+        );
+
+        // one slot per symbol of the production, in the order they are matched
+        classBuilder.addField(
+            FieldSpec
+                .builder(Object[].class, "children")
+                .addModifiers(Modifier.FINAL)
+                .build()
+        );
+
+        // methods
+
+        classBuilder.addMethod(
+            MethodSpec
+                .constructorBuilder()
+                .addParameter(int.class, "actionId")
+                .addParameter(int.class, "arity")
+                .addStatement("this.actionId = actionId")
+                .addStatement("children = new Object[arity]")
+                .build()
+        );
+
+        {
+            // copies the values matched so far, used when the state of the parser is captured
+            MethodSpec.Builder b = MethodSpec.constructorBuilder();
+
+            b.addParameter(ClassName.get(context.packageName, "ParseNode"), "other");
+
+            b.addStatement("actionId = other.actionId");
+            b.addStatement("children = other.children.clone()");
+
+            if (context.usesPrimitiveSlots()) {
+                b.addStatement("primitives = other.primitives == null ? null : other.primitives.clone()");
+            }
+
+            classBuilder.addMethod(b.build());
+        }
+
+        if (context.usesPrimitiveSlots()) {
+
+            // allocated once the first value of a primitive typed child is stored
+            classBuilder.addField(long[].class, "primitives");
+
+            classBuilder.addMethod(
+                MethodSpec
+                    .methodBuilder("storePrimitive")
+                    .addParameter(int.class, "position")
+                    .addParameter(long.class, "value")
+                    .beginControlFlow("if (primitives == null)")
+                    .addStatement("primitives = new long[children.length]")
+                    .endControlFlow()
+                    .addStatement("primitives[position] = value")
+                    .build()
+            );
+
+        }
+
+        constructReduceMethods(context, classBuilder);
+
+        return classBuilder;
 
     }
 
@@ -86,14 +438,42 @@ class ParseNodeGenerator {
         b.addParameter(int.class, "symbolId");
 
         b.addStatement("this.symbolId = symbolId");
-        b.addStatement("children = this.symbolId < 0 ? new ArrayList<>() : null");
 
         return b.build();
 
     }
 
+    private static TypeSpec.Builder generateActionHolder(GeneratorContext context) {
+
+        // with a value stack no parse nodes are created,
+        // the class only holds the semantic actions of the grammar
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParseNode")
+            .addModifiers(Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec
+                .constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build()
+        );
+
+        constructReduceMethods(context, classBuilder);
+
+        return classBuilder;
+
+    }
+
     static TypeSpec.Builder generate(GeneratorContext context) {
 
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+            return generateActionHolder(context);
+        }
+
+        if (context.options.stack == GeneratorOptions.StackMode.FRAMES) {
+            return generateFrameNode(context);
+        }
+
         TypeSpec.Builder classBuilder = TypeSpec.classBuilder("ParseNode")
             .addModifiers(Modifier.FINAL);
 
@@ -118,19 +498,28 @@ class ParseNodeGenerator {
                 .build()
         );
 
-        final ClassName arrayList = ClassName.get("java.util", "ArrayList");
-        final ClassName nodesClassName = ClassName.get("java.lang", "Object");
-
+        // sized from the production once the non-terminal is expanded,
+        // child i belongs to the i-th symbol of the production
         classBuilder.addField(
             FieldSpec
-                .builder(ParameterizedTypeName.get(arrayList, nodesClassName), "children")
+                .builder(ArrayTypeName.of(ClassName.get(context.packageName, "ParseNode")), "children")
                 .build()
         );
 
+        if (context.usesPrimitiveSlots()) {
+            // value of a non-terminal with a primitive type, payload stays null
+            classBuilder.addField(long.class, "primitive");
+        }
+
+        if (context.options.incremental) {
+            // set on the expanded nodes on the stack at a checkpoint of an IncrementalParser
+            classBuilder.addField(ClassName.get(context.packageName, "Parser", "SpineFrame"), "spine");
+        }
+
         // methods
 
         classBuilder.addMethod(constructConstructor());
-        classBuilder.addMethod(constructReduceMethod(context));
+        constructReduceMethods(context, classBuilder);
 
         return classBuilder;
 
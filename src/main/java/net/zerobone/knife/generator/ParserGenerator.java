@@ -8,6 +8,107 @@ class ParserGenerator {
 
     private ParserGenerator() {}
 
+    private static void constructFrameParserFields(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final ClassName parseNode = ClassName.get(context.packageName, "ParseNode");
+
+        final ClassName arrayList = ClassName.get("java.util", "ArrayList");
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+        TypeName errorsType = ParameterizedTypeName.get(
+            arrayList,
+            parseError
+        );
+
+        {
+            // frame i occupies stack[2 * i] (action id) and stack[2 * i + 1] (position in action)
+            FieldSpec field = FieldSpec
+                .builder(int[].class, "stack")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+        }
+
+        {
+            FieldSpec field = FieldSpec
+                .builder(int.class, "top")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+        }
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+
+            // semantic values of the symbols matched so far, the values of
+            // the top frame are the last action.length elements
+            FieldSpec field = FieldSpec
+                .builder(Object[].class, "values")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+
+            field = FieldSpec
+                .builder(int.class, "valueCount")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+
+            if (context.usesPrimitiveSlots()) {
+
+                // values of non-terminals with a primitive type, parallel to values
+                field = FieldSpec
+                    .builder(long[].class, "primitives")
+                    .addModifiers(Modifier.PRIVATE)
+                    .build();
+
+                classBuilder.addField(field);
+
+            }
+
+        }
+        else {
+
+            FieldSpec field = FieldSpec
+                .builder(ArrayTypeName.of(parseNode), "nodes")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+
+        }
+
+        {
+            FieldSpec field = FieldSpec.builder(errorsType, "errors")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new ArrayList<>()")
+                .build();
+
+            classBuilder.addField(field);
+        }
+
+        {
+            FieldSpec field = FieldSpec.builder(boolean.class, "reachedEof")
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+            classBuilder.addField(field);
+        }
+
+        if (context.options.stack == GeneratorOptions.StackMode.FRAMES) {
+            // the root node collects the value of the start symbol
+            FieldSpec field = FieldSpec.builder(parseNode, "parseTree")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new ParseNode(0, 1)")
+                .build();
+
+            classBuilder.addField(field);
+        }
+
+    }
+
     private static void constructParserFields(GeneratorContext context, TypeSpec.Builder classBuilder) {
 
         // stack type
@@ -31,7 +132,8 @@ class ParserGenerator {
         {
             FieldSpec field = FieldSpec
                 .builder(stackType, "stack")
-                .addModifiers(Modifier.PRIVATE)
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new Stack<>()")
                 .build();
 
             classBuilder.addField(field);
@@ -39,7 +141,8 @@ class ParserGenerator {
 
         {
             FieldSpec field = FieldSpec.builder(errorsType, "errors")
-                .addModifiers(Modifier.PRIVATE)
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new ArrayList<>()")
                 .build();
 
             classBuilder.addField(field);
@@ -63,26 +166,59 @@ class ParserGenerator {
 
     }
 
-    private static MethodSpec constructParseMethod(GeneratorContext context) {
+    /**
+     * Generates the code recording an error and moving on to the next token.
+     */
+    private static void addError(MethodSpec.Builder b, String expected, String consumed) {
 
-        MethodSpec.Builder b = MethodSpec.methodBuilder("parse");
+        if (consumed.equals("return")) {
+            b.addStatement("error($L, tokenId, token)", expected);
+            b.addStatement("return");
+            return;
+        }
 
-        b.addModifiers(Modifier.PUBLIC);
-        b.returns(void.class);
-        b.addParameter(int.class, "tokenId");
-        b.addParameter(context.getTokenTypeName(), "token");
+        // the remaining input is not looked at once the error limit is reached
+        b.beginControlFlow("if (error($L, tokenId, token))", expected);
+        b.addStatement("return");
+        b.endControlFlow();
+        b.addStatement(consumed);
 
-        // method body
+    }
+
+    /**
+     * Generates the loop that processes tokenId and token.
+     * @param consumed statement that moves on to the next token
+     */
+    private static void addParseStep(GeneratorContext context, MethodSpec.Builder b, String consumed) {
+
+        b.addStatement("tokenCount++");
+
+        MetaGenerator.addTokenHooks(context, b);
 
         b.beginControlFlow("while (true)");
 
+        b.beginControlFlow("if (stack.isEmpty())");
+        // the start symbol has already been reduced and the
+        // token following it was either eof or reported as an error
+        b.addStatement("return");
+        b.endControlFlow();
+
         b.addStatement("ParseNode prevRoot = stack.peek()");
 
         // inner loop
         b.beginControlFlow("while (prevRoot.actionId != 0)");
 
-        b.beginControlFlow("if (errors.isEmpty())");
-        b.addStatement("prevRoot.reduce()");
+        if (MetaGenerator.hasReductionHooks(context)) {
+            // skipped non-terminals are marked with -1
+            b.beginControlFlow("if (prevRoot.actionId > 0)");
+            MetaGenerator.addReductionHooks(context, b, "prevRoot.actionId");
+            b.endControlFlow();
+        }
+
+        ParserSpineGenerator.addCapture(context, b);
+
+        b.beginControlFlow("if (errorCount == 0)");
+        b.addStatement("prevRoot.reduce($L)", context.options.listener ? "listener" : "");
         b.nextControlFlow("else");
         b.addStatement("prevRoot.children = null");
         b.endControlFlow();
@@ -90,12 +226,7 @@ class ParserGenerator {
 
         b.addStatement("stack.pop()");
         b.beginControlFlow("if (stack.isEmpty())");
-        b.beginControlFlow("if (tokenId != T_EOF)");
-        b.addStatement("errors.add(new ParseError(T_EOF, tokenId, token))");
-        b.addStatement("return");
-        b.endControlFlow();
-        b.addStatement("reachedEof = true");
-        b.addStatement("return");
+        addCompletion(context, b);
         b.endControlFlow();
 
         b.addStatement("prevRoot = stack.peek()");
@@ -109,52 +240,461 @@ class ParserGenerator {
 
         b.beginControlFlow("if (tokenId != prevRoot.symbolId)");
         b.addStatement("stack.pop()");
-        b.addStatement("errors.add(new ParseError(prevRoot.symbolId, tokenId, token))");
-        b.addStatement("return");
+        addError(b, "prevRoot.symbolId", consumed);
         b.endControlFlow();
 
         // tokens match
         b.addStatement("prevRoot.payload = token");
         b.addStatement("stack.pop()");
-        b.addStatement("return");
+        b.addStatement(consumed);
 
         b.endControlFlow();
 
         // now handle non-terminals
 
-        b.addStatement("int actionId = table[(-prevRoot.symbolId - 1) * terminalCount + tokenId]");
+        MetaGenerator.addTableLookup(context, b, "-prevRoot.symbolId - 1");
 
         // empty entry in the table
         b.beginControlFlow("if (actionId == 0)");
-        b.addStatement("errors.add(new ParseError(ParseError.ANY, tokenId, token))");
-        b.addStatement("return");
+        addError(b, "ParseError.ANY", consumed);
         b.endControlFlow();
 
         // synchronize entry in the table
         b.beginControlFlow("if (actionId == -1)");
-        b.addStatement("errors.add(new ParseError(ParseError.ANY, tokenId, token))");
-        b.addStatement("stack.pop()");
-        b.addStatement("return");
+        // the node is popped like a reduced one before the next token is processed,
+        // so that skipping the start symbol still checks for eof
+        b.addStatement("prevRoot.actionId = -1");
+        MetaGenerator.addSynchronizationHooks(context, b);
+        addError(b, "ParseError.ANY", consumed);
         b.endControlFlow();
 
         b.addStatement("int[] action = actionTable[actionId - 1]");
         b.addStatement("prevRoot.actionId = actionId");
+        b.addStatement("ParseNode[] children = new ParseNode[action.length]");
+        b.addStatement("prevRoot.children = children");
 
         b.beginControlFlow("for (int i = action.length - 1; i >= 0; i--)"); // inner loop over action
 
         b.addStatement("ParseNode child = new ParseNode(action[i])");
-        b.addStatement("prevRoot.children.add(child)");
+        b.addStatement("children[i] = child");
         b.addStatement("stack.push(child)");
 
         b.endControlFlow(); // end of inner loop over action
 
+        MetaGenerator.addExpansionHooks(context, b, "actionId", "stack.size()");
+
+        b.endControlFlow(); // end of outer loop
+
+    }
+
+    /**
+     * Generates the code run once the start symbol has been reduced.
+     */
+    private static void addCompletion(GeneratorContext context, MethodSpec.Builder b) {
+
+        b.beginControlFlow("if (tokenId != T_EOF)");
+        b.addStatement("error(T_EOF, tokenId, token)");
+        MetaGenerator.addParseEndHooks(context, b);
+        b.addStatement("return");
+        b.endControlFlow();
+        b.addStatement("reachedEof = true");
+        MetaGenerator.addParseEndHooks(context, b);
+        b.addStatement("return");
+
+    }
+
+    /**
+     * Generates the code storing the value of the symbol at position in the top frame.
+     */
+    private static void addFramePush(GeneratorContext context, MethodSpec.Builder b, String position, String value) {
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+            b.addStatement("pushValue(" + value + ")");
+        }
+        else {
+            b.addStatement("nodes[top].children[" + position + "] = " + value);
+        }
+
+    }
+
+    private static void addFrameParseStep(GeneratorContext context, MethodSpec.Builder b, String consumed) {
+
+        final boolean valueStack = context.options.stack == GeneratorOptions.StackMode.VALUES;
+
+        b.addStatement("tokenCount++");
+
+        MetaGenerator.addTokenHooks(context, b);
+
+        b.beginControlFlow("while (true)");
+
+        b.beginControlFlow("if (top < 0)");
+        // the start symbol has already been reduced and the
+        // token following it was either eof or reported as an error
+        b.addStatement("return");
+        b.endControlFlow();
+
+        b.addStatement("int frame = top << 1");
+        b.addStatement("int[] action = actionTable[stack[frame]]");
+        b.addStatement("int position = stack[frame + 1]");
+
+        b.beginControlFlow("if (position == action.length)");
+        // all symbols of the production on top of the stack have been matched
+
+        b.beginControlFlow("if (top == 0)");
+        // the root frame is complete, so the start symbol has been reduced
+        b.addStatement("top = -1");
+        addCompletion(context, b);
+        b.endControlFlow();
+
+        MetaGenerator.addReductionHooks(context, b, "stack[frame]");
+
+        if (valueStack) {
+            // the arguments of the production are replaced by its result,
+            // which is stored into the slot of the first argument
+            b.addStatement("int base = valueCount - position");
+            b.beginControlFlow("if (base == values.length)");
+            b.addStatement("growValues()");
+            b.endControlFlow();
+            ParserSpineGenerator.addCapture(context, b);
+            b.beginControlFlow("if (errorCount == 0)");
+            b.addStatement(
+                "ParseNode.reduce($L$L)",
+                context.usesPrimitiveSlots() ? "stack[frame], values, primitives, base" : "stack[frame], values, base",
+                context.options.listener ? ", listener" : ""
+            );
+            b.nextControlFlow("else");
+            b.addStatement("values[base] = null");
+            b.endControlFlow();
+            b.beginControlFlow("while (valueCount > base + 1)");
+            b.addStatement("values[--valueCount] = null");
+            b.endControlFlow();
+            b.addStatement("valueCount = base + 1");
+            b.addStatement("top--");
+        }
+        else {
+            b.addStatement("ParseNode node = nodes[top]");
+            ParserSpineGenerator.addCapture(context, b);
+            b.addStatement("nodes[top--] = null");
+            b.beginControlFlow("if (errorCount == 0)");
+            b.addStatement("node.reduce(nodes[top], stack[frame - 1]$L)", context.options.listener ? ", listener" : "");
+            b.endControlFlow();
+        }
+
+        b.addStatement("stack[frame - 1]++");
+        b.addStatement("continue");
+
+        b.endControlFlow();
+
+        b.addStatement("int symbolId = action[position]");
+
+        b.beginControlFlow("if (symbolId > 0)");
+        // if the current symbol is a terminal
+
+        b.addStatement("stack[frame + 1] = position + 1");
+
+        b.beginControlFlow("if (tokenId != symbolId)");
+        addFramePush(context, b, "position", "null");
+        addError(b, "symbolId", consumed);
+        b.endControlFlow();
+
+        // tokens match
+        addFramePush(context, b, "position", "token");
+        b.addStatement(consumed);
+
+        b.endControlFlow();
+
+        // now handle non-terminals
+
+        MetaGenerator.addTableLookup(context, b, "-symbolId - 1");
+
+        // empty entry in the table
+        b.beginControlFlow("if (actionId == 0)");
+        addError(b, "ParseError.ANY", consumed);
+        b.endControlFlow();
+
+        // synchronize entry in the table
+        b.beginControlFlow("if (actionId == -1)");
+        addFramePush(context, b, "position", "null");
+        b.addStatement("stack[frame + 1] = position + 1");
+        MetaGenerator.addSynchronizationHooks(context, b);
+        addError(b, "ParseError.ANY", consumed);
+        b.endControlFlow();
+
+        // push a new frame for the expanded production
+
+        b.addStatement("top++");
+
+        if (valueStack) {
+            b.beginControlFlow("if (frame + 2 == stack.length)");
+            b.addStatement("stack = $T.copyOf(stack, stack.length << 1)", ClassName.get("java.util", "Arrays"));
+            b.endControlFlow();
+        }
+        else {
+            b.beginControlFlow("if (top == nodes.length)");
+            b.addStatement("nodes = $T.copyOf(nodes, top << 1)", ClassName.get("java.util", "Arrays"));
+            b.addStatement("stack = $T.copyOf(stack, top << 2)", ClassName.get("java.util", "Arrays"));
+            b.endControlFlow();
+        }
+
+        b.addStatement("stack[frame + 2] = actionId");
+        b.addStatement("stack[frame + 3] = 0");
+
+        if (!valueStack) {
+            b.addStatement("nodes[top] = new ParseNode(actionId, actionTable[actionId].length)");
+        }
+
+        MetaGenerator.addExpansionHooks(context, b, "actionId", "top");
+
         b.endControlFlow(); // end of outer loop
 
+    }
+
+    private static MethodSpec constructParseMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parse");
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int.class, "tokenId");
+        b.addParameter(context.getTokenTypeName(), "token");
+
+        // method body
+
+        if (context.options.usesFrames()) {
+            addFrameParseStep(context, b, "return");
+        }
+        else {
+            addParseStep(context, b, "return");
+        }
+
         return b.build();
 
     }
 
-    private static MethodSpec constructResetMethod() {
+    private static MethodSpec constructBatchParseMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parse");
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens");
+        b.addParameter(int.class, "offset");
+        b.addParameter(int.class, "length");
+
+        // method body
+
+        b.addStatement("int end = offset + length");
+
+        // the whole buffer is processed in a single loop,
+        // once the start symbol is reduced the remaining tokens are ignored
+
+        b.addCode("feed:\n");
+        b.beginControlFlow("for (int tokenIndex = offset; tokenIndex < end; tokenIndex++)");
+
+        b.addStatement("int tokenId = tokenIds[tokenIndex]");
+        b.addStatement("$T token = tokens == null ? null : tokens[tokenIndex]", context.getTokenTypeName());
+
+        if (context.options.usesFrames()) {
+            addFrameParseStep(context, b, "continue feed");
+        }
+        else {
+            addParseStep(context, b, "continue feed");
+        }
+
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructBatchIdsParseMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parse");
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(int.class, "offset");
+        b.addParameter(int.class, "length");
+
+        b.addStatement("parse(tokenIds, null, offset, length)");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructParseAllMethod(GeneratorContext context) {
+
+        TypeVariableName exceptionType = TypeVariableName.get("E", Exception.class);
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parseAll");
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.addTypeVariable(exceptionType);
+        b.returns(void.class);
+        b.addParameter(
+            ParameterizedTypeName.get(ClassName.get(context.packageName, "TokenSource"), exceptionType),
+            "source"
+        );
+        b.addException(exceptionType);
+
+        // method body
+
+        b.addStatement("int tokenId");
+
+        // tokens are pulled until eof is consumed, the source is not
+        // drained any further once the parser has finished
+
+        b.addCode("feed:\n");
+        b.beginControlFlow("do");
+
+        b.addStatement("tokenId = source.next()");
+        b.addStatement("$T token = source.token()", context.getTokenTypeName());
+
+        if (context.options.usesFrames()) {
+            addFrameParseStep(context, b, "continue feed");
+        }
+        else {
+            addParseStep(context, b, "continue feed");
+        }
+
+        b.endControlFlow("while (tokenId != T_EOF)");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructPushValueMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("pushValue");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+        b.addParameter(Object.class, "value");
+
+        b.beginControlFlow("if (valueCount == values.length)");
+        b.addStatement("growValues()");
+        b.endControlFlow();
+
+        b.addStatement("values[valueCount++] = value");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructGrowValuesMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("growValues");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+
+        b.addStatement("values = $T.copyOf(values, values.length << 1)", ClassName.get("java.util", "Arrays"));
+
+        if (context.usesPrimitiveSlots()) {
+            b.addStatement("primitives = $T.copyOf(primitives, values.length)", ClassName.get("java.util", "Arrays"));
+        }
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructFrameConstructor(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.constructorBuilder();
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.addParameter(int.class, "capacity");
+
+        // method body
+
+        b.beginControlFlow("if (capacity < 1)");
+        b.addStatement("throw new IllegalArgumentException(\"capacity must be positive\")");
+        b.endControlFlow();
+
+        b.addStatement("stack = new int[capacity << 1]");
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+            b.addStatement("values = new Object[capacity]");
+            if (context.usesPrimitiveSlots()) {
+                b.addStatement("primitives = new long[capacity]");
+            }
+        }
+        else {
+            b.addStatement("nodes = new ParseNode[capacity]");
+        }
+
+        b.addStatement("reset()");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructConstructor() {
+
+        MethodSpec.Builder b = MethodSpec.constructorBuilder();
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.addParameter(int.class, "capacity");
+
+        // method body
+
+        b.beginControlFlow("if (capacity < 1)");
+        b.addStatement("throw new IllegalArgumentException(\"capacity must be positive\")");
+        b.endControlFlow();
+
+        b.addStatement("stack.ensureCapacity(capacity)");
+        b.addStatement("reset()");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructFrameResetMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("reset");
+
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+
+        // method body
+
+        // an unfinished parse is still counted
+        MetaGenerator.addParseEndHooks(context, b);
+
+        // the arrays keep their capacity, only the references
+        // that are still held by them are cleared
+
+        b.addStatement("errors.clear()");
+        b.addStatement("errorCount = 0");
+        b.addStatement("tokenCount = 0");
+        b.addStatement("reachedEof = false");
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+            b.addStatement("$T.fill(values, 0, valueCount, null)", ClassName.get("java.util", "Arrays"));
+            b.addStatement("valueCount = 0");
+        }
+        else {
+            b.addStatement("$T.fill(nodes, 0, top + 1, null)", ClassName.get("java.util", "Arrays"));
+            b.addStatement("parseTree.children[0] = null");
+            b.addStatement("nodes[0] = parseTree");
+        }
+
+        // the root frame holds action 0 at position 0
+        b.addStatement("stack[0] = 0");
+        b.addStatement("stack[1] = 0");
+        b.addStatement("top = 0");
+
+        if (context.options.incremental) {
+            b.addStatement("spineDepth = -1");
+        }
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructResetMethod(GeneratorContext context) {
 
         MethodSpec.Builder b = MethodSpec.methodBuilder("reset");
 
@@ -163,17 +703,57 @@ class ParserGenerator {
 
         // method body
 
-        b.addStatement("errors = new ArrayList<>()");
+        // an unfinished parse is still counted
+        MetaGenerator.addParseEndHooks(context, b);
+
+        b.addStatement("errors.clear()");
+        b.addStatement("errorCount = 0");
+        b.addStatement("tokenCount = 0");
         b.addStatement("reachedEof = false");
         b.addStatement("parseTree = new ParseNode(startSymbol)");
-        b.addStatement("stack = new Stack<>()");
+        b.addStatement("stack.clear()");
         b.addStatement("stack.push(parseTree)");
 
         return b.build();
 
     }
 
-    private static MethodSpec constructGetValueMethod() {
+    private static String startValueExpression(GeneratorContext context) {
+        return rootValueExpression(context, context.table.startSymbol);
+    }
+
+    /**
+     * @return expression reading the value of the symbol expanded by the root of the parse
+     */
+    private static String rootValueExpression(GeneratorContext context, String rootSymbol) {
+
+        if (context.hasPrimitiveSlot(rootSymbol)) {
+
+            String type = context.symbolType(rootSymbol);
+
+            switch (context.options.stack) {
+                case VALUES:
+                    return PrimitiveSlots.decode(type, "primitives[0]");
+                case FRAMES:
+                    return PrimitiveSlots.decode(type, "parseTree.primitives[0]");
+                default:
+                    return PrimitiveSlots.decode(type, "parseTree.primitive");
+            }
+
+        }
+
+        switch (context.options.stack) {
+            case VALUES:
+                return "values[0]";
+            case FRAMES:
+                return "parseTree.children[0]";
+            default:
+                return "parseTree.payload";
+        }
+
+    }
+
+    private static MethodSpec constructGetValueMethod(GeneratorContext context) {
 
         MethodSpec.Builder b = MethodSpec.methodBuilder("getValue");
 
@@ -181,13 +761,89 @@ class ParserGenerator {
         b.returns(Object.class);
 
         b.addStatement("assert successfullyParsed()");
-
-        b.addStatement("return parseTree.payload");
+        b.addStatement("return $L", startValueExpression(context));
 
         return b.build();
 
     }
 
+    private static void constructChunkMethods(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final String chunkSymbol = context.options.chunkSymbol;
+
+        if (chunkSymbol == null) {
+            return;
+        }
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("resetChunk")
+            .addJavadoc("Resets the parser to parse a single $L followed by T_EOF.\n", chunkSymbol)
+            .addJavadoc("The next call to reset() goes back to the start symbol.\n")
+            .addModifiers(Modifier.PUBLIC)
+            .addStatement("reset()");
+
+        if (context.options.usesFrames()) {
+
+            // the root action of chunks follows the productions in the action table
+            classBuilder.addField(
+                FieldSpec.builder(int.class, "chunkAction", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$L", context.table.productionActions.length + 1)
+                    .build()
+            );
+
+            b.addStatement("stack[0] = chunkAction");
+
+        }
+        else {
+
+            classBuilder.addField(
+                FieldSpec.builder(int.class, "chunkSymbol", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$L", context.table.mapping.mapKey(chunkSymbol))
+                    .build()
+            );
+
+            b.addStatement("parseTree = new ParseNode(chunkSymbol)");
+            b.addStatement("stack.clear()");
+            b.addStatement("stack.push(parseTree)");
+
+        }
+
+        classBuilder.addMethod(b.build());
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getChunkValue")
+                .addJavadoc("@return value of the $L parsed after resetChunk()\n", chunkSymbol)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addStatement("assert successfullyParsed()")
+                .addStatement("return $L", rootValueExpression(context, chunkSymbol))
+                .build()
+        );
+
+    }
+
+    static void constructPrimitiveValueGetter(GeneratorContext context, TypeSpec.Builder classBuilder, String value) {
+
+        // the value of a primitive start symbol can be read without boxing
+
+        final String startSymbol = context.table.startSymbol;
+
+        if (!context.hasPrimitiveSlot(startSymbol)) {
+            return;
+        }
+
+        String type = context.symbolType(startSymbol);
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder(PrimitiveSlots.valueGetterName(type))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeVariableName.get(type))
+                .addStatement("assert successfullyParsed()")
+                .addStatement("return $L", value)
+                .build()
+        );
+
+    }
+
     private static MethodSpec constructGetErrorsMethod(GeneratorContext context) {
 
         final ClassName parseError = ClassName.get(context.packageName, "ParseError");
@@ -205,6 +861,37 @@ class ParserGenerator {
 
     }
 
+    private static MethodSpec constructErrorMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("error");
+
+        b.addJavadoc("@return true if the error limit has been reached and the parser has been stopped\n");
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(boolean.class);
+
+        MetaGenerator.addErrorRecord(context, b);
+
+        b.beginControlFlow("if (errorCount != maxErrors)");
+        b.addStatement("return false");
+        b.endControlFlow();
+
+        // the parser accepts no more input, like after the start symbol has been reduced
+
+        if (context.options.usesFrames()) {
+            b.addStatement("top = -1");
+        }
+        else {
+            b.addStatement("stack.clear()");
+        }
+
+        MetaGenerator.addParseEndHooks(context, b);
+
+        b.addStatement("return true");
+
+        return b.build();
+
+    }
+
     static TypeSpec.Builder generate(GeneratorContext context) {
 
         TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Parser")
@@ -212,12 +899,25 @@ class ParserGenerator {
 
         // fields
 
+        final boolean frames = context.options.usesFrames();
+
         MetaGenerator.constructConstants(context.table, classBuilder);
 
-        classBuilder.addField(MetaGenerator.constructTable(context.table));
-        classBuilder.addField(MetaGenerator.constructActionTable(context.table));
+        MetaGenerator.constructTable(context, classBuilder);
+        classBuilder.addField(MetaGenerator.constructActionTable(context.table, frames, context.options.chunkSymbol));
+        MetaGenerator.constructUnpackMethods(classBuilder);
+
+        if (frames) {
+            constructFrameParserFields(context, classBuilder);
+        }
+        else {
+            constructParserFields(context, classBuilder);
+        }
 
-        constructParserFields(context, classBuilder);
+        MetaGenerator.constructErrorLimit(context, classBuilder);
+        MetaGenerator.constructListener(context, classBuilder);
+        MetaGenerator.constructMetrics(context, classBuilder);
+        MetaGenerator.constructEvents(context, classBuilder);
 
         // methods
 
@@ -225,22 +925,54 @@ class ParserGenerator {
             MethodSpec
                 .constructorBuilder()
                 .addModifiers(Modifier.PUBLIC)
-                .addStatement("reset()")
+                .addStatement("this(16)")
                 .build()
         );
 
+        if (frames) {
+            classBuilder.addMethod(constructFrameConstructor(context));
+        }
+        else {
+            classBuilder.addMethod(constructConstructor());
+        }
+
         classBuilder.addMethod(constructParseMethod(context));
+        classBuilder.addMethod(constructBatchParseMethod(context));
+        classBuilder.addMethod(constructBatchIdsParseMethod());
+        classBuilder.addMethod(constructParseAllMethod(context));
+
+        if (frames) {
+            classBuilder.addMethod(constructFrameResetMethod(context));
+        }
+        else {
+            classBuilder.addMethod(constructResetMethod(context));
+        }
 
-        classBuilder.addMethod(constructResetMethod());
-        classBuilder.addMethod(constructGetValueMethod());
+        ParserStateGenerator.generate(context, classBuilder);
+
+        if (context.options.incremental) {
+            ParserSpineGenerator.generate(context, classBuilder);
+        }
+
+        classBuilder.addMethod(constructGetValueMethod(context));
+        constructPrimitiveValueGetter(context, classBuilder, startValueExpression(context));
+        constructChunkMethods(context, classBuilder);
         classBuilder.addMethod(constructGetErrorsMethod(context));
+        classBuilder.addMethod(constructErrorMethod(context));
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+            classBuilder.addMethod(constructPushValueMethod());
+            classBuilder.addMethod(constructGrowValuesMethod(context));
+        }
+
+        MetaGenerator.constructThreadLocalInstance(context, classBuilder);
 
         classBuilder.addMethod(
             MethodSpec
                 .methodBuilder("successfullyParsed")
                 .addModifiers(Modifier.PUBLIC)
                 .returns(boolean.class)
-                .addStatement("return reachedEof && errors.isEmpty()")
+                .addStatement("return reachedEof && errorCount == 0")
                 .build()
         );
 
@@ -0,0 +1,834 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generates the part of the parser used by IncrementalParser to reuse the previous parse after an edit.
+ * At a checkpoint every frame on the stack gets a SpineFrame, which receives the arguments of the frame
+ * when it is reduced. If a later parse reaches the checkpoint with the same frames left to match, the arguments that
+ * follow the checkpoint are taken from the SpineFrames instead of parsing the rest of the input again.
+ */
+class ParserSpineGenerator {
+
+    private ParserSpineGenerator() {}
+
+    private static final ClassName arrays = ClassName.get("java.util", "Arrays");
+
+    private static boolean nodeStack(GeneratorContext context) {
+        return context.options.stack == GeneratorOptions.StackMode.NODES;
+    }
+
+    private static void constructFields(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final ClassName spineFrame = ClassName.get(context.packageName, "Parser", "SpineFrame");
+
+        if (!nodeStack(context)) {
+
+            // frames up to spineDepth have been on the stack since the last checkpoint,
+            // the nodes of a node stack hold their SpineFrame themselves
+            classBuilder.addField(ArrayTypeName.of(spineFrame), "spine", Modifier.PRIVATE);
+
+            classBuilder.addField(
+                FieldSpec.builder(int.class, "spineDepth", Modifier.PRIVATE)
+                    .initializer("-1")
+                    .build()
+            );
+
+        }
+
+        // incremented for every parse started from a checkpoint, arguments captured
+        // by a later parse than the checkpoint replace the ones in its snapshot
+        classBuilder.addField(int.class, "spineGeneration", Modifier.PRIVATE);
+
+    }
+
+    /**
+     * Generates the code capturing the arguments of a frame before it is reduced.
+     */
+    static void addCapture(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (!context.options.incremental) {
+            return;
+        }
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                b.beginControlFlow("if (top <= spineDepth)");
+                b.addStatement("captureSpineFrame(base, position)");
+                b.endControlFlow();
+                break;
+
+            case FRAMES:
+                b.beginControlFlow("if (top <= spineDepth)");
+                b.addStatement("captureSpineFrame(node)");
+                b.endControlFlow();
+                break;
+
+            default:
+                b.beginControlFlow("if (prevRoot.spine != null)");
+                b.addStatement("captureSpineFrame(prevRoot)");
+                b.endControlFlow();
+                break;
+
+        }
+
+    }
+
+    private static MethodSpec constructCaptureMethod(GeneratorContext context) {
+
+        final ClassName parseNode = ClassName.get(context.packageName, "ParseNode");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("captureSpineFrame");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                b.addParameter(int.class, "base");
+                b.addParameter(int.class, "length");
+                b.addStatement("SpineFrame frame = spine[top].find()");
+                b.addStatement("frame.children = $T.copyOfRange(values, base, base + length)", arrays);
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("frame.primitives = $T.copyOfRange(primitives, base, base + length)", arrays);
+                }
+                break;
+
+            case FRAMES:
+                // the node is dropped after the reduction, so its arrays are not modified anymore
+                b.addParameter(parseNode, "node");
+                b.addStatement("SpineFrame frame = spine[top].find()");
+                b.addStatement("frame.children = node.children");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("frame.primitives = node.primitives");
+                }
+                break;
+
+            default:
+                // the children are released by the reduction
+                b.addParameter(parseNode, "node");
+                b.addStatement("SpineFrame frame = node.spine.find()");
+                b.addStatement("ParseNode[] children = node.children");
+                b.addStatement("frame.children = new Object[children.length]");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("frame.primitives = new long[children.length]");
+                }
+                b.beginControlFlow("for (int i = 0; i < children.length; i++)");
+                b.addStatement("frame.children[i] = children[i].payload");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("frame.primitives[i] = children[i].primitive");
+                }
+                b.endControlFlow();
+                break;
+
+        }
+
+        b.addStatement("frame.errorCount = errorCount");
+        b.addStatement("frame.generation = spineGeneration");
+
+        if (!nodeStack(context)) {
+            b.addStatement("spineDepth = top - 1");
+        }
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructSpineMethod(GeneratorContext context) {
+
+        final ClassName spineFrame = ClassName.get(context.packageName, "Parser", "SpineFrame");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("spine");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(ArrayTypeName.of(spineFrame));
+
+        if (nodeStack(context)) {
+
+            // only expanded nodes are reduced
+            b.addStatement("SpineFrame[] frames = new SpineFrame[stack.size()]");
+            b.beginControlFlow("for (int i = 0; i < frames.length; i++)");
+            b.addStatement("ParseNode node = stack.get(i)");
+            b.beginControlFlow("if (node.actionId <= 0)");
+            b.addStatement("continue");
+            b.endControlFlow();
+            b.beginControlFlow("if (node.spine == null)");
+            b.addStatement("node.spine = new SpineFrame()");
+            b.endControlFlow();
+            b.addStatement("frames[i] = node.spine");
+            b.endControlFlow();
+            b.addStatement("return frames");
+
+            return b.build();
+
+        }
+
+        // the root frame is completed without a reduction, so it has no SpineFrame
+        b.addStatement("SpineFrame[] frames = new SpineFrame[top + 1]");
+        b.beginControlFlow("for (int i = 1; i <= top; i++)");
+        b.addStatement("frames[i] = i <= spineDepth ? spine[i] : new SpineFrame()");
+        b.endControlFlow();
+        b.addStatement("spine = frames");
+        b.addStatement("spineDepth = top");
+        b.addStatement("return frames");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructCheckpointMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("checkpoint");
+
+        b.addJavadoc("Captures the state of the parser for an IncrementalParser.\n");
+        b.addJavadoc("The arguments of the frames on the stack are captured as well once they are reduced.\n");
+        b.returns(ClassName.get(context.packageName, "Parser", "Checkpoint"));
+
+        b.addStatement("Checkpoint checkpoint = new Checkpoint()");
+
+        if (nodeStack(context)) {
+            // the copies of the nodes in the snapshot keep their SpineFrame
+            b.addStatement("checkpoint.frames = spine()");
+            b.addStatement("checkpoint.snapshot = snapshot()");
+        }
+        else {
+            b.addStatement("checkpoint.snapshot = snapshot()");
+            b.addStatement("checkpoint.frames = spine()");
+        }
+
+        b.addStatement("checkpoint.generation = spineGeneration");
+        b.addStatement("checkpoint.position = tokenCount");
+        b.addStatement("return checkpoint");
+
+        return b.build();
+
+    }
+
+    private static void addArgumentsUpdate(GeneratorContext context, MethodSpec.Builder b) {
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                // the arguments of the frames follow each other on the value stack
+                b.addStatement("int base = 0");
+                b.beginControlFlow("for (int i = 0; i <= top; i++)");
+                b.addStatement("int count = stack[(i << 1) + 1]");
+                b.beginControlFlow("if (i != 0)");
+                b.addStatement("SpineFrame frame = checkpoint.frames[i].find()");
+                b.beginControlFlow("if (frame.generation > checkpoint.generation)");
+                b.addStatement("System.arraycopy(frame.children, 0, values, base, count)");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("System.arraycopy(frame.primitives, 0, primitives, base, count)");
+                }
+                b.endControlFlow();
+                b.endControlFlow();
+                b.addStatement("base += count");
+                b.endControlFlow();
+                b.addStatement("spine = checkpoint.frames");
+                b.addStatement("spineDepth = top");
+                break;
+
+            case FRAMES:
+                b.beginControlFlow("for (int i = 1; i <= top; i++)");
+                b.addStatement("SpineFrame frame = checkpoint.frames[i].find()");
+                b.beginControlFlow("if (frame.generation <= checkpoint.generation)");
+                b.addStatement("continue");
+                b.endControlFlow();
+                b.addStatement("ParseNode node = nodes[i]");
+                b.addStatement("int count = stack[(i << 1) + 1]");
+                b.addStatement("System.arraycopy(frame.children, 0, node.children, 0, count)");
+                if (context.usesPrimitiveSlots()) {
+                    b.beginControlFlow("if (frame.primitives != null)");
+                    b.beginControlFlow("if (node.primitives == null)");
+                    b.addStatement("node.primitives = new long[node.children.length]");
+                    b.endControlFlow();
+                    b.addStatement("System.arraycopy(frame.primitives, 0, node.primitives, 0, count)");
+                    b.endControlFlow();
+                }
+                b.endControlFlow();
+                b.addStatement("spine = checkpoint.frames");
+                b.addStatement("spineDepth = top");
+                break;
+
+            default:
+                // the matched children are shared with the snapshot, so they are replaced by new nodes
+                b.beginControlFlow("for (int i = 0; i < stack.size(); i++)");
+                b.addStatement("ParseNode node = stack.get(i)");
+                b.beginControlFlow("if (node.actionId <= 0)");
+                b.addStatement("continue");
+                b.endControlFlow();
+                b.addStatement("SpineFrame frame = checkpoint.frames[i].find()");
+                b.beginControlFlow("if (frame.generation <= checkpoint.generation)");
+                b.addStatement("continue");
+                b.endControlFlow();
+                b.addStatement("ParseNode[] children = node.children");
+                b.addStatement("int matched = matchedChildren(i)");
+                b.beginControlFlow("for (int j = 0; j < matched; j++)");
+                b.addStatement("ParseNode child = new ParseNode(children[j].symbolId)");
+                b.addStatement("child.payload = frame.children[j]");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("child.primitive = frame.primitives[j]");
+                }
+                b.addStatement("children[j] = child");
+                b.endControlFlow();
+                b.endControlFlow();
+                break;
+
+        }
+
+    }
+
+    private static MethodSpec constructRestoreMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("restore");
+
+        b.addJavadoc("Brings the parser back to the state of the checkpoint, which has been moved to checkpoint.position.\n");
+        b.addJavadoc("Arguments captured by a later parse replace the ones in the snapshot,\n");
+        b.addJavadoc("as they include the edits spliced in since the checkpoint was taken.\n");
+        b.returns(void.class);
+        b.addParameter(ClassName.get(context.packageName, "Parser", "Checkpoint"), "checkpoint");
+
+        b.addStatement("restore(checkpoint.snapshot)");
+
+        // all errors follow the edits the checkpoint has been moved by
+        b.beginControlFlow("if (errorCount != 0)");
+        b.addStatement("firstErrorIndex += checkpoint.position - tokenCount");
+        b.endControlFlow();
+        b.addStatement("tokenCount = checkpoint.position");
+        b.addStatement("spineGeneration++");
+
+        addArgumentsUpdate(context, b);
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructPendingChildrenMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("matchedChildren");
+
+        b.addJavadoc("@return number of children of the expanded node at the index that are no longer on the stack\n");
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(int.class);
+        b.addParameter(int.class, "index");
+
+        // the children still on the stack follow their parent, starting with the last one
+        b.addStatement("ParseNode[] children = stack.get(index).children");
+        b.addStatement("int matched = children.length");
+        b.beginControlFlow("for (int i = index + 1; matched != 0 && i < stack.size() && stack.get(i) == children[matched - 1]; i++)");
+        b.addStatement("matched--");
+        b.endControlFlow();
+        b.addStatement("return matched");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructNextSymbolMethod() {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("nextSymbol");
+
+        b.addJavadoc("@return index of the first symbol of the frame that is not matched yet or being matched by the frames above it\n");
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        b.returns(int.class);
+        b.addParameter(int[].class, "stack");
+        b.addParameter(int.class, "frame");
+        b.addParameter(int.class, "top");
+
+        b.addStatement("return stack[(frame << 1) + 1] + (frame == top ? 0 : 1)");
+
+        return b.build();
+
+    }
+
+    /**
+     * Generates the code recording the depth of the frames of this parse in their SpineFrames.
+     * A frame of the checkpoint that is still on the stack can only be matched with itself,
+     * a SpineFrame shared by two frames would mix up their arguments.
+     */
+    private static void addDepthMarks(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (nodeStack(context)) {
+            b.beginControlFlow("for (int i = 0; i < size; i++)");
+            b.addStatement("ParseNode node = stack.get(i)");
+            b.beginControlFlow("if (node.spine != null)");
+            b.addStatement("node.spine.find().mark(i, spineGeneration)");
+            b.endControlFlow();
+            b.endControlFlow();
+            return;
+        }
+
+        b.beginControlFlow("for (int i = 1; i <= spineDepth; i++)");
+        b.addStatement("spine[i].find().mark(i, spineGeneration)");
+        b.endControlFlow();
+
+    }
+
+    /**
+     * Generates the code matching the frames that have symbols left to match with the ones of the checkpoint.
+     * The other frames do not consume tokens anymore, they are only reduced, so they may differ.
+     * This is the case for the frames of a right recursive list after an element has been inserted or removed.
+     */
+    private static void addStackComparison(GeneratorContext context, MethodSpec.Builder b) {
+
+        if (nodeStack(context)) {
+
+            // nodes still to be matched follow the expanded node they belong to
+            b.addStatement("ParseNode[] other = checkpoint.snapshot.stack");
+            b.addStatement("int size = stack.size()");
+            b.beginControlFlow("if (size == 0)");
+            b.addStatement("return false");
+            b.endControlFlow();
+            addDepthMarks(context, b);
+            b.addStatement("int[] matches = new int[size]");
+            b.addStatement("int o = other.length - 1");
+            b.beginControlFlow("for (int i = size - 1; i >= 0; i--)");
+            b.addStatement("matches[i] = -1");
+            b.addStatement("ParseNode node = stack.get(i)");
+            b.beginControlFlow("if (node.actionId != 0 && (i + 1 == size || stack.get(i + 1).actionId != 0))");
+            b.addStatement("continue");
+            b.endControlFlow();
+            b.beginControlFlow("while (o >= 0 && other[o].actionId != 0 && (o + 1 == other.length || other[o + 1].actionId != 0))");
+            b.addStatement("o--");
+            b.endControlFlow();
+            b.beginControlFlow("if (o < 0 || node.symbolId != other[o].symbolId || node.actionId != other[o].actionId)");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.beginControlFlow("if (node.actionId != 0 && !checkpoint.frames[o].isCapturedAfter(checkpoint, spineGeneration))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.beginControlFlow("if (node.actionId != 0 && checkpoint.frames[o].isElsewhereOnStack(i, spineGeneration))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.addStatement("matches[i] = o--");
+            b.endControlFlow();
+            b.beginControlFlow("for (; o >= 0; o--)");
+            b.beginControlFlow("if (other[o].actionId == 0 || (o + 1 != other.length && other[o + 1].actionId == 0))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.endControlFlow();
+
+            b.addStatement("boolean same = !checkpoint.stale && size == other.length");
+            b.beginControlFlow("for (int i = 0; same && i < size; i++)");
+            b.addStatement("same = stack.get(i).symbolId == other[i].symbolId && stack.get(i).actionId == other[i].actionId");
+            b.endControlFlow();
+
+            // the later checkpoints share the other frames as well
+            b.beginControlFlow("for (int i = 0; same && i < size; i++)");
+            b.beginControlFlow("if (stack.get(i).actionId > 0)");
+            b.beginControlFlow("if (checkpoint.frames[i].isReducedBy(spineGeneration) || checkpoint.frames[i].isElsewhereOnStack(i, spineGeneration))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.addStatement("matches[i] = i");
+            b.endControlFlow();
+            b.endControlFlow();
+
+        }
+        else {
+
+            // the root frame has no SpineFrame, so the top frame has to be another one
+            b.addStatement("int[] other = checkpoint.snapshot.stack");
+            b.addStatement("int otherTop = checkpoint.snapshot.top");
+            b.beginControlFlow("if (top <= 0)");
+            b.addStatement("return false");
+            b.endControlFlow();
+            addDepthMarks(context, b);
+            b.addStatement("int[] matches = new int[top + 1]");
+            b.addStatement("int o = otherTop");
+            b.beginControlFlow("for (int i = top; i > 0; i--)");
+            b.addStatement("matches[i] = -1");
+            b.addStatement("int next = nextSymbol(stack, i, top)");
+            b.beginControlFlow("if (next == actionTable[stack[i << 1]].length)");
+            b.addStatement("continue");
+            b.endControlFlow();
+            b.beginControlFlow("while (o >= 0 && nextSymbol(other, o, otherTop) == actionTable[other[o << 1]].length)");
+            b.addStatement("o--");
+            b.endControlFlow();
+            b.beginControlFlow("if (o <= 0 || stack[i << 1] != other[o << 1] || next != nextSymbol(other, o, otherTop))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.beginControlFlow("if (!checkpoint.frames[o].isCapturedAfter(checkpoint, spineGeneration) || checkpoint.frames[o].isElsewhereOnStack(i, spineGeneration))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.addStatement("matches[i] = o--");
+            b.endControlFlow();
+            b.beginControlFlow("for (; o >= 0; o--)");
+            b.beginControlFlow("if (nextSymbol(other, o, otherTop) != actionTable[other[o << 1]].length)");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.endControlFlow();
+
+            b.addStatement("boolean same = !checkpoint.stale && top == otherTop");
+            b.beginControlFlow("for (int i = (top << 1) + 1; same && i >= 0; i--)");
+            b.addStatement("same = stack[i] == other[i]");
+            b.endControlFlow();
+
+            // the later checkpoints share the other frames as well
+            b.beginControlFlow("for (int i = 1; same && i <= top; i++)");
+            b.beginControlFlow("if (checkpoint.frames[i].isReducedBy(spineGeneration) || checkpoint.frames[i].isElsewhereOnStack(i, spineGeneration))");
+            b.addStatement("return false");
+            b.endControlFlow();
+            b.addStatement("matches[i] = i");
+            b.endControlFlow();
+
+        }
+
+        // otherwise the checkpoint can only be compared with, but not restored anymore
+        b.addStatement("checkpoint.stale = !same");
+
+    }
+
+    private static void addFrameReplay(GeneratorContext context, MethodSpec.Builder b) {
+
+        final String listener = context.options.listener ? ", listener" : "";
+
+        // frames without symbols left are reduced together with the frame above them
+        b.addStatement("int errorsBefore = 0");
+
+        b.beginControlFlow("for (int i = top; i > 0; i--)");
+
+        // the arguments before next are the ones of this parse,
+        // which includes the result of the frame above
+        b.addStatement("int next = nextSymbol(stack, i, top)");
+        b.addStatement("SpineFrame frame = i <= spineDepth ? spine[i].find() : null");
+
+        if (context.options.stack == GeneratorOptions.StackMode.VALUES) {
+
+            b.addStatement("int base = valueCount - next");
+            b.addStatement("int length = actionTable[stack[i << 1]].length");
+            // the result of an empty production needs a slot as well
+            b.beginControlFlow("while (base + length >= values.length)");
+            b.addStatement("growValues()");
+            b.endControlFlow();
+            b.beginControlFlow("if (matches[i] >= 0)");
+            b.addStatement("SpineFrame captured = checkpoint.frames[matches[i]].find()");
+            b.beginControlFlow("if (frame != null && frame != captured)");
+            b.addStatement("frame.next = captured");
+            b.endControlFlow();
+            b.addStatement("frame = captured");
+            b.endControlFlow();
+            b.beginControlFlow("if (next != length)");
+            b.addStatement("errorsBefore = frame.errorCount");
+            b.addStatement("System.arraycopy(frame.children, next, values, valueCount, length - next)");
+            if (context.usesPrimitiveSlots()) {
+                b.addStatement("System.arraycopy(frame.primitives, next, primitives, valueCount, length - next)");
+            }
+            b.endControlFlow();
+            b.addStatement("valueCount = base + length");
+            b.beginControlFlow("if (frame != null)");
+            b.addStatement("frame.children = $T.copyOfRange(values, base, valueCount)", arrays);
+            if (context.usesPrimitiveSlots()) {
+                b.addStatement("frame.primitives = $T.copyOfRange(primitives, base, valueCount)", arrays);
+            }
+            b.addStatement("frame.errorCount = errorsBefore");
+            b.addStatement("frame.generation = spineGeneration");
+            b.endControlFlow();
+            b.beginControlFlow("if (errorsBefore == 0)");
+            b.addStatement(
+                "ParseNode.reduce($L$L)",
+                context.usesPrimitiveSlots() ? "stack[i << 1], values, primitives, base" : "stack[i << 1], values, base",
+                listener
+            );
+            b.nextControlFlow("else");
+            b.addStatement("values[base] = null");
+            b.endControlFlow();
+            b.beginControlFlow("while (valueCount > base + 1)");
+            b.addStatement("values[--valueCount] = null");
+            b.endControlFlow();
+
+        }
+        else {
+
+            b.addStatement("ParseNode node = nodes[i]");
+            b.addStatement("int length = node.children.length");
+            b.beginControlFlow("if (matches[i] >= 0)");
+            b.addStatement("SpineFrame captured = checkpoint.frames[matches[i]].find()");
+            b.beginControlFlow("if (frame != null && frame != captured)");
+            b.addStatement("frame.next = captured");
+            b.endControlFlow();
+            b.addStatement("frame = captured");
+            b.endControlFlow();
+            b.beginControlFlow("if (next != length)");
+            b.addStatement("errorsBefore = frame.errorCount");
+            b.addStatement("System.arraycopy(frame.children, next, node.children, next, length - next)");
+            if (context.usesPrimitiveSlots()) {
+                b.beginControlFlow("if (frame.primitives != null)");
+                b.beginControlFlow("if (node.primitives == null)");
+                b.addStatement("node.primitives = new long[length]");
+                b.endControlFlow();
+                b.addStatement("System.arraycopy(frame.primitives, next, node.primitives, next, length - next)");
+                b.endControlFlow();
+            }
+            b.endControlFlow();
+            // the node is dropped, so its arrays are not modified anymore
+            b.beginControlFlow("if (frame != null)");
+            b.addStatement("frame.children = node.children");
+            if (context.usesPrimitiveSlots()) {
+                b.addStatement("frame.primitives = node.primitives");
+            }
+            b.addStatement("frame.errorCount = errorsBefore");
+            b.addStatement("frame.generation = spineGeneration");
+            b.endControlFlow();
+            b.addStatement("nodes[i] = null");
+            b.beginControlFlow("if (errorsBefore == 0)");
+            b.addStatement("node.reduce(nodes[i - 1], stack[((i - 1) << 1) + 1]$L)", listener);
+            b.endControlFlow();
+
+        }
+
+        b.endControlFlow();
+
+        b.addStatement("top = -1");
+
+    }
+
+    private static void addNodeReplay(GeneratorContext context, MethodSpec.Builder b) {
+
+        // expanded nodes without symbols left are reduced together with the node above them
+        b.addStatement("int errorsBefore = 0");
+
+        b.beginControlFlow("for (int i = size - 1; i >= 0; i--)");
+
+        // the values of the other nodes are arguments of the expanded ones
+        b.addStatement("ParseNode node = stack.get(i)");
+        b.beginControlFlow("if (node.actionId <= 0)");
+        b.addStatement("continue");
+        b.endControlFlow();
+
+        b.addStatement("SpineFrame frame = node.spine == null ? null : node.spine.find()");
+        b.addStatement("ParseNode[] children = node.children");
+
+        b.beginControlFlow("if (matches[i] >= 0)");
+        b.addStatement("SpineFrame captured = checkpoint.frames[matches[i]].find()");
+        b.beginControlFlow("if (frame != null && frame != captured)");
+        b.addStatement("frame.next = captured");
+        b.endControlFlow();
+        b.addStatement("frame = captured");
+        b.endControlFlow();
+        b.beginControlFlow("if (i + 1 != size && stack.get(i + 1).actionId == 0)");
+        b.addStatement("errorsBefore = frame.errorCount");
+        // the child expanded last has already been reduced
+        b.beginControlFlow("for (int j = matchedChildren(i); j < children.length; j++)");
+        b.beginControlFlow("if (children[j].actionId == 0)");
+        b.addStatement("children[j].payload = frame.children[j]");
+        if (context.usesPrimitiveSlots()) {
+            b.addStatement("children[j].primitive = frame.primitives[j]");
+        }
+        b.endControlFlow();
+        b.endControlFlow();
+        b.endControlFlow();
+
+        b.beginControlFlow("if (frame != null)");
+        b.addStatement("frame.children = new Object[children.length]");
+        if (context.usesPrimitiveSlots()) {
+            b.addStatement("frame.primitives = new long[children.length]");
+        }
+        b.beginControlFlow("for (int j = 0; j < children.length; j++)");
+        b.addStatement("frame.children[j] = children[j].payload");
+        if (context.usesPrimitiveSlots()) {
+            b.addStatement("frame.primitives[j] = children[j].primitive");
+        }
+        b.endControlFlow();
+        b.addStatement("frame.errorCount = errorsBefore");
+        b.addStatement("frame.generation = spineGeneration");
+        b.endControlFlow();
+
+        b.beginControlFlow("if (errorsBefore == 0)");
+        b.addStatement("node.reduce($L)", context.options.listener ? "listener" : "");
+        b.nextControlFlow("else");
+        b.addStatement("node.children = null");
+        b.endControlFlow();
+
+        b.endControlFlow();
+
+        b.addStatement("stack.clear()");
+
+    }
+
+    private static MethodSpec constructSpliceMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("splice");
+
+        b.addJavadoc("Completes the parse with the arguments captured after the checkpoint, if the frames on the stack\n");
+        b.addJavadoc("that have symbols left to match are the same as in it. The rest of the input is then parsed\n");
+        b.addJavadoc("the same way as after the checkpoint, so only the frames on the stack have to be reduced again.\n");
+        b.addJavadoc("@param end state after the input following the checkpoint has been parsed\n");
+        b.addJavadoc("@param shift number of tokens the checkpoint has been moved by\n");
+        b.addJavadoc("@return false if the parse cannot be completed this way, the parser is unchanged then\n");
+        b.returns(boolean.class);
+        b.addParameter(ClassName.get(context.packageName, "Parser", "Checkpoint"), "checkpoint");
+        b.addParameter(ClassName.get(context.packageName, "Parser", "Snapshot"), "end");
+        b.addParameter(int.class, "shift");
+
+        // values following an error are not computed, so both
+        // parses have to be free of errors up to the checkpoint
+        b.beginControlFlow("if (errorCount != 0 || checkpoint.snapshot.errorCount != 0)");
+        b.addStatement("return false");
+        b.endControlFlow();
+
+        if (nodeStack(context)) {
+            b.beginControlFlow("if (end.stack.length != 0)");
+        }
+        else {
+            b.beginControlFlow("if (end.top >= 0)");
+        }
+        b.addStatement("return false");
+        b.endControlFlow();
+
+        addStackComparison(context, b);
+
+        if (nodeStack(context)) {
+            addNodeReplay(context, b);
+        }
+        else {
+            addFrameReplay(context, b);
+        }
+
+        b.addStatement("errors.clear()");
+        b.addStatement("$T.addAll(errors, end.errors)", ClassName.get("java.util", "Collections"));
+        b.addStatement("errorCount = end.errorCount");
+        b.addStatement("firstErrorExpected = end.firstErrorExpected");
+        b.addStatement("firstErrorIndex = end.firstErrorIndex + shift");
+        b.addStatement("tokenCount = end.tokenCount + shift");
+        b.addStatement("reachedEof = end.reachedEof");
+        b.addStatement("return true");
+
+        return b.build();
+
+    }
+
+    private static TypeSpec constructSpineFrameClass(GeneratorContext context) {
+
+        final ClassName spineFrame = ClassName.get(context.packageName, "Parser", "SpineFrame");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("SpineFrame")
+            .addJavadoc("Arguments of a frame that was on the stack at a checkpoint, captured when the frame is reduced.\n")
+            .addModifiers(Modifier.STATIC, Modifier.FINAL);
+
+        classBuilder.addField(Object[].class, "children");
+
+        if (context.usesPrimitiveSlots()) {
+            classBuilder.addField(long[].class, "primitives");
+        }
+
+        // errors found before the frame was reduced
+        classBuilder.addField(int.class, "errorCount");
+
+        classBuilder.addField(int.class, "generation");
+
+        // index of the frame on the stack of the parse with the generation markGeneration
+        classBuilder.addField(int.class, "depth");
+        classBuilder.addField(int.class, "markGeneration");
+
+        // set once a parse has been spliced into the frame, which then continues as the next one
+        classBuilder.addField(spineFrame, "next");
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("find")
+                .returns(spineFrame)
+                .addStatement("SpineFrame frame = this")
+                .beginControlFlow("while (frame.next != null)")
+                .addStatement("frame = frame.next")
+                .endControlFlow()
+                .addStatement("return frame")
+                .build()
+        );
+
+        // a frame on the stack at the checkpoint has been reduced after the checkpoint
+        // was taken, but not by the current parse, see isReducedBy
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("isCapturedAfter")
+                .returns(boolean.class)
+                .addParameter(ClassName.get(context.packageName, "Parser", "Checkpoint"), "checkpoint")
+                .addParameter(int.class, "generation")
+                .addStatement("SpineFrame frame = find()")
+                .addStatement("return frame.children != null && frame.generation >= checkpoint.generation && !frame.isReducedBy(generation)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("mark")
+                .returns(void.class)
+                .addParameter(int.class, "depth")
+                .addParameter(int.class, "generation")
+                .addStatement("this.depth = depth")
+                .addStatement("markGeneration = generation")
+                .build()
+        );
+
+        // the frame is still on the stack of the current parse, but not at the given index
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("isElsewhereOnStack")
+                .returns(boolean.class)
+                .addParameter(int.class, "depth")
+                .addParameter(int.class, "generation")
+                .addStatement("SpineFrame frame = find()")
+                .addStatement("return frame.markGeneration == generation && frame.depth != depth")
+                .build()
+        );
+
+        // the current parse has left the frame before reaching the checkpoint, so a frame
+        // of this parse matched with it is another one and has to keep its own SpineFrame
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("isReducedBy")
+                .returns(boolean.class)
+                .addParameter(int.class, "generation")
+                .addStatement("SpineFrame frame = find()")
+                .addStatement("return frame.children != null && frame.generation == generation")
+                .build()
+        );
+
+        return classBuilder.build();
+
+    }
+
+    private static TypeSpec constructCheckpointClass(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Checkpoint")
+            .addJavadoc("State of the parser captured by an IncrementalParser.\n")
+            .addModifiers(Modifier.STATIC, Modifier.FINAL);
+
+        classBuilder.addField(ClassName.get(context.packageName, "Parser", "Snapshot"), "snapshot");
+
+        // by stack index, null for the frames that are not reduced
+        classBuilder.addField(ArrayTypeName.of(ClassName.get(context.packageName, "Parser", "SpineFrame")), "frames");
+
+        classBuilder.addField(int.class, "generation");
+
+        // index of the next token, moved along with the tokens by the edits before it
+        classBuilder.addField(int.class, "position");
+
+        // set once a parse with other frames that have no symbols left has been spliced into it
+        classBuilder.addField(boolean.class, "stale");
+
+        return classBuilder.build();
+
+    }
+
+    static void generate(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        constructFields(context, classBuilder);
+
+        classBuilder.addMethod(constructCheckpointMethod(context));
+        classBuilder.addMethod(constructRestoreMethod(context));
+        classBuilder.addMethod(constructSpliceMethod(context));
+        classBuilder.addMethod(constructSpineMethod(context));
+        classBuilder.addMethod(constructCaptureMethod(context));
+
+        if (nodeStack(context)) {
+            classBuilder.addMethod(constructPendingChildrenMethod());
+        }
+        else {
+            classBuilder.addMethod(constructNextSymbolMethod());
+        }
+
+        classBuilder.addType(constructSpineFrameClass(context));
+        classBuilder.addType(constructCheckpointClass(context));
+
+    }
+
+}
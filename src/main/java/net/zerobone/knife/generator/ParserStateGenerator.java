@@ -0,0 +1,343 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+/**
+ * Generates Parser.Snapshot together with the methods capturing, restoring and forking the state of the parser.
+ * A snapshot is never modified after it has been taken, so it can be restored any number of times.
+ */
+class ParserStateGenerator {
+
+    private ParserStateGenerator() {}
+
+    private static final ClassName arrays = ClassName.get("java.util", "Arrays");
+
+    private static TypeSpec constructSnapshotClass(GeneratorContext context) {
+
+        final ClassName parseNode = ClassName.get(context.packageName, "ParseNode");
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Snapshot")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                classBuilder.addField(int[].class, "stack", Modifier.PRIVATE);
+                classBuilder.addField(int.class, "top", Modifier.PRIVATE);
+                classBuilder.addField(Object[].class, "values", Modifier.PRIVATE);
+                if (context.usesPrimitiveSlots()) {
+                    classBuilder.addField(long[].class, "primitives", Modifier.PRIVATE);
+                }
+                break;
+
+            case FRAMES:
+                classBuilder.addField(int[].class, "stack", Modifier.PRIVATE);
+                classBuilder.addField(int.class, "top", Modifier.PRIVATE);
+                // copies of the nodes of the frames, starting with the root
+                classBuilder.addField(ArrayTypeName.of(parseNode), "nodes", Modifier.PRIVATE);
+                break;
+
+            default:
+                // copies of the nodes on the stack, from bottom to top
+                classBuilder.addField(ArrayTypeName.of(parseNode), "stack", Modifier.PRIVATE);
+                classBuilder.addField(parseNode, "parseTree", Modifier.PRIVATE);
+                break;
+
+        }
+
+        classBuilder.addField(ArrayTypeName.of(parseError), "errors", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "errorCount", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "firstErrorExpected", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "firstErrorIndex", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "tokenCount", Modifier.PRIVATE);
+        classBuilder.addField(boolean.class, "reachedEof", Modifier.PRIVATE);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build()
+        );
+
+        return classBuilder.build();
+
+    }
+
+    private static MethodSpec constructCopyNodesMethod(GeneratorContext context) {
+
+        final ClassName parseNode = ClassName.get(context.packageName, "ParseNode");
+        final ClassName identityHashMap = ClassName.get("java.util", "IdentityHashMap");
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("copyNodes");
+
+        b.addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        b.returns(ArrayTypeName.of(parseNode));
+        b.addParameter(ArrayTypeName.of(parseNode), "nodes");
+        b.addParameter(ParameterizedTypeName.get(identityHashMap, parseNode, parseNode), "copies");
+
+        // only the nodes on the stack are modified later on, nodes that
+        // have already been matched or reduced are shared with the copy
+
+        b.addStatement("ParseNode[] result = new ParseNode[nodes.length]");
+
+        b.beginControlFlow("for (int i = 0; i < nodes.length; i++)");
+        b.addStatement("ParseNode node = nodes[i]");
+        b.addStatement("ParseNode copy = new ParseNode(node.symbolId)");
+        b.addStatement("copy.actionId = node.actionId");
+        b.addStatement("copy.payload = node.payload");
+        if (context.usesPrimitiveSlots()) {
+            b.addStatement("copy.primitive = node.primitive");
+        }
+        b.addStatement("copy.children = node.children");
+        if (context.options.incremental) {
+            b.addStatement("copy.spine = node.spine");
+        }
+        b.addStatement("copies.put(node, copy)");
+        b.addStatement("result[i] = copy");
+        b.endControlFlow();
+
+        b.beginControlFlow("for (ParseNode copy : result)");
+        b.beginControlFlow("if (copy.children == null)");
+        b.addStatement("continue");
+        b.endControlFlow();
+        b.addStatement("ParseNode[] children = copy.children.clone()");
+        b.beginControlFlow("for (int j = 0; j < children.length; j++)");
+        b.addStatement("ParseNode child = copies.get(children[j])");
+        b.beginControlFlow("if (child != null)");
+        b.addStatement("children[j] = child");
+        b.endControlFlow();
+        b.endControlFlow();
+        b.addStatement("copy.children = children");
+        b.endControlFlow();
+
+        b.addStatement("return result");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructSnapshotMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("snapshot");
+
+        b.addJavadoc("Captures the state of the parser, so that it can be restored after more input has been parsed.\n");
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(ClassName.get(context.packageName, "Parser", "Snapshot"));
+
+        b.addStatement("Snapshot snapshot = new Snapshot()");
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                b.addStatement("snapshot.stack = $T.copyOf(stack, (top + 1) << 1)", arrays);
+                b.addStatement("snapshot.top = top");
+                b.addStatement("snapshot.values = $T.copyOf(values, valueCount)", arrays);
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("snapshot.primitives = $T.copyOf(primitives, valueCount)", arrays);
+                }
+                break;
+
+            case FRAMES:
+                b.addStatement("snapshot.stack = $T.copyOf(stack, (top + 1) << 1)", arrays);
+                b.addStatement("snapshot.top = top");
+                // the root node holds the result once the stack is empty
+                b.addStatement("snapshot.nodes = new ParseNode[top < 0 ? 1 : top + 1]");
+                b.addStatement("snapshot.nodes[0] = new ParseNode(parseTree)");
+                b.beginControlFlow("for (int i = 1; i <= top; i++)");
+                b.addStatement("snapshot.nodes[i] = new ParseNode(nodes[i])");
+                b.endControlFlow();
+                break;
+
+            default:
+                b.addStatement(
+                    "$T<ParseNode, ParseNode> copies = new IdentityHashMap<>()",
+                    ClassName.get("java.util", "IdentityHashMap")
+                );
+                b.addStatement("snapshot.stack = copyNodes(stack.toArray(new ParseNode[stack.size()]), copies)");
+                b.addStatement("snapshot.parseTree = copies.getOrDefault(parseTree, parseTree)");
+                break;
+
+        }
+
+        b.addStatement("snapshot.errors = getErrors()");
+        b.addStatement("snapshot.errorCount = errorCount");
+        b.addStatement("snapshot.firstErrorExpected = firstErrorExpected");
+        b.addStatement("snapshot.firstErrorIndex = firstErrorIndex");
+        b.addStatement("snapshot.tokenCount = tokenCount");
+        b.addStatement("snapshot.reachedEof = reachedEof");
+        b.addStatement("return snapshot");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructRestoreMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("restore");
+
+        b.addJavadoc("Brings the parser back to the state captured by the snapshot, which stays valid.\n");
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(ClassName.get(context.packageName, "Parser", "Snapshot"), "snapshot");
+
+        b.addStatement("reset()");
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                b.beginControlFlow("if (stack.length < snapshot.stack.length)");
+                b.addStatement("stack = new int[snapshot.stack.length]");
+                b.endControlFlow();
+                b.addStatement("System.arraycopy(snapshot.stack, 0, stack, 0, snapshot.stack.length)");
+                b.addStatement("top = snapshot.top");
+                b.addStatement("valueCount = snapshot.values.length");
+                b.beginControlFlow("if (values.length < valueCount)");
+                b.addStatement("values = new Object[valueCount]");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("primitives = new long[valueCount]");
+                }
+                b.endControlFlow();
+                b.addStatement("System.arraycopy(snapshot.values, 0, values, 0, valueCount)");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("System.arraycopy(snapshot.primitives, 0, primitives, 0, valueCount)");
+                }
+                break;
+
+            case FRAMES:
+                // the frame stack is always twice as long as the node array
+                b.beginControlFlow("if (nodes.length < snapshot.nodes.length)");
+                b.addStatement("nodes = new ParseNode[snapshot.nodes.length]");
+                b.addStatement("stack = new int[snapshot.nodes.length << 1]");
+                b.endControlFlow();
+                b.addStatement("System.arraycopy(snapshot.stack, 0, stack, 0, snapshot.stack.length)");
+                b.addStatement("top = snapshot.top");
+                b.addStatement("ParseNode root = snapshot.nodes[0]");
+                b.addStatement("parseTree.children[0] = root.children[0]");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("parseTree.primitives = root.primitives == null ? null : root.primitives.clone()");
+                }
+                b.beginControlFlow("for (int i = 1; i < snapshot.nodes.length; i++)");
+                b.addStatement("nodes[i] = new ParseNode(snapshot.nodes[i])");
+                b.endControlFlow();
+                break;
+
+            default:
+                b.addStatement(
+                    "$T<ParseNode, ParseNode> copies = new IdentityHashMap<>()",
+                    ClassName.get("java.util", "IdentityHashMap")
+                );
+                b.addStatement("stack.clear()");
+                b.addStatement("$T.addAll(stack, copyNodes(snapshot.stack, copies))", ClassName.get("java.util", "Collections"));
+                b.addStatement("parseTree = copies.getOrDefault(snapshot.parseTree, snapshot.parseTree)");
+                break;
+
+        }
+
+        b.addStatement("$T.addAll(errors, snapshot.errors)", ClassName.get("java.util", "Collections"));
+        b.addStatement("errorCount = snapshot.errorCount");
+        b.addStatement("firstErrorExpected = snapshot.firstErrorExpected");
+        b.addStatement("firstErrorIndex = snapshot.firstErrorIndex");
+        b.addStatement("tokenCount = snapshot.tokenCount");
+        b.addStatement("reachedEof = snapshot.reachedEof");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructCopyConstructor(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.constructorBuilder();
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.addParameter(ClassName.get(context.packageName, "Parser"), "other");
+
+        switch (context.options.stack) {
+
+            case VALUES:
+                b.addStatement("stack = other.stack.clone()");
+                b.addStatement("top = other.top");
+                b.addStatement("values = other.values.clone()");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("primitives = other.primitives.clone()");
+                }
+                b.addStatement("valueCount = other.valueCount");
+                break;
+
+            case FRAMES:
+                b.addStatement("stack = other.stack.clone()");
+                b.addStatement("top = other.top");
+                b.addStatement("nodes = new ParseNode[other.nodes.length]");
+                b.addStatement("nodes[0] = parseTree");
+                b.addStatement("parseTree.children[0] = other.parseTree.children[0]");
+                if (context.usesPrimitiveSlots()) {
+                    b.addStatement("parseTree.primitives = other.parseTree.primitives == null ? null : other.parseTree.primitives.clone()");
+                }
+                b.beginControlFlow("for (int i = 1; i <= top; i++)");
+                b.addStatement("nodes[i] = new ParseNode(other.nodes[i])");
+                b.endControlFlow();
+                break;
+
+            default:
+                b.addStatement(
+                    "$T<ParseNode, ParseNode> copies = new IdentityHashMap<>()",
+                    ClassName.get("java.util", "IdentityHashMap")
+                );
+                b.addStatement("$T.addAll(stack, copyNodes(other.stack.toArray(new ParseNode[other.stack.size()]), copies))", ClassName.get("java.util", "Collections"));
+                b.addStatement("parseTree = copies.getOrDefault(other.parseTree, other.parseTree)");
+                break;
+
+        }
+
+        b.addStatement("errors.addAll(other.errors)");
+        b.addStatement("errorCount = other.errorCount");
+        b.addStatement("firstErrorExpected = other.firstErrorExpected");
+        b.addStatement("firstErrorIndex = other.firstErrorIndex");
+        b.addStatement("tokenCount = other.tokenCount");
+        b.addStatement("reachedEof = other.reachedEof");
+        b.addStatement("maxErrors = other.maxErrors");
+        b.addStatement("recordErrors = other.recordErrors");
+
+        if (context.options.listener) {
+            b.addStatement("listener = other.listener");
+        }
+
+        // the fork counts its own work from here on
+        if (context.options.metrics) {
+            b.addStatement("metrics = other.metrics");
+        }
+
+        return b.build();
+
+    }
+
+    static void generate(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        classBuilder.addMethod(constructCopyConstructor(context));
+
+        classBuilder.addMethod(constructSnapshotMethod(context));
+        classBuilder.addMethod(constructRestoreMethod(context));
+
+        // only the stack is copied, values that have already been
+        // computed and completed subtrees are shared with the fork
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("fork")
+                .addJavadoc("Creates an independent parser in the same state, as if it had been fed the same tokens.\n")
+                .addJavadoc("Its settings are copied as well.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ClassName.get(context.packageName, "Parser"))
+                .addStatement("return new Parser(this)")
+                .build()
+        );
+
+        if (context.options.stack == GeneratorOptions.StackMode.NODES) {
+            classBuilder.addMethod(constructCopyNodesMethod(context));
+        }
+
+        classBuilder.addType(constructSnapshotClass(context));
+
+    }
+
+}
@@ -0,0 +1,92 @@
+package net.zerobone.knife.generator;
+
+/**
+ * Values of non-terminals with a primitive type are kept in long slots
+ * instead of Object ones, so that no boxing happens during reductions.
+ */
+class PrimitiveSlots {
+
+    private PrimitiveSlots() {}
+
+    static boolean isPrimitive(String type) {
+
+        switch (type) {
+            case "boolean":
+            case "byte":
+            case "short":
+            case "char":
+            case "int":
+            case "long":
+            case "float":
+            case "double":
+                return true;
+            default:
+                return false;
+        }
+
+    }
+
+    static String defaultValue(String type) {
+
+        if (!isPrimitive(type)) {
+            return "null";
+        }
+
+        return type.equals("boolean") ? "false" : "0";
+
+    }
+
+    /**
+     * @return true if the default value is a literal of the given type, the other ones have to be cast
+     */
+    static boolean isTypedDefaultValue(String type) {
+        return type.equals("int") || type.equals("boolean");
+    }
+
+    /**
+     * @return expression converting the value of the given type to a long slot
+     */
+    static String encode(String type, String value) {
+
+        switch (type) {
+            case "boolean":
+                return "(" + value + ") ? 1L : 0L";
+            case "float":
+                return "Float.floatToRawIntBits(" + value + ")";
+            case "double":
+                return "Double.doubleToRawLongBits(" + value + ")";
+            default:
+                // integral types are widened
+                return value;
+        }
+
+    }
+
+    /**
+     * @return expression converting the long slot back to the given type
+     */
+    static String decode(String type, String slot) {
+
+        switch (type) {
+            case "boolean":
+                return "(" + slot + " != 0)";
+            case "float":
+                return "Float.intBitsToFloat((int)" + slot + ")";
+            case "double":
+                return "Double.longBitsToDouble(" + slot + ")";
+            case "long":
+                return slot;
+            default:
+                return "(" + type + ")" + slot;
+        }
+
+    }
+
+    /**
+     * @return name of the typed accessor for a start symbol of the given primitive type, e.g. getIntValue
+     */
+    static String valueGetterName(String type) {
+        return "get" + Character.toUpperCase(type.charAt(0)) + type.substring(1) + "Value";
+    }
+
+}
@@ -0,0 +1,628 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+import net.zerobone.knife.grammar.Symbol;
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.grammar.table.ParsingTableProduction;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class RecursiveDescentParserGenerator {
+
+    private RecursiveDescentParserGenerator() {}
+
+    static String terminalConstant(ParsingTable table, int terminal) {
+        return terminal == 0 ? "T_EOF" : "T_" + table.idToSymbol(terminal);
+    }
+
+    static String nonTerminalMethod(String nonTerminal) {
+        // non-terminals introduced by left recursion elimination contain primes
+        return "parse_" + nonTerminal.replace('\'', '$');
+    }
+
+    private static void constructParserFields(GeneratorContext context, TypeSpec.Builder classBuilder) {
+
+        final ClassName arrayList = ClassName.get("java.util", "ArrayList");
+        final ClassName parseError = ClassName.get(context.packageName, "ParseError");
+
+        classBuilder.addField(
+            FieldSpec.builder(ClassName.get(context.packageName, "Parser", "EndOfInput"), "END_OF_INPUT")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new EndOfInput()")
+                .build()
+        );
+
+        classBuilder.addField(
+            FieldSpec.builder(ClassName.get(context.packageName, "Parser", "ErrorLimitReached"), "ERROR_LIMIT_REACHED")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new ErrorLimitReached()")
+                .build()
+        );
+
+        // either the token arrays or the token source supply the input
+        classBuilder.addField(
+            ParameterizedTypeName.get(ClassName.get(context.packageName, "TokenSource"), WildcardTypeName.subtypeOf(Object.class)),
+            "source",
+            Modifier.PRIVATE
+        );
+        classBuilder.addField(int[].class, "tokenIds", Modifier.PRIVATE);
+        classBuilder.addField(ArrayTypeName.of(context.getTokenTypeName()), "tokens", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "position", Modifier.PRIVATE);
+        classBuilder.addField(int.class, "end", Modifier.PRIVATE);
+
+        // lookahead
+        classBuilder.addField(int.class, "tokenId", Modifier.PRIVATE);
+        classBuilder.addField(context.getTokenTypeName(), "token", Modifier.PRIVATE);
+
+        classBuilder.addField(
+            FieldSpec.builder(ParameterizedTypeName.get(arrayList, parseError), "errors")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new ArrayList<>()")
+                .build()
+        );
+        classBuilder.addField(boolean.class, "reachedEof", Modifier.PRIVATE);
+        // a primitive start symbol keeps its type, so that its value is not boxed
+        String startType = context.symbolType(context.table.startSymbol);
+
+        classBuilder.addField(
+            PrimitiveSlots.isPrimitive(startType) ? TypeVariableName.get(startType) : TypeName.OBJECT,
+            "value",
+            Modifier.PRIVATE
+        );
+
+    }
+
+    private static FieldSpec constructSerialVersionUid() {
+        return FieldSpec.builder(long.class, "serialVersionUID", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer("1L")
+            .build();
+    }
+
+    private static TypeSpec constructEndOfInputClass() {
+
+        // thrown when the parser needs a token after the last one supplied,
+        // a single instance without a stack trace is reused
+
+        return TypeSpec.classBuilder("EndOfInput")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .superclass(RuntimeException.class)
+            .addField(constructSerialVersionUid())
+            .addMethod(
+                MethodSpec.constructorBuilder()
+                    .addStatement("super(null, null, false, false)")
+                    .build()
+            )
+            .build();
+
+    }
+
+    private static TypeSpec constructErrorLimitReachedClass() {
+
+        // thrown by error() to unwind all non-terminal methods at once
+
+        return TypeSpec.classBuilder("ErrorLimitReached")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .superclass(RuntimeException.class)
+            .addField(constructSerialVersionUid())
+            .addMethod(
+                MethodSpec.constructorBuilder()
+                    .addStatement("super(null, null, false, false)")
+                    .build()
+            )
+            .build();
+
+    }
+
+    private static TypeSpec constructSourceExceptionClass() {
+
+        // carries a checked exception of the token source out of next(),
+        // parseAll rethrows the cause
+
+        return TypeSpec.classBuilder("SourceException")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .superclass(RuntimeException.class)
+            .addField(constructSerialVersionUid())
+            .addMethod(
+                MethodSpec.constructorBuilder()
+                    .addParameter(Exception.class, "cause")
+                    .addStatement("super(null, cause, false, false)")
+                    .build()
+            )
+            .build();
+
+    }
+
+    private static MethodSpec constructRunMethod(GeneratorContext context) {
+
+        final ParsingTable table = context.table;
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("run");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+
+        b.beginControlFlow("try");
+
+        b.addStatement("next()");
+        b.addStatement("value = $L()", nonTerminalMethod(table.startSymbol));
+
+        b.beginControlFlow("if (tokenId != T_EOF)");
+        b.addStatement("error(T_EOF, tokenId, token)");
+        b.nextControlFlow("else");
+        b.addStatement("reachedEof = true");
+        b.endControlFlow();
+
+        b.nextControlFlow("catch (EndOfInput e)");
+        b.addComment("the input ended before the start symbol could be reduced");
+        b.nextControlFlow("catch (ErrorLimitReached e)");
+        b.addComment("the remaining input is not looked at");
+
+        if (MetaGenerator.tracksDepth(context)) {
+            // the methods left by an exception did not decrement the depth
+            b.nextControlFlow("finally");
+            b.addStatement("depth = 0");
+            MetaGenerator.addParseEndHooks(context, b);
+        }
+
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructParseAllMethod(GeneratorContext context) {
+
+        TypeVariableName exceptionType = TypeVariableName.get("E", Exception.class);
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parseAll");
+
+        b.addAnnotation(
+            AnnotationSpec.builder(SuppressWarnings.class)
+                .addMember("value", "$S", "unchecked")
+                .build()
+        );
+        b.addModifiers(Modifier.PUBLIC);
+        b.addTypeVariable(exceptionType);
+        b.returns(void.class);
+        b.addParameter(
+            ParameterizedTypeName.get(ClassName.get(context.packageName, "TokenSource"), exceptionType),
+            "source"
+        );
+        b.addException(exceptionType);
+
+        b.addStatement("this.source = source");
+        b.addStatement("position = 0");
+        // set by next() once eof has been pulled
+        b.addStatement("end = -1");
+
+        b.beginControlFlow("try");
+        b.addStatement("run()");
+        b.nextControlFlow("catch (SourceException e)");
+        b.addStatement("throw (E)e.getCause()");
+        b.nextControlFlow("finally");
+        b.addStatement("this.source = null");
+        b.addStatement("token = null");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructParseMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("parse");
+
+        b.addJavadoc("Parses the whole input, which has to end with T_EOF.\n");
+        b.addJavadoc("Unlike the table parser, the recursive descent parser cannot continue\n");
+        b.addJavadoc("with the next part of the input in a later call.\n");
+        b.addJavadoc("@throws IllegalStateException the last token is not T_EOF\n");
+        b.addModifiers(Modifier.PUBLIC);
+        b.returns(void.class);
+        b.addParameter(int[].class, "tokenIds");
+        b.addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens");
+        b.addParameter(int.class, "offset");
+        b.addParameter(int.class, "length");
+
+        // without eof the parser would run out of input inside the non-terminal methods
+        // and silently lose everything parsed so far
+        b.beginControlFlow("if (length == 0 || tokenIds[offset + length - 1] != T_EOF)");
+        b.addStatement("throw new IllegalStateException($S)", "the recursive descent parser needs the whole input up to T_EOF in one call");
+        b.endControlFlow();
+
+        b.addStatement("this.tokenIds = tokenIds");
+        b.addStatement("this.tokens = tokens");
+        b.addStatement("position = offset");
+        b.addStatement("end = offset + length");
+
+        b.beginControlFlow("try");
+        b.addStatement("run()");
+        b.nextControlFlow("finally");
+        b.addStatement("this.tokenIds = null");
+        b.addStatement("this.tokens = null");
+        b.addStatement("token = null");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructNextMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("next");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+
+        b.beginControlFlow("if (position == end)");
+        b.addStatement("throw END_OF_INPUT");
+        b.endControlFlow();
+
+        b.beginControlFlow("if (source == null)");
+        b.addStatement("tokenId = tokenIds[position]");
+        b.addStatement("token = tokens == null ? null : tokens[position]");
+        b.addStatement("position++");
+        b.addStatement("tokenCount++");
+
+        MetaGenerator.addTokenHooks(context, b);
+        b.addStatement("return");
+        b.endControlFlow();
+
+        b.beginControlFlow("try");
+        b.addStatement("tokenId = source.next()");
+        b.nextControlFlow("catch (RuntimeException e)");
+        b.addStatement("throw e");
+        b.nextControlFlow("catch (Exception e)");
+        b.addStatement("throw new SourceException(e)");
+        b.endControlFlow();
+
+        b.addStatement("token = source.token()");
+        b.addStatement("position++");
+        b.addStatement("tokenCount++");
+
+        MetaGenerator.addTokenHooks(context, b);
+
+        // nothing is pulled from the source after eof
+        b.beginControlFlow("if (tokenId == T_EOF)");
+        b.addStatement("end = position");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructMatchMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("match");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(context.getTokenTypeName());
+        b.addParameter(int.class, "terminal");
+
+        b.addStatement("$T matched = token", context.getTokenTypeName());
+
+        b.beginControlFlow("if (tokenId != terminal)");
+        b.addStatement("error(terminal, tokenId, token)");
+        b.addStatement("matched = null");
+        b.endControlFlow();
+
+        b.addStatement("next()");
+        b.addStatement("return matched");
+
+        return b.build();
+
+    }
+
+    private static MethodSpec constructErrorMethod(GeneratorContext context) {
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder("error");
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(void.class);
+
+        MetaGenerator.addErrorRecord(context, b);
+
+        b.beginControlFlow("if (errorCount == maxErrors)");
+        b.addStatement("throw ERROR_LIMIT_REACHED");
+        b.endControlFlow();
+
+        return b.build();
+
+    }
+
+    private static void constructProductionCase(GeneratorContext context, MethodSpec.Builder b, int actionId) {
+
+        final ParsingTable table = context.table;
+
+        final ParsingTableProduction production = table.productionActions[actionId - 1];
+
+        ArrayList<Symbol> body = production.body;
+
+        if (MetaGenerator.tracksDepth(context)) {
+            b.addStatement("depth++");
+            MetaGenerator.addExpansionHooks(context, b, String.valueOf(actionId), "depth");
+        }
+
+        // first match all symbols, keeping the values of the named ones in locals
+
+        for (int j = 0; j < body.size(); j++) {
+
+            Symbol symbol = body.get(j);
+
+            if (symbol.isTerminal) {
+
+                String constant = terminalConstant(table, table.mapping.mapKey(symbol.id));
+
+                if (symbol.argumentName == null) {
+                    b.addStatement("match($L)", constant);
+                }
+                else {
+                    b.addStatement("$T $L = match($L)", context.getTokenTypeName(), "$" + j, constant);
+                }
+
+                continue;
+
+            }
+
+            if (symbol.argumentName == null) {
+                b.addStatement("$L()", nonTerminalMethod(symbol.id));
+            }
+            else {
+                b.addStatement("$L $L = $L()", context.symbolType(symbol.id), symbol.argumentName, nonTerminalMethod(symbol.id));
+            }
+
+        }
+
+        if (MetaGenerator.tracksDepth(context)) {
+            b.addStatement("depth--");
+            MetaGenerator.addReductionHooks(context, b, String.valueOf(actionId));
+        }
+
+        String type = context.symbolType(production.label);
+
+        // semantic actions are not executed once a syntax error has been found
+
+        b.beginControlFlow("if (errorCount != 0)");
+        b.addStatement("return $L", PrimitiveSlots.defaultValue(type));
+        b.endControlFlow();
+
+        for (int j = 0; j < body.size(); j++) {
+
+            Symbol symbol = body.get(j);
+
+            if (!symbol.isTerminal || symbol.argumentName == null) {
+                continue;
+            }
+
+            String argumentType = context.symbolType(symbol.id);
+
+            if (argumentType.equals("Object")) {
+                b.addStatement("Object $L = $L", symbol.argumentName, "$" + j);
+            }
+            else {
+                b.addStatement("$L $L = ($L)$L", argumentType, symbol.argumentName, argumentType, "$" + j);
+            }
+
+        }
+
+        // as in ParseNode.reduce the result is assigned to an untyped v,
+        // unless the non-terminal has a primitive type
+
+        if (PrimitiveSlots.isPrimitive(type)) {
+            b.addStatement("$L v = $L", type, PrimitiveSlots.defaultValue(type));
+        }
+        else {
+            b.addStatement("Object v = null");
+        }
+
+        if (production.code != null) {
+            b.addCode("$L\n", production.code);
+        }
+
+        if (context.options.listener) {
+            b.addStatement("return $L", ParseListenerGenerator.listenerCall(context, production.label, "v", PrimitiveSlots.isPrimitive(type)));
+        }
+        else if (type.equals("Object") || PrimitiveSlots.isPrimitive(type)) {
+            b.addStatement("return v");
+        }
+        else {
+            b.addStatement("return ($L)v", type);
+        }
+
+    }
+
+    private static MethodSpec constructNonTerminalMethod(GeneratorContext context, int nonTerminal) {
+
+        final ParsingTable table = context.table;
+
+        final int row = -nonTerminal - 1;
+
+        final String label = table.idToSymbol(nonTerminal);
+
+        final String type = context.symbolType(label);
+
+        MethodSpec.Builder b = MethodSpec.methodBuilder(nonTerminalMethod(label));
+
+        b.addModifiers(Modifier.PRIVATE);
+        b.returns(TypeVariableName.get(type));
+
+        // group the lookahead terminals by the production they select
+
+        LinkedHashMap<Integer, ArrayList<Integer>> cases = new LinkedHashMap<>();
+
+        for (int terminal = 0; terminal < table.terminalCount; terminal++) {
+
+            int actionId = table.table[row][terminal];
+
+            if (actionId == 0) {
+                continue;
+            }
+
+            cases.computeIfAbsent(actionId, k -> new ArrayList<>()).add(terminal);
+
+        }
+
+        b.beginControlFlow("while (true)");
+
+        b.beginControlFlow("switch (tokenId)");
+
+        for (Map.Entry<Integer, ArrayList<Integer>> entry : cases.entrySet()) {
+
+            int actionId = entry.getKey();
+
+            for (int terminal : entry.getValue()) {
+                b.addCode("case $L:\n", terminalConstant(table, terminal));
+            }
+
+            if (actionId == ParsingTable.SYNCHRONIZE) {
+                b.addCode("$>");
+                MetaGenerator.addSynchronizationHooks(context, b);
+                b.addStatement("error(ParseError.ANY, tokenId, token)");
+                b.addStatement("next()");
+                b.addStatement("return $L$<", PrimitiveSlots.defaultValue(type));
+                continue;
+            }
+
+            b.addCode("{\n$>");
+            constructProductionCase(context, b, actionId);
+            b.addCode("$<}\n");
+
+        }
+
+        b.addCode("default:\n$>");
+        b.addStatement("error(ParseError.ANY, tokenId, token)");
+        b.addStatement("next()");
+        b.addStatement("break$<");
+
+        b.endControlFlow(); // switch
+
+        b.endControlFlow(); // while
+
+        return b.build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Parser")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        // fields
+
+        MetaGenerator.constructConstants(context.table, classBuilder);
+
+        constructParserFields(context, classBuilder);
+
+        MetaGenerator.constructErrorLimit(context, classBuilder);
+        MetaGenerator.constructListener(context, classBuilder);
+        MetaGenerator.constructMetrics(context, classBuilder);
+        MetaGenerator.constructEvents(context, classBuilder);
+
+        if (MetaGenerator.tracksDepth(context)) {
+            // number of production methods currently on the call stack
+            classBuilder.addField(int.class, "depth", Modifier.PRIVATE);
+        }
+
+        // methods
+
+        classBuilder.addMethod(
+            MethodSpec
+                .constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("reset()")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("parse")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int[].class, "tokenIds")
+                .addParameter(ArrayTypeName.of(context.getTokenTypeName()), "tokens")
+                .addStatement("parse(tokenIds, tokens, 0, tokenIds.length)")
+                .build()
+        );
+
+        classBuilder.addMethod(constructParseMethod(context));
+
+        classBuilder.addMethod(constructParseAllMethod(context));
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("parse")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int[].class, "tokenIds")
+                .addParameter(int.class, "offset")
+                .addParameter(int.class, "length")
+                .addStatement("parse(tokenIds, null, offset, length)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("reset")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("errors.clear()")
+                .addStatement("errorCount = 0")
+                .addStatement("tokenCount = 0")
+                .addStatement("reachedEof = false")
+                .addStatement("value = $L", PrimitiveSlots.defaultValue(context.symbolType(context.table.startSymbol)))
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("getValue")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addStatement("assert successfullyParsed()")
+                .addStatement("return value")
+                .build()
+        );
+
+        ParserGenerator.constructPrimitiveValueGetter(context, classBuilder, "value");
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("getErrors")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ArrayTypeName.of(ClassName.get(context.packageName, "ParseError")))
+                .addStatement("ParseError[] parseErrors = new ParseError[errors.size()]")
+                .addStatement("errors.toArray(parseErrors)")
+                .addStatement("return parseErrors")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec
+                .methodBuilder("successfullyParsed")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return reachedEof && errorCount == 0")
+                .build()
+        );
+
+        MetaGenerator.constructThreadLocalInstance(context, classBuilder);
+
+        classBuilder.addMethod(constructRunMethod(context));
+        classBuilder.addMethod(constructNextMethod(context));
+        classBuilder.addMethod(constructMatchMethod(context));
+        classBuilder.addMethod(constructErrorMethod(context));
+
+        // one method per non-terminal
+
+        for (int y = 0; y < context.table.nonTerminalCount; y++) {
+            classBuilder.addMethod(constructNonTerminalMethod(context, -y - 1));
+        }
+
+        classBuilder.addType(constructEndOfInputClass());
+        classBuilder.addType(constructErrorLimitReachedClass());
+        classBuilder.addType(constructSourceExceptionClass());
+
+        return classBuilder;
+
+    }
+
+}
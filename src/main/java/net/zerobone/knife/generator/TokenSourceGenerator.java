@@ -0,0 +1,43 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.Modifier;
+
+class TokenSourceGenerator {
+
+    private TokenSourceGenerator() {}
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        // the exception type is a parameter so that lexers can report
+        // their own checked exceptions through Parser.parseAll
+        TypeVariableName exceptionType = TypeVariableName.get("E", Exception.class);
+
+        TypeSpec.Builder interfaceBuilder = TypeSpec.interfaceBuilder("TokenSource")
+            .addModifiers(Modifier.PUBLIC)
+            .addTypeVariable(exceptionType);
+
+        interfaceBuilder.addMethod(
+            MethodSpec.methodBuilder("next")
+                .addJavadoc("Advances to the next token of the input.\n")
+                .addJavadoc("@return id of the token, T_EOF once the input is exhausted\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(int.class)
+                .addException(exceptionType)
+                .build()
+        );
+
+        interfaceBuilder.addMethod(
+            MethodSpec.methodBuilder("token")
+                .addJavadoc("@return value of the token returned by the last call to next()\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(context.getTokenTypeName())
+                .build()
+        );
+
+        return interfaceBuilder;
+
+    }
+
+}
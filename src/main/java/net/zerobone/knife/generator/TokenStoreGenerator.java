@@ -0,0 +1,343 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.*;
+import net.zerobone.knife.grammar.Symbol;
+import net.zerobone.knife.grammar.table.ParsingTableProduction;
+
+import javax.lang.model.element.Modifier;
+import java.util.Arrays;
+
+class TokenStoreGenerator {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private TokenStoreGenerator() {}
+
+    /**
+     * @return for every terminal id, whether a production passes the value of the terminal to its code
+     */
+    private static boolean[] terminalsWithText(GeneratorContext context) {
+
+        boolean[] hasText = new boolean[context.table.terminalCount];
+
+        for (ParsingTableProduction production : context.table.productionActions) {
+
+            for (Symbol symbol : production.body) {
+
+                if (symbol.isTerminal && symbol.argumentName != null) {
+                    hasText[context.table.mapping.mapKey(symbol.id)] = true;
+                }
+
+            }
+
+        }
+
+        return hasText;
+
+    }
+
+    /**
+     * @return for every terminal id, whether the value of the terminal is declared as a String and has to be copied
+     */
+    private static boolean[] terminalsWithStringText(GeneratorContext context) {
+
+        boolean[] stringText = new boolean[context.table.terminalCount];
+
+        for (ParsingTableProduction production : context.table.productionActions) {
+
+            for (Symbol symbol : production.body) {
+
+                if (symbol.isTerminal && symbol.argumentName != null && context.hasStringText(symbol.id)) {
+                    stringText[context.table.mapping.mapKey(symbol.id)] = true;
+                }
+
+            }
+
+        }
+
+        return stringText;
+
+    }
+
+    private static String booleanArrayLiteral(boolean[] array) {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append('{');
+
+        for (int i = 0; i < array.length; i++) {
+
+            sb.append(array[i]);
+
+            if (i != array.length - 1) {
+                sb.append(',');
+            }
+
+        }
+
+        sb.append('}');
+
+        return sb.toString();
+
+    }
+
+    private static TypeSpec constructText() {
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Text")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .addSuperinterface(CharSequence.class);
+
+        classBuilder.addJavadoc("View of a part of the buffer, the characters are not copied.\n");
+
+        classBuilder.addField(char[].class, "chars", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(byte[].class, "bytes", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(int.class, "start", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(int.class, "end", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addParameter(char[].class, "chars")
+                .addParameter(byte[].class, "bytes")
+                .addParameter(int.class, "start")
+                .addParameter(int.class, "end")
+                .addStatement("this.chars = chars")
+                .addStatement("this.bytes = bytes")
+                .addStatement("this.start = start")
+                .addStatement("this.end = end")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("length")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return end - start")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("charAt")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(char.class)
+                .addParameter(int.class, "index")
+                .beginControlFlow("if (index < 0 || index >= end - start)")
+                .addStatement("throw new $T(index)", StringIndexOutOfBoundsException.class)
+                .endControlFlow()
+                .addStatement("return chars != null ? chars[start + index] : (char)(bytes[start + index] & 0xff)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("subSequence")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(CharSequence.class)
+                .addParameter(int.class, "from")
+                .addParameter(int.class, "to")
+                .beginControlFlow("if (from < 0 || from > to || to > end - start)")
+                .addStatement("throw new $T()", StringIndexOutOfBoundsException.class)
+                .endControlFlow()
+                .addStatement("return new Text(chars, bytes, start + from, start + to)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .beginControlFlow("if (chars != null)")
+                .addStatement("return new String(chars, start, end - start)")
+                .endControlFlow()
+                .addStatement("return new String(bytes, start, end - start, $T.ISO_8859_1)", ClassName.get("java.nio.charset", "StandardCharsets"))
+                .build()
+        );
+
+        return classBuilder.build();
+
+    }
+
+    static TypeSpec.Builder generate(GeneratorContext context) {
+
+        final ClassName parser = ClassName.get(context.packageName, "Parser");
+
+        final ClassName tokenSource = ClassName.get(context.packageName, "TokenSource");
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("TokenStore")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(tokenSource, ClassName.get(RuntimeException.class)));
+
+        classBuilder.addJavadoc("Tokens stored as parallel arrays of ids and offsets into the buffer they were read from.\n");
+        classBuilder.addJavadoc("As a TokenSource, the store only creates a CharSequence view of a token\n");
+        classBuilder.addJavadoc("if some production passes the value of its terminal to its code, otherwise the value is null.\n");
+        classBuilder.addJavadoc("Terminals declared as String get a copy of the characters instead, so declare them as CharSequence to avoid it.\n");
+
+        classBuilder.addField(
+            FieldSpec.builder(boolean[].class, "hasText", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", booleanArrayLiteral(terminalsWithText(context)))
+                .build()
+        );
+
+        // terminals declared as String get a copy of their text instead of a view
+        classBuilder.addField(
+            FieldSpec.builder(boolean[].class, "stringText", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", booleanArrayLiteral(terminalsWithStringText(context)))
+                .build()
+        );
+
+        // exactly one of the buffers is set
+        classBuilder.addField(char[].class, "chars", Modifier.PRIVATE, Modifier.FINAL);
+        classBuilder.addField(byte[].class, "bytes", Modifier.PRIVATE, Modifier.FINAL);
+
+        classBuilder.addField(int[].class, "types", Modifier.PRIVATE);
+        classBuilder.addField(int[].class, "starts", Modifier.PRIVATE);
+        classBuilder.addField(int[].class, "ends", Modifier.PRIVATE);
+
+        classBuilder.addField(int.class, "size", Modifier.PRIVATE);
+
+        // index of the token returned by the last call to next()
+        classBuilder.addField(
+            FieldSpec.builder(int.class, "cursor", Modifier.PRIVATE)
+                .initializer("-1")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(char[].class, "chars")
+                .addParameter(byte[].class, "bytes")
+                .addStatement("this.chars = chars")
+                .addStatement("this.bytes = bytes")
+                .addStatement("types = new int[$L]", INITIAL_CAPACITY)
+                .addStatement("starts = new int[$L]", INITIAL_CAPACITY)
+                .addStatement("ends = new int[$L]", INITIAL_CAPACITY)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("@param buffer characters the offsets of the tokens refer to\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(char[].class, "buffer")
+                .addStatement("this(buffer, null)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.constructorBuilder()
+                .addJavadoc("@param buffer ISO-8859-1 characters the offsets of the tokens refer to\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(byte[].class, "buffer")
+                .addStatement("this(null, buffer)")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("add")
+                .addJavadoc("Appends a token occupying the buffer from start (inclusive) to end (exclusive).\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "tokenId")
+                .addParameter(int.class, "start")
+                .addParameter(int.class, "end")
+                .beginControlFlow("if (size == types.length)")
+                .addStatement("types = $T.copyOf(types, size * 2)", Arrays.class)
+                .addStatement("starts = $T.copyOf(starts, size * 2)", Arrays.class)
+                .addStatement("ends = $T.copyOf(ends, size * 2)", Arrays.class)
+                .endControlFlow()
+                .addStatement("types[size] = tokenId")
+                .addStatement("starts[size] = start")
+                .addStatement("ends[size] = end")
+                .addStatement("size++")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("size")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return size")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getType")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(int.class, "index")
+                .addStatement("return types[index]")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getStart")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(int.class, "index")
+                .addStatement("return starts[index]")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getEnd")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(int.class, "index")
+                .addStatement("return ends[index]")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("getText")
+                .addJavadoc("@return view of the characters of the token, backed by the buffer\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(CharSequence.class)
+                .addParameter(int.class, "index")
+                .addStatement("return new Text(chars, bytes, starts[index], ends[index])")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("rewind")
+                .addJavadoc("Makes next() start over at the first token.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("cursor = -1")
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("next")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .beginControlFlow("if (cursor < size)")
+                .addStatement("cursor++")
+                .endControlFlow()
+                .addStatement("return cursor < size ? types[cursor] : $T.T_EOF", parser)
+                .build()
+        );
+
+        classBuilder.addMethod(
+            MethodSpec.methodBuilder("token")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(context.getTokenTypeName())
+                .beginControlFlow("if (cursor >= size || !hasText[types[cursor]])")
+                .addStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("if (stringText[types[cursor]])")
+                .addStatement("return getText(cursor).toString()")
+                .endControlFlow()
+                .addStatement("return getText(cursor)")
+                .build()
+        );
+
+        classBuilder.addType(constructText());
+
+        return classBuilder;
+
+    }
+
+}
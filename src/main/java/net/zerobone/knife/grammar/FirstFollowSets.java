@@ -0,0 +1,445 @@
+package net.zerobone.knife.grammar;
+
+import net.zerobone.knife.utils.BitMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * FIRST and FOLLOW sets of all non-terminals of a grammar.
+ *
+ * Non-terminals are numbered by ordinals in the order of the productions map, and the sets are rows of bit matrices.
+ * The columns are terminal ids, column 0 being the end of input in the follow sets.
+ */
+class FirstFollowSets {
+
+    private final Grammar grammar;
+
+    // ordinal -> non-terminal id
+    private final int[] nonTerminals;
+
+    // -id - 1 -> ordinal, -1 for non-terminals without productions
+    private final int[] ordinals;
+
+    final boolean[] nullable;
+
+    final BitMatrix first;
+
+    BitMatrix follow = null;
+
+    FirstFollowSets(Grammar grammar) {
+
+        this.grammar = grammar;
+
+        nonTerminals = new int[grammar.productions.size()];
+
+        int lowestNonTerminal = Grammar.START_SYMBOL_ID;
+
+        int ordinal = 0;
+
+        for (int nonTerminal : grammar.productions.keySet()) {
+
+            nonTerminals[ordinal++] = nonTerminal;
+
+            lowestNonTerminal = Math.min(lowestNonTerminal, nonTerminal);
+
+        }
+
+        ordinals = new int[-lowestNonTerminal];
+
+        Arrays.fill(ordinals, -1);
+
+        for (ordinal = 0; ordinal < nonTerminals.length; ordinal++) {
+            ordinals[-nonTerminals[ordinal] - 1] = ordinal;
+        }
+
+        nullable = new boolean[nonTerminals.length];
+
+        first = new BitMatrix(nonTerminals.length, grammar.getTerminalCount() + 1);
+
+    }
+
+    int ordinal(int nonTerminal) {
+
+        int index = -nonTerminal - 1;
+
+        return index < ordinals.length ? ordinals[index] : -1;
+
+    }
+
+    // first sets
+
+    void computeFirstSets() {
+
+        // a change of the first set of a non-terminal can only change the first sets
+        // of the non-terminals having it in the leading non-terminals of a production
+
+        int[][] dependents = collectFirstSetDependents();
+
+        Worklist worklist = new Worklist(nonTerminals.length);
+
+        while (!worklist.isEmpty()) {
+
+            int nonTerminal = worklist.remove();
+
+            if (updateFirstSet(nonTerminal)) {
+
+                for (int dependent : dependents[nonTerminal]) {
+                    worklist.add(dependent);
+                }
+
+            }
+
+        }
+
+    }
+
+    private int[][] collectFirstSetDependents() {
+
+        int[] counts = new int[nonTerminals.length];
+
+        // the last label counted for every non-terminal, so that every dependent is only listed once
+        int[] lastLabels = new int[nonTerminals.length];
+
+        Arrays.fill(lastLabels, -1);
+
+        for (int label = 0; label < nonTerminals.length; label++) {
+
+            for (InnerProduction production : grammar.productions.get(nonTerminals[label])) {
+
+                for (InnerSymbol symbol : production.body) {
+
+                    if (symbol.isTerminal()) {
+                        break;
+                    }
+
+                    int nonTerminal = ordinal(symbol.id);
+
+                    if (nonTerminal != -1 && lastLabels[nonTerminal] != label) {
+                        lastLabels[nonTerminal] = label;
+                        counts[nonTerminal]++;
+                    }
+
+                }
+
+            }
+
+        }
+
+        int[][] dependents = new int[nonTerminals.length][];
+
+        for (int nonTerminal = 0; nonTerminal < nonTerminals.length; nonTerminal++) {
+            dependents[nonTerminal] = new int[counts[nonTerminal]];
+            counts[nonTerminal] = 0;
+        }
+
+        Arrays.fill(lastLabels, -1);
+
+        for (int label = 0; label < nonTerminals.length; label++) {
+
+            for (InnerProduction production : grammar.productions.get(nonTerminals[label])) {
+
+                for (InnerSymbol symbol : production.body) {
+
+                    if (symbol.isTerminal()) {
+                        break;
+                    }
+
+                    int nonTerminal = ordinal(symbol.id);
+
+                    if (nonTerminal != -1 && lastLabels[nonTerminal] != label) {
+                        lastLabels[nonTerminal] = label;
+                        dependents[nonTerminal][counts[nonTerminal]++] = label;
+                    }
+
+                }
+
+            }
+
+        }
+
+        return dependents;
+
+    }
+
+    private boolean updateFirstSet(int label) {
+
+        boolean modified = false;
+
+        for (InnerProduction production : grammar.productions.get(nonTerminals[label])) {
+
+            boolean bodyNullable = true;
+
+            for (InnerSymbol symbol : production.body) {
+
+                if (symbol.isTerminal()) {
+
+                    if (!first.get(label, symbol.id)) {
+                        first.set(label, symbol.id);
+                        modified = true;
+                    }
+
+                    bodyNullable = false;
+
+                    break;
+
+                }
+
+                int nonTerminal = ordinal(symbol.id);
+
+                if (nonTerminal == -1) {
+                    // a non-terminal without productions doesn't derive anything
+                    bodyNullable = false;
+                    break;
+                }
+
+                if (first.orRow(label, first, nonTerminal)) {
+                    modified = true;
+                }
+
+                if (!nullable[nonTerminal]) {
+                    bodyNullable = false;
+                    break;
+                }
+
+                // the non-terminal is nullable, so the next symbol can appear at the start as well
+
+            }
+
+            if (bodyNullable && !nullable[label]) {
+                nullable[label] = true;
+                modified = true;
+            }
+
+        }
+
+        return modified;
+
+    }
+
+    // follow sets
+
+    void computeFollowSets() {
+
+        assert follow == null;
+
+        follow = new BitMatrix(nonTerminals.length, first.getColumns());
+
+        follow.set(ordinal(Grammar.START_SYMBOL_ID), Grammar.FOLLOW_SET_EOF);
+
+        // every non-terminal at the end of a production, or followed by nullable symbols only,
+        // inherits the follow set of the label
+
+        int[][] inheritors = initializeFollowSets();
+
+        Worklist worklist = new Worklist(nonTerminals.length);
+
+        while (!worklist.isEmpty()) {
+
+            int label = worklist.remove();
+
+            for (int inheritor : inheritors[label]) {
+
+                if (follow.orRow(inheritor, follow, label)) {
+                    worklist.add(inheritor);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Adds the FIRST sets of the symbols following every non-terminal to its follow set.
+     * @return the non-terminals inheriting the follow set of each label
+     */
+    private int[][] initializeFollowSets() {
+
+        int[][] inheritors = new int[nonTerminals.length][];
+
+        // FIRST of the symbols after the current one
+        BitMatrix trailer = new BitMatrix(1, first.getColumns());
+
+        int[] labelInheritors = new int[nonTerminals.length];
+
+        // the last label listing every non-terminal as an inheritor
+        int[] lastLabels = new int[nonTerminals.length];
+
+        Arrays.fill(lastLabels, -1);
+
+        for (int label = 0; label < nonTerminals.length; label++) {
+
+            int inheritorCount = 0;
+
+            for (InnerProduction production : grammar.productions.get(nonTerminals[label])) {
+
+                ArrayList<InnerSymbol> body = production.body;
+
+                trailer.clearRow(0);
+
+                boolean trailerNullable = true;
+
+                for (int i = body.size() - 1; i >= 0; i--) {
+
+                    InnerSymbol symbol = body.get(i);
+
+                    if (symbol.isTerminal()) {
+                        trailer.clearRow(0);
+                        trailer.set(0, symbol.id);
+                        trailerNullable = false;
+                        continue;
+                    }
+
+                    int nonTerminal = ordinal(symbol.id);
+
+                    if (nonTerminal == -1) {
+                        trailer.clearRow(0);
+                        trailerNullable = false;
+                        continue;
+                    }
+
+                    follow.orRow(nonTerminal, trailer, 0);
+
+                    if (trailerNullable && nonTerminal != label && lastLabels[nonTerminal] != label) {
+                        lastLabels[nonTerminal] = label;
+                        labelInheritors[inheritorCount++] = nonTerminal;
+                    }
+
+                    if (nullable[nonTerminal]) {
+                        trailer.orRow(0, first, nonTerminal);
+                    }
+                    else {
+                        trailer.copyRow(0, first, nonTerminal);
+                        trailerNullable = false;
+                    }
+
+                }
+
+            }
+
+            inheritors[label] = Arrays.copyOf(labelInheritors, inheritorCount);
+
+        }
+
+        return inheritors;
+
+    }
+
+    // conversion to the sets of the public api
+
+    HashMap<Integer, HashSet<Integer>> firstSetMap() {
+
+        HashMap<Integer, HashSet<Integer>> sets = new HashMap<>();
+
+        for (int ordinal = 0; ordinal < nonTerminals.length; ordinal++) {
+
+            HashSet<Integer> set = toSet(first, ordinal);
+
+            if (nullable[ordinal]) {
+                set.add(Grammar.FIRST_FOLLOW_SET_EPSILON);
+            }
+
+            sets.put(nonTerminals[ordinal], set);
+
+        }
+
+        return sets;
+
+    }
+
+    HashMap<Integer, HashSet<Integer>> followSetMap() {
+
+        assert follow != null;
+
+        HashMap<Integer, HashSet<Integer>> sets = new HashMap<>();
+
+        for (int ordinal = 0; ordinal < nonTerminals.length; ordinal++) {
+            sets.put(nonTerminals[ordinal], toSet(follow, ordinal));
+        }
+
+        return sets;
+
+    }
+
+    private static HashSet<Integer> toSet(BitMatrix matrix, int row) {
+
+        HashSet<Integer> set = new HashSet<>();
+
+        for (int column = matrix.nextSetColumn(row, 0); column != -1; column = matrix.nextSetColumn(row, column + 1)) {
+            set.add(column);
+        }
+
+        return set;
+
+    }
+
+    /**
+     * Queue of non-terminal ordinals containing every ordinal at most once, initially all of them.
+     */
+    private static class Worklist {
+
+        private final int[] queue;
+
+        private final boolean[] queued;
+
+        private int head = 0;
+
+        private int size;
+
+        Worklist(int nonTerminalCount) {
+
+            queue = new int[nonTerminalCount];
+
+            queued = new boolean[nonTerminalCount];
+
+            for (int ordinal = 0; ordinal < nonTerminalCount; ordinal++) {
+                queue[ordinal] = ordinal;
+                queued[ordinal] = true;
+            }
+
+            size = nonTerminalCount;
+
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(int ordinal) {
+
+            if (queued[ordinal]) {
+                return;
+            }
+
+            queued[ordinal] = true;
+
+            int tail = head + size;
+
+            queue[tail < queue.length ? tail : tail - queue.length] = ordinal;
+
+            size++;
+
+        }
+
+        int remove() {
+
+            int ordinal = queue[head];
+
+            queued[ordinal] = false;
+
+            if (++head == queue.length) {
+                head = 0;
+            }
+
+            size--;
+
+            return ordinal;
+
+        }
+
+    }
+
+}
@@ -3,6 +3,7 @@ package net.zerobone.knife.grammar;
 import net.zerobone.knife.grammar.verification.VerificationError;
 import net.zerobone.knife.grammar.table.ParsingTable;
 import net.zerobone.knife.utils.BijectiveMap;
+import net.zerobone.knife.utils.BitMatrix;
 
 import java.util.*;
 
@@ -30,6 +31,10 @@ public class Grammar {
 
     HashMap<Integer, ArrayList<InnerProduction>> productions = new HashMap<>();
 
+    private FirstFollowSets firstFollowSets = null;
+
+    // the sets above converted for the public api
+
     private HashMap<Integer, HashSet<Integer>> firstSets = null;
 
     private HashMap<Integer, HashSet<Integer>> followSets = null;
@@ -112,13 +117,16 @@ public class Grammar {
         if (symbolId == null) {
 
             // no such symbol
+            // the id is taken before converting the body, which can define new non-terminals itself
 
-            symbolsMap.put(symbol, nonTerminalCounter);
+            int nonTerminal = nonTerminalCounter;
 
-            createFirstProduction(nonTerminalCounter, convertProduction(production));
+            symbolsMap.put(symbol, nonTerminal);
 
             nonTerminalCounter--;
 
+            createFirstProduction(nonTerminal, convertProduction(production));
+
             return;
 
         }
@@ -179,299 +187,51 @@ public class Grammar {
 
     // first & follow
 
-    public HashMap<Integer, HashSet<Integer>> getFirstSets() {
-
-        if (firstSets == null) {
-            computeFirstSets();
-        }
-
-        return firstSets;
-
-    }
-
-    private void computeFirstSets() {
-
-        firstSets = new HashMap<>();
-
-        for (Map.Entry<Integer, ArrayList<InnerProduction>> pair : productions.entrySet()) {
-
-            int nonTerminal = pair.getKey();
-
-            firstSets.put(nonTerminal, initializeFirstSet(nonTerminal));
+    private FirstFollowSets analyzeFirstSets() {
 
+        if (firstFollowSets == null) {
+            firstFollowSets = new FirstFollowSets(this);
+            firstFollowSets.computeFirstSets();
         }
 
-        while (true) {
-            if (!updateFirstSets()) {
-                break;
-            }
-        }
+        return firstFollowSets;
 
     }
 
-    private HashSet<Integer> initializeFirstSet(int nonTerminal) {
-
-        HashSet<Integer> set = new HashSet<>();
-
-        for (InnerProduction production : productions.get(nonTerminal)) {
-
-            if (production.body.isEmpty()) {
+    private FirstFollowSets analyzeFollowSets() {
 
-                set.add(FIRST_FOLLOW_SET_EPSILON);
-
-                continue;
-
-            }
-
-            InnerSymbol firstSymbol = production.body.get(0);
+        // we need to compute first sets in order to compute follow sets
 
-            if (firstSymbol.isTerminal()) {
-                set.add(firstSymbol.id);
-            }
+        FirstFollowSets sets = analyzeFirstSets();
 
+        if (sets.follow == null) {
+            sets.computeFollowSets();
         }
 
-        return set;
+        return sets;
 
     }
 
-    private boolean updateFirstSets() {
-
-        boolean modified = false;
-
-        for (Map.Entry<Integer, ArrayList<InnerProduction>> pair : productions.entrySet()) {
-
-            int label = pair.getKey();
-
-            HashSet<Integer> labelFirstSet = firstSets.get(label);
-
-            ArrayList<InnerProduction> thisLabelProductions = pair.getValue();
-
-            for (InnerProduction production : thisLabelProductions) {
-
-                ArrayList<InnerSymbol> body = production.body;
-
-                if (body.isEmpty()) {
-                    continue;
-                }
-
-                for (InnerSymbol symbol : body) {
-
-                    if (symbol.isTerminal()) {
-                        if (labelFirstSet.add(symbol.id)) {
-                            modified = true;
-                        }
-                        break;
-                    }
-
-                    // non-terminal
-
-                    HashSet<Integer> currentFirstSet = firstSets.get(symbol.id);
-
-                    if (labelFirstSet.addAll(currentFirstSet)) {
-                        modified = true;
-                    }
-
-                    if (!currentFirstSet.contains(FIRST_FOLLOW_SET_EPSILON)) {
-                        // the current nonterminal doesn't contain epsilon, so we don't need to move on to the next terminal
-                        break;
-                    }
-
-                    // the current nonterminal is nullable, so it is possible that the next ones appear at the start
-                    // so we move on to the next symbol in the production
-
-                }
-
-            }
+    public HashMap<Integer, HashSet<Integer>> getFirstSets() {
 
+        if (firstSets == null) {
+            firstSets = analyzeFirstSets().firstSetMap();
         }
 
-        return modified;
+        return firstSets;
 
     }
 
-    // follow sets
-
     public HashMap<Integer, HashSet<Integer>> getFollowSets() {
 
-        if (followSets != null) {
-            return followSets; // already cached
-        }
-
-        // we need to compute first sets in order to compute follow sets
-
-        if (firstSets == null) {
-            computeFirstSets();
+        if (followSets == null) {
+            followSets = analyzeFollowSets().followSetMap();
         }
 
-        assert followSets == null;
-
-        computeFollowSets();
-
         return followSets;
 
     }
 
-    private void computeFollowSets() {
-
-        followSets = new HashMap<>();
-
-        for (Map.Entry<Integer, ArrayList<InnerProduction>> pair : productions.entrySet()) {
-
-            int nonTerminal = pair.getKey();
-
-            followSets.put(nonTerminal, initializeFollowSet(nonTerminal));
-
-        }
-
-        followSets
-            .get(START_SYMBOL_ID)
-            .add(FOLLOW_SET_EOF);
-
-        while (true) {
-            if (!updateFollowSets()) {
-                break;
-            }
-        }
-
-    }
-
-    private HashSet<Integer> initializeFollowSet(int nonTerminal) {
-
-        HashSet<Integer> set = new HashSet<>();
-
-        for (ArrayList<InnerProduction> currentProductions : productions.values()) {
-
-            for (InnerProduction production : currentProductions) {
-
-                for (int i = 0; i < production.body.size();) {
-
-                    InnerSymbol symbol = production.body.get(i);
-
-                    if (symbol.id != nonTerminal) {
-                        i++;
-                        continue;
-                    }
-
-                    assert !symbol.isTerminal();
-
-                    if (i == production.body.size() - 1) {
-                        // epsilon tokens are never present in follow sets
-                        break;
-                    }
-
-                    InnerSymbol nextSymbol = production.body.get(i + 1);
-
-                    if (nextSymbol.isTerminal()) {
-                        set.add(nextSymbol.id);
-                        i += 2;
-                    }
-                    else {
-                        i++;
-                    }
-
-                }
-
-            }
-
-        }
-
-        return set;
-
-    }
-
-    private boolean updateFollowSets() {
-
-        boolean modified = false;
-
-        for (Map.Entry<Integer, ArrayList<InnerProduction>> pair : productions.entrySet()) {
-
-            int productionLabel = pair.getKey();
-
-            ArrayList<InnerProduction> thisLabelProductions = pair.getValue();
-
-            for (InnerProduction production : thisLabelProductions) {
-
-                ArrayList<InnerSymbol> body = production.body;
-
-                for (int i = 0; i < body.size();) {
-
-                    InnerSymbol symbol = body.get(i);
-
-                    if (symbol.isTerminal()) {
-                        i++;
-                        continue;
-                    }
-
-                    // we found a production either of the form alpha A beta
-                    // or alpha A
-                    // examine the next symbol to find out
-
-                    if (i == body.size() - 1) {
-                        // beta = epsilon
-                        // so we are in the alpha A situation
-
-                        HashSet<Integer> followSet = followSets.get(symbol.id);
-
-                        // System.out.println("Adding followset for " + productionLabel + " -> " + production.toString(this));
-                        if (followSet.addAll(followSets.get(productionLabel))) {
-                            modified = true;
-                        }
-
-                        break;
-                    }
-
-                    // we are in the alpha A beta
-
-                    InnerSymbol nextSymbol = body.get(i + 1);
-
-                    if (nextSymbol.isTerminal()) {
-                        i += 2;
-                        continue;
-                    }
-
-                    // nextSymbol (aka beta) is a nonterminal
-
-                    HashSet<Integer> nextSymbolFirstSet = firstSets.get(nextSymbol.id);
-
-                    HashSet<Integer> followSet = followSets.get(symbol.id);
-
-                    int oldSize = followSet.size();
-
-                    // check if there is epsilon in the set
-                    if (nextSymbolFirstSet.contains(FIRST_FOLLOW_SET_EPSILON)) {
-
-                        // union with FIRST(beta) \ epsilon
-                        followSet.addAll(nextSymbolFirstSet);
-                        followSet.remove(FIRST_FOLLOW_SET_EPSILON);
-
-                        // union with FOLLOW(A)
-                        followSet.addAll(followSets.get(productionLabel));
-
-                    }
-                    else {
-
-                        followSet.addAll(nextSymbolFirstSet);
-                        // we don't need to remove epsilon as we already handled this case
-
-                    }
-
-                    if (followSet.size() > oldSize) {
-                        modified = true;
-                    }
-
-                    i++;
-
-                }
-
-            }
-
-        }
-
-        return modified;
-
-    }
-
     // end first & follow set methods
 
     public int getTerminalCount() {
@@ -484,9 +244,11 @@ public class Grammar {
 
     public ParsingTable constructParsingTable() {
 
-        final HashMap<Integer, HashSet<Integer>> firstSets = getFirstSets();
+        final FirstFollowSets sets = analyzeFollowSets();
+
+        final BitMatrix first = sets.first;
 
-        final HashMap<Integer, HashSet<Integer>> followSets = getFollowSets();
+        final BitMatrix follow = sets.follow;
 
         final ParsingTableBuilder tableBuilder = new ParsingTableBuilder(this);
 
@@ -494,6 +256,8 @@ public class Grammar {
 
             int productionLabel = pair.getKey();
 
+            int labelOrdinal = sets.ordinal(productionLabel);
+
             ArrayList<InnerProduction> thisLabelProductions = pair.getValue();
 
             for (InnerProduction production : thisLabelProductions) {
@@ -501,13 +265,11 @@ public class Grammar {
                 if (production.body.size() == 0) {
                     // epsilon-rule
 
-                    HashSet<Integer> followSet = followSets.get(productionLabel);
+                    for (int terminal = follow.nextSetColumn(labelOrdinal, 0); terminal != -1; terminal = follow.nextSetColumn(labelOrdinal, terminal + 1)) {
 
-                    for (int follow : followSet) {
+                        // System.out.println("[1]: Row: " + productionLabel + " Col: " + terminal + " Production: " + productionLabel + " -> ;");
 
-                        // System.out.println("[1]: Row: " + productionLabel + " Col: " + follow + " Production: " + productionLabel + " -> ;");
-
-                        tableBuilder.write(productionLabel, follow, production);
+                        tableBuilder.write(productionLabel, terminal, production);
 
                     }
 
@@ -526,19 +288,41 @@ public class Grammar {
 
                 }
 
-                // non-terminal
+                // non-terminal, the production is selected by the FIRST set of its body
+                // and, if the whole body is nullable, by the FOLLOW set of the label
 
-                HashSet<Integer> firstSet = firstSets.get(productionLabel);
+                boolean bodyNullable = true;
 
-                for (int first : firstSet) {
+                for (InnerSymbol bodySymbol : production.body) {
 
-                    if (first == FIRST_FOLLOW_SET_EPSILON) {
-                        continue;
+                    if (bodySymbol.isTerminal()) {
+                        tableBuilder.write(productionLabel, bodySymbol.id, production);
+                        bodyNullable = false;
+                        break;
                     }
 
-                    // System.out.println("[3]: Row: " + productionLabel + " Col: " + first + " Production: " + productionLabel + " -> " + production.toString());
+                    int symbolOrdinal = sets.ordinal(bodySymbol.id);
+
+                    for (int terminal = first.nextSetColumn(symbolOrdinal, 0); terminal != -1; terminal = first.nextSetColumn(symbolOrdinal, terminal + 1)) {
 
-                    tableBuilder.write(productionLabel, first, production);
+                        // System.out.println("[3]: Row: " + productionLabel + " Col: " + terminal + " Production: " + productionLabel + " -> " + production.toString());
+
+                        tableBuilder.write(productionLabel, terminal, production);
+
+                    }
+
+                    if (!sets.nullable[symbolOrdinal]) {
+                        bodyNullable = false;
+                        break;
+                    }
+
+                }
+
+                if (bodyNullable) {
+
+                    for (int terminal = follow.nextSetColumn(labelOrdinal, 0); terminal != -1; terminal = follow.nextSetColumn(labelOrdinal, terminal + 1)) {
+                        tableBuilder.write(productionLabel, terminal, production);
+                    }
 
                 }
 
@@ -550,9 +334,11 @@ public class Grammar {
 
         for (int nonTerminal : productions.keySet()) {
 
-            for (int follow : followSets.get(nonTerminal)) {
+            int ordinal = sets.ordinal(nonTerminal);
+
+            for (int terminal = follow.nextSetColumn(ordinal, 0); terminal != -1; terminal = follow.nextSetColumn(ordinal, terminal + 1)) {
 
-                tableBuilder.writeSynchronize(nonTerminal, follow);
+                tableBuilder.writeSynchronize(nonTerminal, terminal);
 
             }
 
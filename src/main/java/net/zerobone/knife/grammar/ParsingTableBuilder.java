@@ -119,6 +119,11 @@ class ParsingTableBuilder {
 
         if (lastWrittenProduction == production) {
 
+            if (table[nonTerminalIndex][terminalIndex] == productionCounter - 1) {
+                // the same production was already written to this cell
+                return;
+            }
+
             if (table[nonTerminalIndex][terminalIndex] != 0) {
                 conflicts.add(new ParsingTableConflict(nonTerminal, terminalOrEof, grammar));
             }
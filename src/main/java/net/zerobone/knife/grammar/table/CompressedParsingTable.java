@@ -0,0 +1,280 @@
+package net.zerobone.knife.grammar.table;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Row displacement encoding of the LL(1) table.
+ *
+ * Every row stores only the cells that differ from its default value.
+ * The cell (row, terminal) is located at base[row] + terminal in the
+ * entries array and belongs to the row if check contains the row index there.
+ */
+public class CompressedParsingTable {
+
+    public final int[] defaults;
+
+    public final int[] base;
+
+    public final int[] check;
+
+    public final int[] entries;
+
+    public CompressedParsingTable(int[] defaults, int[] base, int[] check, int[] entries) {
+        this.defaults = defaults;
+        this.base = base;
+        this.check = check;
+        this.entries = entries;
+    }
+
+    public int get(int row, int terminal) {
+
+        int index = base[row] + terminal;
+
+        return check[index] == row ? entries[index] : defaults[row];
+
+    }
+
+    public int size() {
+        return defaults.length + base.length + check.length + entries.length;
+    }
+
+    private static int mostFrequentValue(int[] row) {
+
+        HashMap<Integer, Integer> frequencies = new HashMap<>();
+
+        int mostFrequent = 0;
+        int maxFrequency = 0;
+
+        for (int value : row) {
+
+            int frequency = frequencies.merge(value, 1, Integer::sum);
+
+            if (frequency > maxFrequency) {
+                maxFrequency = frequency;
+                mostFrequent = value;
+            }
+
+        }
+
+        return mostFrequent;
+
+    }
+
+    /**
+     * Encodes the dense table, placing every row at the lowest displacement where its cells don't collide.
+     */
+    static CompressedParsingTable compress(int[][] table, int terminalCount) {
+
+        final int nonTerminalCount = table.length;
+
+        final int[] defaults = new int[nonTerminalCount];
+
+        final int[][] columns = new int[nonTerminalCount][];
+
+        Integer[] order = new Integer[nonTerminalCount];
+
+        for (int y = 0; y < nonTerminalCount; y++) {
+
+            defaults[y] = mostFrequentValue(table[y]);
+
+            int count = 0;
+
+            for (int x = 0; x < terminalCount; x++) {
+                if (table[y][x] != defaults[y]) {
+                    count++;
+                }
+            }
+
+            columns[y] = new int[count];
+
+            count = 0;
+
+            for (int x = 0; x < terminalCount; x++) {
+                if (table[y][x] != defaults[y]) {
+                    columns[y][count++] = x;
+                }
+            }
+
+            order[y] = y;
+
+        }
+
+        // place the densest rows first, they are the hardest to fit
+
+        Arrays.sort(order, (a, b) -> columns[b].length - columns[a].length);
+
+        final int[] base = new int[nonTerminalCount];
+
+        Slots slots = new Slots(Math.max(terminalCount, 16));
+
+        int maxBase = 0;
+
+        for (int y : order) {
+
+            int[] rowColumns = columns[y];
+
+            int displacement = rowColumns.length == 0 ? 0 : slots.fit(rowColumns);
+
+            for (int x : rowColumns) {
+                slots.occupy(displacement + x, y);
+            }
+
+            base[y] = displacement;
+
+            if (displacement > maxBase) {
+                maxBase = displacement;
+            }
+
+        }
+
+        // every lookup base[y] + x with x < terminalCount has to stay in bounds
+
+        final int[] check = slots.toCheck(maxBase + terminalCount);
+
+        final int[] entries = new int[check.length];
+
+        for (int y = 0; y < nonTerminalCount; y++) {
+            for (int x : columns[y]) {
+                entries[base[y] + x] = table[y][x];
+            }
+        }
+
+        CompressedParsingTable compressedTable = new CompressedParsingTable(defaults, base, check, entries);
+
+        assert compressedTable.decodesTo(table);
+
+        return compressedTable;
+
+    }
+
+    private boolean decodesTo(int[][] table) {
+
+        for (int y = 0; y < table.length; y++) {
+            for (int x = 0; x < table[y].length; x++) {
+                if (get(y, x) != table[y][x]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * The check array under construction with a bitset of the occupied slots,
+     * so that a row is tested at 64 displacements at once.
+     */
+    private static final class Slots {
+
+        private int[] check;
+
+        private long[] occupied;
+
+        // every slot before it is occupied
+        private int firstFree = 0;
+
+        Slots(int capacity) {
+            check = new int[capacity];
+            occupied = new long[(capacity + 63) >>> 6];
+            Arrays.fill(check, -1);
+        }
+
+        // the occupation of the 64 slots starting at the index, as bits from the lowest one
+        private long window(int index) {
+
+            int word = index >>> 6;
+
+            int shift = index & 63;
+
+            long low = word < occupied.length ? occupied[word] : 0;
+
+            if (shift == 0) {
+                return low;
+            }
+
+            long high = word + 1 < occupied.length ? occupied[word + 1] : 0;
+
+            return (low >>> shift) | (high << (64 - shift));
+
+        }
+
+        /**
+         * @return the lowest displacement at which all the columns, in ascending order, are free
+         */
+        int fit(int[] columns) {
+
+            // the first column cannot go before the first free slot
+
+            int displacement = Math.max(0, firstFree - columns[0]);
+
+            while (true) {
+
+                // bit i is set if displacement + i collides
+
+                long collisions = 0;
+
+                for (int x : columns) {
+
+                    collisions |= window(displacement + x);
+
+                    if (collisions == -1) {
+                        break;
+                    }
+
+                }
+
+                if (collisions != -1) {
+                    return displacement + Long.numberOfTrailingZeros(~collisions);
+                }
+
+                displacement += 64;
+
+            }
+
+        }
+
+        void occupy(int index, int row) {
+
+            if (index >= check.length) {
+
+                int oldLength = check.length;
+
+                int length = Math.max(oldLength << 1, index + 1);
+
+                check = Arrays.copyOf(check, length);
+
+                Arrays.fill(check, oldLength, length, -1);
+
+                occupied = Arrays.copyOf(occupied, (length + 63) >>> 6);
+
+            }
+
+            assert check[index] == -1;
+
+            check[index] = row;
+
+            occupied[index >>> 6] |= 1L << index;
+
+            while (firstFree < check.length && check[firstFree] != -1) {
+                firstFree++;
+            }
+
+        }
+
+        int[] toCheck(int length) {
+
+            int[] result = Arrays.copyOf(check, length);
+
+            if (length > check.length) {
+                Arrays.fill(result, check.length, length, -1);
+            }
+
+            return result;
+
+        }
+
+    }
+
+}
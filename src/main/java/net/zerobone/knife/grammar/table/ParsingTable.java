@@ -20,6 +20,9 @@ public class ParsingTable {
 
     public final ParsingTableConflict[] conflicts;
 
+    // only built for the generators that need it
+    private CompressedParsingTable compressedTable = null;
+
     public ParsingTable(BijectiveMap<String, Integer> mapping, int nonTerminalCount, int terminalCount, ParsingTableProduction[] productionActions, int[][] table, String startSymbol, ParsingTableConflict[] conflicts) {
         this.mapping = mapping;
         this.nonTerminalCount = nonTerminalCount;
@@ -30,6 +33,16 @@ public class ParsingTable {
         this.conflicts = conflicts;
     }
 
+    public CompressedParsingTable getCompressedTable() {
+
+        if (compressedTable == null) {
+            compressedTable = CompressedParsingTable.compress(table, terminalCount);
+        }
+
+        return compressedTable;
+
+    }
+
     public String idToSymbol(int id) {
         return mapping.mapValue(id);
     }
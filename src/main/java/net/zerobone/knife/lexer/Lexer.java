@@ -2,13 +2,15 @@ package net.zerobone.knife.lexer;
 
 import net.zerobone.knife.lexer.tokens.CodeToken;
 import net.zerobone.knife.lexer.tokens.IdToken;
+import net.zerobone.knife.lexer.tokens.RegexToken;
 import net.zerobone.knife.lexer.tokens.Token;
 import net.zerobone.knife.parser.Parser;
+import net.zerobone.knife.parser.TokenSource;
 
 import java.io.IOException;
 import java.io.InputStream;
 
-public class Lexer {
+public class Lexer implements TokenSource<IOException> {
 
     private static final int EOF = -1;
 
@@ -20,6 +22,8 @@ public class Lexer {
 
     private boolean peeking = false;
 
+    private Token token = null;
+
     public Lexer(InputStream stream) {
         this.stream = stream;
     }
@@ -62,6 +66,17 @@ public class Lexer {
         return new Token(line, type);
     }
 
+    @Override
+    public int next() throws IOException {
+        token = lex();
+        return token.type;
+    }
+
+    @Override
+    public Object token() {
+        return token;
+    }
+
     public Token lex() throws IOException, LexerException {
 
         for (;;) {
@@ -167,12 +182,55 @@ public class Lexer {
                 if (id.equals("type")) {
                     return constructPrimitiveToken(Parser.T_TYPE);
                 }
+                else if (id.equals("token")) {
+                    return constructPrimitiveToken(Parser.T_TOKEN);
+                }
+                else if (id.equals("skip")) {
+                    return constructPrimitiveToken(Parser.T_SKIP);
+                }
                 else {
                     throw new LexerException("Unknown directive '" + id + "'", line);
                 }
 
             }
 
+            case '"': {
+                // regular expression, escapes are only skipped here
+
+                StringBuilder sb = new StringBuilder();
+
+                for (;;) {
+
+                    readChar();
+
+                    if (current == EOF || current == '\n') {
+                        break;
+                    }
+
+                    if (current == '"') {
+                        return new RegexToken(line, sb.toString());
+                    }
+
+                    sb.append((char)current);
+
+                    if (current == '\\') {
+
+                        readChar();
+
+                        if (current == EOF || current == '\n') {
+                            break;
+                        }
+
+                        sb.append((char)current);
+
+                    }
+
+                }
+
+                throw new LexerException("Unterminated regular expression.", line);
+
+            }
+
             default:
                 break;
 
@@ -1,6 +1,8 @@
 package net.zerobone.knife.lexer;
 
-public class LexerException extends Exception {
+import java.io.IOException;
+
+public class LexerException extends IOException {
 
     public final int line;
 
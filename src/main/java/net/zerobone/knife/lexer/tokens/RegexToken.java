@@ -0,0 +1,15 @@
+package net.zerobone.knife.lexer.tokens;
+
+import net.zerobone.knife.parser.Parser;
+
+public class RegexToken extends Token {
+
+    // escape sequences are kept, they are interpreted by the regex parser
+    public final String regex;
+
+    public RegexToken(int line, String regex) {
+        super(line, Parser.T_REGEX);
+        this.regex = regex;
+    }
+
+}
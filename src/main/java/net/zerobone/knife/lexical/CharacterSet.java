@@ -0,0 +1,125 @@
+package net.zerobone.knife.lexical;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of UTF-16 code units stored as sorted, disjoint and non-adjacent ranges.
+ */
+public class CharacterSet {
+
+    public static final int MAX_CHAR = 0xffff;
+
+    public static final CharacterSet ANY = new CharacterSet(new int[] {0, MAX_CHAR});
+
+    // start and inclusive end of every range
+    final int[] ranges;
+
+    private CharacterSet(int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    public static CharacterSet of(int c) {
+        return new CharacterSet(new int[] {c, c});
+    }
+
+    public static CharacterSet range(int first, int last) {
+        assert first <= last;
+        return new CharacterSet(new int[] {first, last});
+    }
+
+    public CharacterSet union(CharacterSet other) {
+
+        int[] merged = new int[ranges.length + other.ranges.length];
+
+        System.arraycopy(ranges, 0, merged, 0, ranges.length);
+        System.arraycopy(other.ranges, 0, merged, ranges.length, other.ranges.length);
+
+        // sort the ranges by their start
+
+        long[] packed = new long[merged.length / 2];
+
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = ((long)merged[2 * i] << 32) | merged[2 * i + 1];
+        }
+
+        Arrays.sort(packed);
+
+        int[] result = new int[merged.length];
+        int length = 0;
+
+        for (long range : packed) {
+
+            int first = (int)(range >>> 32);
+            int last = (int)range;
+
+            if (length != 0 && first <= result[length - 1] + 1) {
+                result[length - 1] = Math.max(result[length - 1], last);
+                continue;
+            }
+
+            result[length++] = first;
+            result[length++] = last;
+
+        }
+
+        return new CharacterSet(Arrays.copyOf(result, length));
+
+    }
+
+    public CharacterSet complement() {
+
+        int[] result = new int[ranges.length + 2];
+        int length = 0;
+
+        int next = 0;
+
+        for (int i = 0; i < ranges.length; i += 2) {
+
+            if (ranges[i] > next) {
+                result[length++] = next;
+                result[length++] = ranges[i] - 1;
+            }
+
+            next = ranges[i + 1] + 1;
+
+        }
+
+        if (next <= MAX_CHAR) {
+            result[length++] = next;
+            result[length++] = MAX_CHAR;
+        }
+
+        return new CharacterSet(Arrays.copyOf(result, length));
+
+    }
+
+    /**
+     * @return the only character of the set or -1 if the set has a different size
+     */
+    public int singleCharacter() {
+        return ranges.length == 2 && ranges[0] == ranges[1] ? ranges[0] : -1;
+    }
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    public boolean contains(int c) {
+
+        for (int i = 0; i < ranges.length; i += 2) {
+
+            if (c < ranges[i]) {
+                return false;
+            }
+
+            if (c <= ranges[i + 1]) {
+                return true;
+            }
+
+        }
+
+        return false;
+
+    }
+
+}
@@ -0,0 +1,404 @@
+package net.zerobone.knife.lexical;
+
+import net.zerobone.knife.lexical.regex.RegexParser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Minimal deterministic automaton recognizing the token definitions of a grammar.
+ * Characters are mapped to equivalence classes first, so that the transition table
+ * has one column per class instead of one per character.
+ * If several definitions match the longest input, the one declared first wins.
+ */
+public class LexerAutomaton {
+
+    public static final int NO_RULE = -1;
+
+    public static final int NO_TRANSITION = -1;
+
+    public final TokenDefinition[] rules;
+
+    // the character ranges [intervalStarts[i], intervalStarts[i + 1]) belong to the class intervalClasses[i]
+    public final int[] intervalStarts;
+
+    public final int[] intervalClasses;
+
+    // class 0 contains the characters no definition can start or continue with
+    public final int classCount;
+
+    public final int stateCount;
+
+    // next state for state * classCount + class, the start state is 0
+    public final int[] transitions;
+
+    // index of the rule accepted in every state or NO_RULE
+    public final int[] accept;
+
+    private LexerAutomaton(TokenDefinition[] rules, int[] intervalStarts, int[] intervalClasses, int classCount, int stateCount, int[] transitions, int[] accept) {
+        this.rules = rules;
+        this.intervalStarts = intervalStarts;
+        this.intervalClasses = intervalClasses;
+        this.classCount = classCount;
+        this.stateCount = stateCount;
+        this.transitions = transitions;
+        this.accept = accept;
+    }
+
+    public static LexerAutomaton construct(List<TokenDefinition> definitions) throws RegexException {
+
+        TokenDefinition[] rules = definitions.toArray(new TokenDefinition[0]);
+
+        Nfa nfa = new Nfa();
+
+        int nfaStart = nfa.addState();
+
+        for (int rule = 0; rule < rules.length; rule++) {
+
+            int ruleStart = nfa.addState();
+
+            nfa.addEpsilon(nfaStart, ruleStart);
+
+            try {
+                nfa.setAccepting(RegexParser.parse(rules[rule].regex).compile(nfa, ruleStart), rule);
+            }
+            catch (RegexException e) {
+                throw new RegexException(rules[rule].describe() + ": " + e.getMessage());
+            }
+
+        }
+
+        // partition the characters into classes
+
+        HashMap<CharacterSet, Integer> setIndexes = new HashMap<>();
+        ArrayList<CharacterSet> sets = new ArrayList<>();
+
+        TreeSet<Integer> boundaries = new TreeSet<>();
+
+        boundaries.add(0);
+        boundaries.add(CharacterSet.MAX_CHAR + 1);
+
+        for (Nfa.State state : nfa.states) {
+
+            for (CharacterSet label : state.labels) {
+
+                if (setIndexes.containsKey(label)) {
+                    continue;
+                }
+
+                setIndexes.put(label, sets.size());
+                sets.add(label);
+
+                for (int i = 0; i < label.ranges.length; i += 2) {
+                    boundaries.add(label.ranges[i]);
+                    boundaries.add(label.ranges[i + 1] + 1);
+                }
+
+            }
+
+        }
+
+        HashMap<BitSet, Integer> classes = new HashMap<>();
+
+        classes.put(new BitSet(), 0);
+
+        BitSet[] setClasses = new BitSet[sets.size()];
+
+        for (int i = 0; i < setClasses.length; i++) {
+            setClasses[i] = new BitSet();
+        }
+
+        int[] intervalStarts = new int[boundaries.size() - 1];
+        int[] intervalClasses = new int[boundaries.size() - 1];
+        int intervalCount = 0;
+
+        for (int start : boundaries) {
+
+            if (start > CharacterSet.MAX_CHAR) {
+                break;
+            }
+
+            BitSet signature = new BitSet();
+
+            for (int i = 0; i < setClasses.length; i++) {
+                if (sets.get(i).contains(start)) {
+                    signature.set(i);
+                }
+            }
+
+            Integer characterClass = classes.get(signature);
+
+            if (characterClass == null) {
+                characterClass = classes.size();
+                classes.put(signature, characterClass);
+            }
+
+            for (int i = signature.nextSetBit(0); i >= 0; i = signature.nextSetBit(i + 1)) {
+                setClasses[i].set(characterClass);
+            }
+
+            if (intervalCount != 0 && intervalClasses[intervalCount - 1] == characterClass) {
+                // adjacent intervals of the same class are merged
+                continue;
+            }
+
+            intervalStarts[intervalCount] = start;
+            intervalClasses[intervalCount] = characterClass;
+            intervalCount++;
+
+        }
+
+        int classCount = classes.size();
+
+        // subset construction
+
+        ArrayList<BitSet> subsets = new ArrayList<>();
+        HashMap<BitSet, Integer> subsetIndexes = new HashMap<>();
+        ArrayList<int[]> subsetTransitions = new ArrayList<>();
+
+        {
+            BitSet start = new BitSet();
+            start.set(nfaStart);
+            closure(nfa, start);
+
+            subsets.add(start);
+            subsetIndexes.put(start, 0);
+        }
+
+        for (int current = 0; current < subsets.size(); current++) {
+
+            BitSet[] moves = new BitSet[classCount];
+
+            BitSet subset = subsets.get(current);
+
+            for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+
+                Nfa.State state = nfa.states.get(s);
+
+                for (int i = 0; i < state.labels.size(); i++) {
+
+                    BitSet labelClasses = setClasses[setIndexes.get(state.labels.get(i))];
+
+                    for (int c = labelClasses.nextSetBit(0); c >= 0; c = labelClasses.nextSetBit(c + 1)) {
+
+                        if (moves[c] == null) {
+                            moves[c] = new BitSet();
+                        }
+
+                        moves[c].set(state.targets.get(i));
+
+                    }
+
+                }
+
+            }
+
+            int[] row = new int[classCount];
+
+            for (int c = 0; c < classCount; c++) {
+
+                if (moves[c] == null) {
+                    row[c] = NO_TRANSITION;
+                    continue;
+                }
+
+                closure(nfa, moves[c]);
+
+                Integer target = subsetIndexes.get(moves[c]);
+
+                if (target == null) {
+                    target = subsets.size();
+                    subsets.add(moves[c]);
+                    subsetIndexes.put(moves[c], target);
+                }
+
+                row[c] = target;
+
+            }
+
+            subsetTransitions.add(row);
+
+        }
+
+        int[] subsetAccept = new int[subsets.size()];
+
+        for (int i = 0; i < subsetAccept.length; i++) {
+
+            subsetAccept[i] = NO_RULE;
+
+            BitSet subset = subsets.get(i);
+
+            for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+
+                int rule = nfa.states.get(s).rule;
+
+                if (rule != NO_RULE && (subsetAccept[i] == NO_RULE || rule < subsetAccept[i])) {
+                    subsetAccept[i] = rule;
+                }
+
+            }
+
+        }
+
+        if (subsetAccept[0] != NO_RULE) {
+            throw new RegexException(rules[subsetAccept[0]].describe() + " matches the empty string.");
+        }
+
+        return minimize(
+            rules,
+            Arrays.copyOf(intervalStarts, intervalCount),
+            Arrays.copyOf(intervalClasses, intervalCount),
+            classCount,
+            subsetTransitions,
+            subsetAccept
+        );
+
+    }
+
+    private static void closure(Nfa nfa, BitSet states) {
+
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            worklist.push(s);
+        }
+
+        while (!worklist.isEmpty()) {
+
+            for (int target : nfa.states.get(worklist.pop()).epsilon) {
+
+                if (!states.get(target)) {
+                    states.set(target);
+                    worklist.push(target);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Merges equivalent states by refining the partition by accepted rule until it is stable.
+     */
+    private static LexerAutomaton minimize(TokenDefinition[] rules, int[] intervalStarts, int[] intervalClasses, int classCount, ArrayList<int[]> transitions, int[] accept) {
+
+        int n = accept.length;
+
+        int[] blocks = new int[n];
+        int blockCount;
+
+        {
+            HashMap<Integer, Integer> ruleBlocks = new HashMap<>();
+
+            for (int s = 0; s < n; s++) {
+
+                Integer block = ruleBlocks.get(accept[s]);
+
+                if (block == null) {
+                    block = ruleBlocks.size();
+                    ruleBlocks.put(accept[s], block);
+                }
+
+                blocks[s] = block;
+
+            }
+
+            blockCount = ruleBlocks.size();
+        }
+
+        for (;;) {
+
+            HashMap<List<Integer>, Integer> signatures = new HashMap<>();
+
+            int[] refined = new int[n];
+
+            for (int s = 0; s < n; s++) {
+
+                ArrayList<Integer> signature = new ArrayList<>(classCount + 1);
+
+                signature.add(blocks[s]);
+
+                for (int target : transitions.get(s)) {
+                    signature.add(target == NO_TRANSITION ? NO_TRANSITION : blocks[target]);
+                }
+
+                Integer block = signatures.get(signature);
+
+                if (block == null) {
+                    block = signatures.size();
+                    signatures.put(signature, block);
+                }
+
+                refined[s] = block;
+
+            }
+
+            blocks = refined;
+
+            if (signatures.size() == blockCount) {
+                break;
+            }
+
+            blockCount = signatures.size();
+
+        }
+
+        // number the blocks in breadth-first order, so that the start state is 0
+
+        int[] numbers = new int[blockCount];
+        Arrays.fill(numbers, -1);
+
+        int[] representatives = new int[blockCount];
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        numbers[blocks[0]] = 0;
+        representatives[0] = 0;
+        queue.add(0);
+
+        int stateCount = 1;
+
+        while (!queue.isEmpty()) {
+
+            for (int target : transitions.get(queue.poll())) {
+
+                if (target == NO_TRANSITION || numbers[blocks[target]] != -1) {
+                    continue;
+                }
+
+                numbers[blocks[target]] = stateCount;
+                representatives[stateCount] = target;
+                stateCount++;
+
+                queue.add(target);
+
+            }
+
+        }
+
+        int[] minimalTransitions = new int[stateCount * classCount];
+        int[] minimalAccept = new int[stateCount];
+
+        for (int state = 0; state < stateCount; state++) {
+
+            int[] row = transitions.get(representatives[state]);
+
+            for (int c = 0; c < classCount; c++) {
+                minimalTransitions[state * classCount + c] = row[c] == NO_TRANSITION ? NO_TRANSITION : numbers[blocks[row[c]]];
+            }
+
+            minimalAccept[state] = accept[representatives[state]];
+
+        }
+
+        return new LexerAutomaton(rules, intervalStarts, intervalClasses, classCount, stateCount, minimalTransitions, minimalAccept);
+
+    }
+
+}
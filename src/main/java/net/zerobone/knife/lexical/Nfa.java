@@ -0,0 +1,49 @@
+package net.zerobone.knife.lexical;
+
+import java.util.ArrayList;
+
+/**
+ * Thompson automaton with epsilon transitions and transitions on character sets.
+ */
+public class Nfa {
+
+    static final class State {
+
+        final ArrayList<Integer> epsilon = new ArrayList<>();
+
+        final ArrayList<CharacterSet> labels = new ArrayList<>();
+
+        final ArrayList<Integer> targets = new ArrayList<>();
+
+        // index of the rule accepted in this state, -1 if it is not final
+        int rule = -1;
+
+    }
+
+    final ArrayList<State> states = new ArrayList<>();
+
+    public Nfa() {}
+
+    public int addState() {
+        states.add(new State());
+        return states.size() - 1;
+    }
+
+    public void addEpsilon(int from, int to) {
+        states.get(from).epsilon.add(to);
+    }
+
+    public void addTransition(int from, CharacterSet label, int to) {
+
+        State state = states.get(from);
+
+        state.labels.add(label);
+        state.targets.add(to);
+
+    }
+
+    void setAccepting(int state, int rule) {
+        states.get(state).rule = rule;
+    }
+
+}
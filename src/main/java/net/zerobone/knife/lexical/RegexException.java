@@ -0,0 +1,9 @@
+package net.zerobone.knife.lexical;
+
+public class RegexException extends Exception {
+
+    public RegexException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,19 @@
+package net.zerobone.knife.lexical;
+
+public class TokenDefinition {
+
+    // terminal produced by the pattern, null if the matched input is skipped
+    public final String terminal;
+
+    public final String regex;
+
+    public TokenDefinition(String terminal, String regex) {
+        this.terminal = terminal;
+        this.regex = regex;
+    }
+
+    String describe() {
+        return terminal == null ? "%skip \"" + regex + "\"" : "Token '" + terminal + "'";
+    }
+
+}
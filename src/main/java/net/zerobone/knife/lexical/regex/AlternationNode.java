@@ -0,0 +1,33 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.Nfa;
+
+import java.util.ArrayList;
+
+public class AlternationNode extends RegexNode {
+
+    public final ArrayList<RegexNode> alternatives;
+
+    public AlternationNode(ArrayList<RegexNode> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    @Override
+    public int compile(Nfa nfa, int start) {
+
+        int end = nfa.addState();
+
+        for (RegexNode alternative : alternatives) {
+
+            int alternativeStart = nfa.addState();
+
+            nfa.addEpsilon(start, alternativeStart);
+            nfa.addEpsilon(alternative.compile(nfa, alternativeStart), end);
+
+        }
+
+        return end;
+
+    }
+
+}
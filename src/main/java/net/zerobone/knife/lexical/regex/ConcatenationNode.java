@@ -0,0 +1,28 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.Nfa;
+
+import java.util.ArrayList;
+
+public class ConcatenationNode extends RegexNode {
+
+    public final ArrayList<RegexNode> elements;
+
+    public ConcatenationNode(ArrayList<RegexNode> elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public int compile(Nfa nfa, int start) {
+
+        int state = start;
+
+        for (RegexNode element : elements) {
+            state = element.compile(nfa, state);
+        }
+
+        return state;
+
+    }
+
+}
@@ -0,0 +1,14 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.Nfa;
+
+public abstract class RegexNode {
+
+    /**
+     * Adds the states recognizing this expression to the automaton.
+     * @param start state the expression begins in
+     * @return state reached after the expression has been matched
+     */
+    public abstract int compile(Nfa nfa, int start);
+
+}
@@ -0,0 +1,362 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.CharacterSet;
+import net.zerobone.knife.lexical.RegexException;
+
+import java.util.ArrayList;
+
+/**
+ * Recursive descent parser of the regular expressions used in %token and %skip.
+ * Supports alternation, grouping, the *, + and ? operators, bounded repetition {n}, {n,} and {n,m},
+ * character classes with ranges and negation, the dot and the escapes \d \w \s \D \W \S \n \r \t \f \\uXXXX.
+ */
+public class RegexParser {
+
+    private static final CharacterSet DIGIT = CharacterSet.range('0', '9');
+
+    private static final CharacterSet WORD = CharacterSet.range('a', 'z')
+        .union(CharacterSet.range('A', 'Z'))
+        .union(DIGIT)
+        .union(CharacterSet.of('_'));
+
+    private static final CharacterSet SPACE = CharacterSet.of(' ')
+        .union(CharacterSet.range('\t', '\r'));
+
+    // like in java.util.regex the dot doesn't match line breaks
+    private static final CharacterSet DOT = CharacterSet.of('\n').complement();
+
+    private final String pattern;
+
+    private int position = 0;
+
+    private RegexParser(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public static RegexNode parse(String pattern) throws RegexException {
+
+        RegexParser parser = new RegexParser(pattern);
+
+        RegexNode node = parser.parseAlternation();
+
+        if (parser.position != pattern.length()) {
+            // only an unmatched closing parenthesis stops the alternation early
+            throw parser.error("Unmatched ')'");
+        }
+
+        return node;
+
+    }
+
+    private RegexException error(String message) {
+        return new RegexException(message + " at index " + position + " of \"" + pattern + "\".");
+    }
+
+    private boolean atEnd() {
+        return position == pattern.length();
+    }
+
+    private char peek() {
+        return pattern.charAt(position);
+    }
+
+    private RegexNode parseAlternation() throws RegexException {
+
+        ArrayList<RegexNode> alternatives = new ArrayList<>();
+
+        alternatives.add(parseConcatenation());
+
+        while (!atEnd() && peek() == '|') {
+            position++;
+            alternatives.add(parseConcatenation());
+        }
+
+        return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+
+    }
+
+    private RegexNode parseConcatenation() throws RegexException {
+
+        ArrayList<RegexNode> elements = new ArrayList<>();
+
+        while (!atEnd() && peek() != '|' && peek() != ')') {
+            elements.add(parseRepetition());
+        }
+
+        return elements.size() == 1 ? elements.get(0) : new ConcatenationNode(elements);
+
+    }
+
+    private RegexNode parseRepetition() throws RegexException {
+
+        RegexNode node = parseAtom();
+
+        while (!atEnd()) {
+
+            switch (peek()) {
+
+                case '*':
+                    position++;
+                    node = new RepetitionNode(node, 0, RepetitionNode.UNBOUNDED);
+                    break;
+
+                case '+':
+                    position++;
+                    node = new RepetitionNode(node, 1, RepetitionNode.UNBOUNDED);
+                    break;
+
+                case '?':
+                    position++;
+                    node = new RepetitionNode(node, 0, 1);
+                    break;
+
+                case '{': {
+
+                    position++;
+
+                    int min = parseNumber();
+                    int max = min;
+
+                    if (!atEnd() && peek() == ',') {
+
+                        position++;
+
+                        max = !atEnd() && peek() == '}' ? RepetitionNode.UNBOUNDED : parseNumber();
+
+                    }
+
+                    if (atEnd() || peek() != '}') {
+                        throw error("Expected '}'");
+                    }
+
+                    position++;
+
+                    if (max != RepetitionNode.UNBOUNDED && max < min) {
+                        throw error("Invalid repetition bounds");
+                    }
+
+                    node = new RepetitionNode(node, min, max);
+
+                    break;
+
+                }
+
+                default:
+                    return node;
+
+            }
+
+        }
+
+        return node;
+
+    }
+
+    private int parseNumber() throws RegexException {
+
+        int start = position;
+
+        while (!atEnd() && peek() >= '0' && peek() <= '9') {
+            position++;
+        }
+
+        if (start == position || position - start > 4) {
+            throw error("Expected a repetition count");
+        }
+
+        return Integer.parseInt(pattern.substring(start, position));
+
+    }
+
+    private RegexNode parseAtom() throws RegexException {
+
+        char c = peek();
+
+        position++;
+
+        switch (c) {
+
+            case '(': {
+
+                RegexNode node = parseAlternation();
+
+                if (atEnd() || peek() != ')') {
+                    throw error("Expected ')'");
+                }
+
+                position++;
+
+                return node;
+
+            }
+
+            case '[':
+                return new SetNode(parseClass());
+
+            case '.':
+                return new SetNode(DOT);
+
+            case '\\':
+                return new SetNode(parseEscape());
+
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                position--;
+                throw error("Nothing to repeat");
+
+            default:
+                return new SetNode(CharacterSet.of(c));
+
+        }
+
+    }
+
+    private CharacterSet parseClass() throws RegexException {
+
+        boolean negated = false;
+
+        if (!atEnd() && peek() == '^') {
+            negated = true;
+            position++;
+        }
+
+        CharacterSet set = null;
+
+        // a closing bracket right after the opening one is a literal
+
+        boolean leading = true;
+
+        for (;;) {
+
+            if (atEnd()) {
+                throw error("Unterminated character class");
+            }
+
+            char c = peek();
+
+            position++;
+
+            if (c == ']' && !leading) {
+                break;
+            }
+
+            leading = false;
+
+            CharacterSet element = c == '\\' ? parseEscape() : CharacterSet.of(c);
+
+            int first = element.singleCharacter();
+
+            if (first != -1 && !atEnd() && peek() == '-' && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+
+                position++;
+
+                int last = pattern.charAt(position);
+
+                position++;
+
+                if (last == '\\') {
+
+                    last = parseEscape().singleCharacter();
+
+                    if (last == -1) {
+                        throw error("Invalid range end");
+                    }
+
+                }
+
+                if (last < first) {
+                    throw error("Invalid range");
+                }
+
+                element = CharacterSet.range(first, last);
+
+            }
+
+            set = set == null ? element : set.union(element);
+
+        }
+
+        return negated ? set.complement() : set;
+
+    }
+
+    private CharacterSet parseEscape() throws RegexException {
+
+        if (atEnd()) {
+            throw error("Incomplete escape sequence");
+        }
+
+        char c = peek();
+
+        position++;
+
+        switch (c) {
+
+            case 'd':
+                return DIGIT;
+
+            case 'D':
+                return DIGIT.complement();
+
+            case 'w':
+                return WORD;
+
+            case 'W':
+                return WORD.complement();
+
+            case 's':
+                return SPACE;
+
+            case 'S':
+                return SPACE.complement();
+
+            case 'n':
+                return CharacterSet.of('\n');
+
+            case 'r':
+                return CharacterSet.of('\r');
+
+            case 't':
+                return CharacterSet.of('\t');
+
+            case 'f':
+                return CharacterSet.of('\f');
+
+            case 'u': {
+
+                int code = 0;
+
+                for (int i = 0; i < 4; i++) {
+
+                    int digit = atEnd() ? -1 : Character.digit(peek(), 16);
+
+                    if (digit == -1) {
+                        throw error("Invalid unicode escape");
+                    }
+
+                    code = code * 16 + digit;
+
+                    position++;
+
+                }
+
+                return CharacterSet.of(code);
+
+            }
+
+            default:
+
+                if (Character.isLetterOrDigit(c)) {
+                    position--;
+                    throw error("Unknown escape sequence '\\" + c + "'");
+                }
+
+                return CharacterSet.of(c);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.Nfa;
+
+public class RepetitionNode extends RegexNode {
+
+    public static final int UNBOUNDED = -1;
+
+    public final RegexNode body;
+
+    public final int min;
+
+    public final int max;
+
+    public RepetitionNode(RegexNode body, int min, int max) {
+        this.body = body;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public int compile(Nfa nfa, int start) {
+
+        int state = start;
+
+        // mandatory copies of the body
+
+        for (int i = 0; i < min; i++) {
+            state = body.compile(nfa, state);
+        }
+
+        if (max == UNBOUNDED) {
+
+            int loop = nfa.addState();
+
+            nfa.addEpsilon(state, loop);
+            nfa.addEpsilon(body.compile(nfa, loop), loop);
+
+            return loop;
+
+        }
+
+        // optional copies, each of them can be skipped to the end
+
+        int end = nfa.addState();
+
+        for (int i = min; i < max; i++) {
+            nfa.addEpsilon(state, end);
+            state = body.compile(nfa, state);
+        }
+
+        nfa.addEpsilon(state, end);
+
+        return end;
+
+    }
+
+}
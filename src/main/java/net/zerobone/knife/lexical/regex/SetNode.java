@@ -0,0 +1,25 @@
+package net.zerobone.knife.lexical.regex;
+
+import net.zerobone.knife.lexical.CharacterSet;
+import net.zerobone.knife.lexical.Nfa;
+
+public class SetNode extends RegexNode {
+
+    public final CharacterSet set;
+
+    public SetNode(CharacterSet set) {
+        this.set = set;
+    }
+
+    @Override
+    public int compile(Nfa nfa, int start) {
+
+        int end = nfa.addState();
+
+        nfa.addTransition(start, set, end);
+
+        return end;
+
+    }
+
+}
@@ -4,13 +4,14 @@ import net.zerobone.knife.ast.TranslationUnitNode;
 import net.zerobone.knife.ast.entities.ProductionStatementBody;
 import net.zerobone.knife.ast.statements.ProductionStatementNode;
 import net.zerobone.knife.ast.statements.StatementNode;
+import net.zerobone.knife.ast.statements.TokenStatementNode;
 import net.zerobone.knife.ast.statements.TypeStatementNode;
 import net.zerobone.knife.lexer.tokens.CodeToken;
 import net.zerobone.knife.lexer.tokens.IdToken;
+import net.zerobone.knife.lexer.tokens.RegexToken;
 import net.zerobone.knife.utils.StringUtils;
 
 import java.lang.Object;
-import java.util.ArrayList;
 
 final class ParseNode {
 	int actionId = 0;
@@ -19,100 +20,143 @@ final class ParseNode {
 
 	Object payload = null;
 
-	ArrayList<Object> children;
+	ParseNode[] children;
 
 	ParseNode(int symbolId) {
 		this.symbolId = symbolId;
-		children = this.symbolId < 0 ? new ArrayList<>() : null;
 	}
 
 	void reduce() {
-		Object v;
 		switch (actionId - 1) {
 			case 0:
-			{
-				v = new TranslationUnitNode();
-			}
-			break;
+				payload = reduce1();
+				break;
 			case 1:
-			{
-				StatementNode s = (StatementNode)((ParseNode)children.get(1)).payload;
-				TranslationUnitNode t = (TranslationUnitNode)((ParseNode)children.get(0)).payload;
-				t.addStatement(s); v = t;
-			}
-			break;
+				payload = reduce2((StatementNode)children[0].payload, (TranslationUnitNode)children[1].payload);
+				break;
 			case 2:
-			{
-				IdToken nonTerminal = (IdToken)((ParseNode)children.get(2)).payload;
-				ProductionStatementBody body = (ProductionStatementBody)((ParseNode)children.get(0)).payload;
-				v = new ProductionStatementNode(nonTerminal.id, body.getProduction(), body.getCode());
-			}
-			break;
+				payload = reduce3((IdToken)children[0].payload, (ProductionStatementBody)children[2].payload);
+				break;
 			case 3:
-			{
-				IdToken symbol = (IdToken)((ParseNode)children.get(1)).payload;
-				IdToken type = (IdToken)((ParseNode)children.get(0)).payload;
-				v = new TypeStatementNode(symbol.id, type.id);
-			}
-			break;
+				payload = reduce4((IdToken)children[1].payload, (IdToken)children[2].payload);
+				break;
 			case 4:
-			{
-				CodeToken code = (CodeToken)((ParseNode)children.get(0)).payload;
-				v = new ProductionStatementBody(code == null ? null : code.code);
-			}
-			break;
+				payload = reduce5((IdToken)children[1].payload, (RegexToken)children[2].payload);
+				break;
 			case 5:
-			{
-				IdToken s = (IdToken)((ParseNode)children.get(2)).payload;
-				IdToken arg = (IdToken)((ParseNode)children.get(1)).payload;
-				ProductionStatementBody b = (ProductionStatementBody)((ParseNode)children.get(0)).payload;
-
-				if (StringUtils.isTerminal(s.id)) {
-					if (arg == null) {
-						b.addTerminal(s.id);
-					}
-					else {
-						b.addTerminal(s.id, arg.id);
-					}
-				}
-				else {
-					if (arg == null) {
-						b.addNonTerminal(s.id);
-					}
-					else {
-						b.addNonTerminal(s.id, arg.id);
-					}
-				}
-				v = b;
-
-			}
-			break;
+				payload = reduce6((RegexToken)children[1].payload);
+				break;
 			case 6:
-			{
-				v = null;
-			}
-			break;
+				payload = reduce7((CodeToken)children[1].payload);
+				break;
 			case 7:
-			{
-				Object c = (Object)((ParseNode)children.get(0)).payload;
-				v = c;
-			}
-			break;
+				payload = reduce8((IdToken)children[0].payload, (IdToken)children[1].payload, (ProductionStatementBody)children[2].payload);
+				break;
 			case 8:
-			{
-				v = null;
-			}
-			break;
+				payload = reduce9();
+				break;
 			case 9:
-			{
-				IdToken arg = (IdToken)((ParseNode)children.get(1)).payload;
-				v = arg;
-			}
-			break;
+				payload = reduce10(children[0].payload);
+				break;
+			case 10:
+				payload = reduce11();
+				break;
+			case 11:
+				payload = reduce12((IdToken)children[1].payload);
+				break;
 			default:
 				throw new IllegalStateException();
 		}
-		payload = v;
 		children = null;
 	}
-}
\ No newline at end of file
+
+	private static Object reduce1() {
+		Object v = null;
+		 v = new TranslationUnitNode(); 
+		return v;
+	}
+
+	private static Object reduce2(StatementNode s, TranslationUnitNode t) {
+		Object v = null;
+		 t.addStatement(s); v = t; 
+		return v;
+	}
+
+	private static Object reduce3(IdToken nonTerminal, ProductionStatementBody body) {
+		Object v = null;
+		 v = new ProductionStatementNode(nonTerminal.id, body.getProduction(), body.getCode()); 
+		return v;
+	}
+
+	private static Object reduce4(IdToken symbol, IdToken type) {
+		Object v = null;
+		 v = new TypeStatementNode(symbol.id, type.id); 
+		return v;
+	}
+
+	private static Object reduce5(IdToken name, RegexToken pattern) {
+		Object v = null;
+		 v = new TokenStatementNode(name.id, pattern.regex); 
+		return v;
+	}
+
+	private static Object reduce6(RegexToken pattern) {
+		Object v = null;
+		 v = new TokenStatementNode(null, pattern.regex); 
+		return v;
+	}
+
+	private static Object reduce7(CodeToken code) {
+		Object v = null;
+		 v = new ProductionStatementBody(code == null ? null : code.code); 
+		return v;
+	}
+
+	private static Object reduce8(IdToken s, IdToken arg, ProductionStatementBody b) {
+		Object v = null;
+
+		    if (StringUtils.isTerminal(s.id)) {
+		        if (arg == null) {
+		            b.addTerminal(s.id);
+		        }
+		        else {
+		            b.addTerminal(s.id, arg.id);
+		        }
+		    }
+		    else {
+		        if (arg == null) {
+		            b.addNonTerminal(s.id);
+		        }
+		        else {
+		            b.addNonTerminal(s.id, arg.id);
+		        }
+		    }
+		    v = b;
+
+		return v;
+	}
+
+	private static Object reduce9() {
+		Object v = null;
+		 v = null; 
+		return v;
+	}
+
+	private static Object reduce10(Object c) {
+		Object v = null;
+		 v = c; 
+		return v;
+	}
+
+	private static Object reduce11() {
+		Object v = null;
+		 v = null; 
+		return v;
+	}
+
+	private static Object reduce12(IdToken arg) {
+		Object v = null;
+		 v = arg; 
+		return v;
+	}
+}
@@ -30,6 +30,15 @@ public class ParseUtils {
             case Parser.T_TYPE:
                 return "%type";
 
+            case Parser.T_TOKEN:
+                return "%token";
+
+            case Parser.T_REGEX:
+                return "<regex>";
+
+            case Parser.T_SKIP:
+                return "%skip";
+
             default:
                 return "<" + terminal + ">";
 
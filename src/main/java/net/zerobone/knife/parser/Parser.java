@@ -1,68 +1,185 @@
 package net.zerobone.knife.parser;
 
+import net.zerobone.knife.ast.TranslationUnitNode;
+import net.zerobone.knife.ast.entities.ProductionStatementBody;
+import net.zerobone.knife.ast.statements.ProductionStatementNode;
+import net.zerobone.knife.ast.statements.StatementNode;
+import net.zerobone.knife.ast.statements.TokenStatementNode;
+import net.zerobone.knife.ast.statements.TypeStatementNode;
+import net.zerobone.knife.lexer.tokens.CodeToken;
+import net.zerobone.knife.lexer.tokens.IdToken;
+import net.zerobone.knife.lexer.tokens.RegexToken;
+import net.zerobone.knife.utils.StringUtils;
+
+import java.lang.Exception;
 import java.lang.Object;
+import java.lang.String;
+import java.lang.ThreadLocal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Stack;
 
 public final class Parser {
 	public static final int T_EOF = 0;
 
-	public static final int T_CODE = 4;
-
-	public static final int T_SEMICOLON = 3;
+	public static final int T_REGEX = 9;
 
 	public static final int T_RIGHT_PAREN = 6;
 
-	public static final int T_ID = 1;
-
 	public static final int T_ASSIGN = 2;
 
 	public static final int T_LEFT_PAREN = 5;
 
+	public static final int T_CODE = 4;
+
+	public static final int T_SEMICOLON = 3;
+
+	public static final int T_SKIP = 10;
+
+	public static final int T_ID = 1;
+
 	public static final int T_TYPE = 7;
 
-	private static final int terminalCount = 8;
+	public static final int T_TOKEN = 8;
+
+	private static final int terminalCount = 11;
 
 	private static final int nonTerminalCount = 5;
 
 	private static final int startSymbol = -1;
 
-	private static final int[] table = {
-		1,2,0,0,0,0,0,2,
-		-1,3,0,0,0,0,0,4,
-		-1,6,0,5,0,0,0,-1,
-		7,7,0,0,8,0,0,7,
-		0,9,0,9,0,10,0,0};
-
-	private static final int[][] actionTable = {
-		{},
-		{-2,-1},
-		{1,2,-3},
-		{7,1,1},
-		{3,-4},
-		{1,-5,-3},
-		{},
-		{4},
-		{},
-		{5,1,6}};
-
-	private Stack<ParseNode> stack;
-
-	private ArrayList<ParseError> errors;
+	private static final int[] table = unpack(55,
+	"\"$     $$ $!&     (* ,!0 .   !! !22  4  22 2 6 6 8     ");
+
+	private static final int[][] actionTable = unpackActionTable(12, unpack(34,
+	" $#!&\"$%&.\"\"&0\"2$42$&'&\")% \"( &*\","));
+
+	private static final ThreadLocal<Parser> LOCAL = ThreadLocal.withInitial(Parser::new);
+
+	private final Stack<ParseNode> stack = new Stack<>();
+
+	private final ArrayList<ParseError> errors = new ArrayList<>();
 
 	private boolean reachedEof;
 
 	private ParseNode parseTree;
 
+	private int maxErrors = 0;
+
+	private boolean recordErrors = true;
+
+	private int errorCount;
+
+	private int firstErrorExpected;
+
+	private int firstErrorIndex;
+
+	private int tokenCount;
+
 	public Parser() {
+		this(16);
+	}
+
+	public Parser(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		stack.ensureCapacity(capacity);
 		reset();
 	}
 
+	private Parser(Parser other) {
+		IdentityHashMap<ParseNode, ParseNode> copies = new IdentityHashMap<>();
+		Collections.addAll(stack, copyNodes(other.stack.toArray(new ParseNode[other.stack.size()]), copies));
+		parseTree = copies.getOrDefault(other.parseTree, other.parseTree);
+		errors.addAll(other.errors);
+		errorCount = other.errorCount;
+		firstErrorExpected = other.firstErrorExpected;
+		firstErrorIndex = other.firstErrorIndex;
+		tokenCount = other.tokenCount;
+		reachedEof = other.reachedEof;
+		maxErrors = other.maxErrors;
+		recordErrors = other.recordErrors;
+	}
+
+	private static int[] unpack(int length, String... parts) {
+		int[] values = new int[length];
+		int i = 0;
+		for (String part : parts) {
+			for (int j = 0; j < part.length(); i++) {
+				int zigzag = part.charAt(j++);
+				if (zigzag == 0) {
+					zigzag = part.charAt(j) << 16 | part.charAt(j + 1);
+					j += 2;
+				} else {
+					zigzag -= 32;
+				}
+				values[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		return values;
+	}
+
+	private static int[][] unpackActionTable(int count, int[] lengthsAndSymbols) {
+		int[][] actions = new int[count][];
+		int i = 0;
+		for (int action = 0; action < count; action++) {
+			int length = lengthsAndSymbols[i++];
+			actions[action] = Arrays.copyOfRange(lengthsAndSymbols, i, i + length);
+			i += length;
+		}
+		return actions;
+	}
+
+	/**
+	 * Stops the parser once the given number of errors has been found, 0 disables the limit.
+	 */
+	public void setMaxErrors(int maxErrors) {
+		if (maxErrors < 0) {
+			throw new IllegalArgumentException("maxErrors must not be negative");
+		}
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * If disabled, no ParseError is created and getErrors() returns an empty array,
+	 * the errors are only counted.
+	 */
+	public void setRecordErrors(boolean recordErrors) {
+		this.recordErrors = recordErrors;
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * @return symbol expected by the first error, as in ParseError.expected
+	 */
+	public int getFirstErrorExpected() {
+		assert errorCount != 0;
+		return firstErrorExpected;
+	}
+
+	/**
+	 * @return index of the token of the first error, counted from the last reset
+	 */
+	public int getFirstErrorIndex() {
+		assert errorCount != 0;
+		return firstErrorIndex;
+	}
+
 	public void parse(int tokenId, Object token) {
+		tokenCount++;
 		while (true) {
+			if (stack.isEmpty()) {
+				return;
+			}
 			ParseNode prevRoot = stack.peek();
 			while (prevRoot.actionId != 0) {
-				if (errors.isEmpty()) {
+				if (errorCount == 0) {
 					prevRoot.reduce();
 				} else {
 					prevRoot.children = null;
@@ -70,7 +187,7 @@ public final class Parser {
 				stack.pop();
 				if (stack.isEmpty()) {
 					if (tokenId != T_EOF) {
-						errors.add(new ParseError(T_EOF, tokenId, token));
+						error(T_EOF, tokenId, token);
 						return;
 					}
 					reachedEof = true;
@@ -81,7 +198,7 @@ public final class Parser {
 			if (prevRoot.symbolId > 0) {
 				if (tokenId != prevRoot.symbolId) {
 					stack.pop();
-					errors.add(new ParseError(prevRoot.symbolId, tokenId, token));
+					error(prevRoot.symbolId, tokenId, token);
 					return;
 				}
 				prevRoot.payload = token;
@@ -90,32 +207,246 @@ public final class Parser {
 			}
 			int actionId = table[(-prevRoot.symbolId - 1) * terminalCount + tokenId];
 			if (actionId == 0) {
-				errors.add(new ParseError(ParseError.ANY, tokenId, token));
+				error(ParseError.ANY, tokenId, token);
 				return;
 			}
 			if (actionId == -1) {
-				errors.add(new ParseError(ParseError.ANY, tokenId, token));
-				stack.pop();
+				prevRoot.actionId = -1;
+				error(ParseError.ANY, tokenId, token);
 				return;
 			}
 			int[] action = actionTable[actionId - 1];
 			prevRoot.actionId = actionId;
+			ParseNode[] children = new ParseNode[action.length];
+			prevRoot.children = children;
 			for (int i = action.length - 1; i >= 0; i--) {
 				ParseNode child = new ParseNode(action[i]);
-				prevRoot.children.add(child);
+				children[i] = child;
 				stack.push(child);
 			}
 		}
 	}
 
+	public void parse(int[] tokenIds, Object[] tokens, int offset, int length) {
+		int end = offset + length;
+		feed:
+		for (int tokenIndex = offset; tokenIndex < end; tokenIndex++) {
+			int tokenId = tokenIds[tokenIndex];
+			Object token = tokens == null ? null : tokens[tokenIndex];
+			tokenCount++;
+			while (true) {
+				if (stack.isEmpty()) {
+					return;
+				}
+				ParseNode prevRoot = stack.peek();
+				while (prevRoot.actionId != 0) {
+					if (errorCount == 0) {
+						prevRoot.reduce();
+					} else {
+						prevRoot.children = null;
+					}
+					stack.pop();
+					if (stack.isEmpty()) {
+						if (tokenId != T_EOF) {
+							error(T_EOF, tokenId, token);
+							return;
+						}
+						reachedEof = true;
+						return;
+					}
+					prevRoot = stack.peek();
+				}
+				if (prevRoot.symbolId > 0) {
+					if (tokenId != prevRoot.symbolId) {
+						stack.pop();
+						if (error(prevRoot.symbolId, tokenId, token)) {
+							return;
+						}
+						continue feed;
+					}
+					prevRoot.payload = token;
+					stack.pop();
+					continue feed;
+				}
+				int actionId = table[(-prevRoot.symbolId - 1) * terminalCount + tokenId];
+				if (actionId == 0) {
+					if (error(ParseError.ANY, tokenId, token)) {
+						return;
+					}
+					continue feed;
+				}
+				if (actionId == -1) {
+					prevRoot.actionId = -1;
+					if (error(ParseError.ANY, tokenId, token)) {
+						return;
+					}
+					continue feed;
+				}
+				int[] action = actionTable[actionId - 1];
+				prevRoot.actionId = actionId;
+				ParseNode[] children = new ParseNode[action.length];
+				prevRoot.children = children;
+				for (int i = action.length - 1; i >= 0; i--) {
+					ParseNode child = new ParseNode(action[i]);
+					children[i] = child;
+					stack.push(child);
+				}
+			}
+		}
+	}
+
+	public void parse(int[] tokenIds, int offset, int length) {
+		parse(tokenIds, null, offset, length);
+	}
+
+	public <E extends Exception> void parseAll(TokenSource<E> source) throws E {
+		int tokenId;
+		feed:
+		do {
+			tokenId = source.next();
+			Object token = source.token();
+			tokenCount++;
+			while (true) {
+				if (stack.isEmpty()) {
+					return;
+				}
+				ParseNode prevRoot = stack.peek();
+				while (prevRoot.actionId != 0) {
+					if (errorCount == 0) {
+						prevRoot.reduce();
+					} else {
+						prevRoot.children = null;
+					}
+					stack.pop();
+					if (stack.isEmpty()) {
+						if (tokenId != T_EOF) {
+							error(T_EOF, tokenId, token);
+							return;
+						}
+						reachedEof = true;
+						return;
+					}
+					prevRoot = stack.peek();
+				}
+				if (prevRoot.symbolId > 0) {
+					if (tokenId != prevRoot.symbolId) {
+						stack.pop();
+						if (error(prevRoot.symbolId, tokenId, token)) {
+							return;
+						}
+						continue feed;
+					}
+					prevRoot.payload = token;
+					stack.pop();
+					continue feed;
+				}
+				int actionId = table[(-prevRoot.symbolId - 1) * terminalCount + tokenId];
+				if (actionId == 0) {
+					if (error(ParseError.ANY, tokenId, token)) {
+						return;
+					}
+					continue feed;
+				}
+				if (actionId == -1) {
+					prevRoot.actionId = -1;
+					if (error(ParseError.ANY, tokenId, token)) {
+						return;
+					}
+					continue feed;
+				}
+				int[] action = actionTable[actionId - 1];
+				prevRoot.actionId = actionId;
+				ParseNode[] children = new ParseNode[action.length];
+				prevRoot.children = children;
+				for (int i = action.length - 1; i >= 0; i--) {
+					ParseNode child = new ParseNode(action[i]);
+					children[i] = child;
+					stack.push(child);
+				}
+			}
+		} while (tokenId != T_EOF);
+	}
+
 	public void reset() {
-		errors = new ArrayList<>();
+		errors.clear();
+		errorCount = 0;
+		tokenCount = 0;
 		reachedEof = false;
 		parseTree = new ParseNode(startSymbol);
-		stack = new Stack<>();
+		stack.clear();
 		stack.push(parseTree);
 	}
 
+	/**
+	 * Captures the state of the parser, so that it can be restored after more input has been parsed.
+	 */
+	public Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		IdentityHashMap<ParseNode, ParseNode> copies = new IdentityHashMap<>();
+		snapshot.stack = copyNodes(stack.toArray(new ParseNode[stack.size()]), copies);
+		snapshot.parseTree = copies.getOrDefault(parseTree, parseTree);
+		snapshot.errors = getErrors();
+		snapshot.errorCount = errorCount;
+		snapshot.firstErrorExpected = firstErrorExpected;
+		snapshot.firstErrorIndex = firstErrorIndex;
+		snapshot.tokenCount = tokenCount;
+		snapshot.reachedEof = reachedEof;
+		return snapshot;
+	}
+
+	/**
+	 * Brings the parser back to the state captured by the snapshot, which stays valid.
+	 */
+	public void restore(Snapshot snapshot) {
+		reset();
+		IdentityHashMap<ParseNode, ParseNode> copies = new IdentityHashMap<>();
+		stack.clear();
+		Collections.addAll(stack, copyNodes(snapshot.stack, copies));
+		parseTree = copies.getOrDefault(snapshot.parseTree, snapshot.parseTree);
+		Collections.addAll(errors, snapshot.errors);
+		errorCount = snapshot.errorCount;
+		firstErrorExpected = snapshot.firstErrorExpected;
+		firstErrorIndex = snapshot.firstErrorIndex;
+		tokenCount = snapshot.tokenCount;
+		reachedEof = snapshot.reachedEof;
+	}
+
+	/**
+	 * Creates an independent parser in the same state, as if it had been fed the same tokens.
+	 * Its settings are copied as well.
+	 */
+	public Parser fork() {
+		return new Parser(this);
+	}
+
+	private static ParseNode[] copyNodes(ParseNode[] nodes,
+			IdentityHashMap<ParseNode, ParseNode> copies) {
+		ParseNode[] result = new ParseNode[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			ParseNode node = nodes[i];
+			ParseNode copy = new ParseNode(node.symbolId);
+			copy.actionId = node.actionId;
+			copy.payload = node.payload;
+			copy.children = node.children;
+			copies.put(node, copy);
+			result[i] = copy;
+		}
+		for (ParseNode copy : result) {
+			if (copy.children == null) {
+				continue;
+			}
+			ParseNode[] children = copy.children.clone();
+			for (int j = 0; j < children.length; j++) {
+				ParseNode child = copies.get(children[j]);
+				if (child != null) {
+					children[j] = child;
+				}
+			}
+			copy.children = children;
+		}
+		return result;
+	}
+
 	public Object getValue() {
 		assert successfullyParsed();
 		return parseTree.payload;
@@ -127,7 +458,57 @@ public final class Parser {
 		return parseErrors;
 	}
 
+	/**
+	 * @return true if the error limit has been reached and the parser has been stopped
+	 */
+	private boolean error(int expected, int tokenId, Object token) {
+		if (errorCount == 0) {
+			firstErrorExpected = expected;
+			firstErrorIndex = tokenCount - 1;
+		}
+		errorCount++;
+		if (recordErrors) {
+			errors.add(new ParseError(expected, tokenId, token));
+		}
+		if (errorCount != maxErrors) {
+			return false;
+		}
+		stack.clear();
+		return true;
+	}
+
+	/**
+	 * Returns the parser owned by the calling thread, reset and ready for a new input.
+	 * The parser stays valid until the same thread calls acquire() again.
+	 */
+	public static Parser acquire() {
+		Parser parser = LOCAL.get();
+		parser.reset();
+		return parser;
+	}
+
 	public boolean successfullyParsed() {
-		return reachedEof && errors.isEmpty();
+		return reachedEof && errorCount == 0;
+	}
+
+	public static final class Snapshot {
+		private ParseNode[] stack;
+
+		private ParseNode parseTree;
+
+		private ParseError[] errors;
+
+		private int errorCount;
+
+		private int firstErrorExpected;
+
+		private int firstErrorIndex;
+
+		private int tokenCount;
+
+		private boolean reachedEof;
+
+		private Snapshot() {
+		}
 	}
 }
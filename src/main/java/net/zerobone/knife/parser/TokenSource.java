@@ -0,0 +1,17 @@
+package net.zerobone.knife.parser;
+
+import java.lang.Exception;
+import java.lang.Object;
+
+public interface TokenSource<E extends Exception> {
+	/**
+	 * Advances to the next token of the input.
+	 * @return id of the token, T_EOF once the input is exhausted
+	 */
+	int next() throws E;
+
+	/**
+	 * @return value of the token returned by the last call to next()
+	 */
+	Object token();
+}
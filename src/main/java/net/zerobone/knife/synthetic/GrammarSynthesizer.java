@@ -0,0 +1,707 @@
+package net.zerobone.knife.synthetic;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Generates random grammars that pass knife's verification: every non-terminal is defined, reachable from the start
+ * symbol and derives a finite string. The only left recursion is the requested number of cycles.
+ *
+ * Non-terminals are generated from the last one to the first. A production never starts with a nullable
+ * non-terminal, and its first symbol is either a terminal or a non-terminal generated before it, so no other left
+ * recursion arises. The first production of every non-terminal only refers to non-terminals generated before it,
+ * the others may refer to any non-terminal after their first symbol.
+ */
+public class GrammarSynthesizer {
+
+    // probability that a production starts with a non-terminal instead of a terminal
+    private static final double LEADING_NON_TERMINAL_PROBABILITY = 0.3;
+
+    // probability of a non-terminal at every other position of a production
+    private static final double NON_TERMINAL_PROBABILITY = 0.4;
+
+    private static final int LEADING_NON_TERMINAL_ATTEMPTS = 4;
+
+    // rounds in which conflicting nullable non-terminals are given a new first terminal before they lose epsilon
+    private static final int RELEADING_ROUNDS = 8;
+
+    private final SynthesizerOptions options;
+
+    private final Random random;
+
+    private final int nonTerminalCount;
+
+    private final int terminalCount;
+
+    private final boolean[] nullable;
+
+    // index of the next member of the left-recursive cycle, -1 for non-terminals not in a cycle
+    private final int[] cycleSuccessor;
+
+    // number of productions besides the epsilon and cycle ones
+    private final int[] productionCounts;
+
+    // FIRST sets of the non-terminals, only computed for LL(1) grammars
+    private final BitSet[] firstSets;
+
+    private final ArrayList<ArrayList<int[]>> productions;
+
+    private GrammarSynthesizer(SynthesizerOptions options) {
+
+        this.options = options;
+
+        random = new Random(options.seed);
+
+        nonTerminalCount = options.nonTerminals;
+
+        terminalCount = options.terminals;
+
+        nullable = new boolean[nonTerminalCount];
+
+        cycleSuccessor = new int[nonTerminalCount];
+
+        Arrays.fill(cycleSuccessor, -1);
+
+        productionCounts = new int[nonTerminalCount];
+
+        firstSets = new BitSet[nonTerminalCount];
+
+        productions = new ArrayList<>(nonTerminalCount);
+
+        for (int i = 0; i < nonTerminalCount; i++) {
+            productions.add(new ArrayList<>());
+        }
+
+    }
+
+    public static SyntheticGrammar synthesize(SynthesizerOptions options) {
+
+        String error = options.validate();
+
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        GrammarSynthesizer synthesizer = new GrammarSynthesizer(options);
+
+        synthesizer.assignRoles();
+
+        for (int nonTerminal = synthesizer.nonTerminalCount - 1; nonTerminal >= 0; nonTerminal--) {
+            synthesizer.generateProductions(nonTerminal);
+        }
+
+        synthesizer.closeCycles();
+
+        synthesizer.connect();
+
+        if (options.ll1) {
+            synthesizer.resolveConflicts();
+        }
+
+        return new SyntheticGrammar(synthesizer.productions, synthesizer.terminalCount);
+
+    }
+
+    private void assignRoles() {
+
+        int[] order = new int[nonTerminalCount];
+
+        for (int i = 0; i < nonTerminalCount; i++) {
+            order[i] = i;
+        }
+
+        for (int i = nonTerminalCount - 1; i > 0; i--) {
+
+            int j = random.nextInt(i + 1);
+
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+
+        }
+
+        // productions left after every non-terminal got one, the epsilon ones and one per cycle
+
+        int spare = options.productions - nonTerminalCount - options.nullable - options.leftRecursiveCycles;
+
+        int position = 0;
+
+        for (int cycle = 0; cycle < options.leftRecursiveCycles; cycle++) {
+
+            // keep one member for every remaining cycle and leave the nullable non-terminals alone
+
+            int available = nonTerminalCount - options.nullable - position - (options.leftRecursiveCycles - cycle - 1);
+
+            int length = 1 + random.nextInt(Math.min(3, Math.min(spare + 1, available)));
+
+            spare -= length - 1;
+
+            for (int i = 0; i < length; i++) {
+                cycleSuccessor[order[position + i]] = order[position + (i + 1) % length];
+            }
+
+            position += length;
+
+        }
+
+        for (int i = 0; i < options.nullable; i++) {
+            nullable[order[position + i]] = true;
+        }
+
+        Arrays.fill(productionCounts, 1);
+
+        for (; spare > 0; spare--) {
+
+            int nonTerminal = random.nextInt(nonTerminalCount);
+
+            // the productions of an LL(1) non-terminal start with different terminals,
+            // and nullable ones keep a single production so that their FIRST sets stay small
+
+            while (options.ll1 && (productionCounts[nonTerminal] == terminalCount || nullable[nonTerminal])) {
+                nonTerminal = (nonTerminal + 1) % nonTerminalCount;
+            }
+
+            productionCounts[nonTerminal]++;
+
+        }
+
+    }
+
+    private int sampleLength() {
+
+        // uniform around the average, rounded randomly so that the mean is exact
+
+        double length = 1 + random.nextDouble() * 2 * (options.averageRhsLength - 1);
+
+        int rounded = (int)length;
+
+        if (random.nextDouble() < length - rounded) {
+            rounded++;
+        }
+
+        return rounded;
+
+    }
+
+    private boolean canLead(int nonTerminal) {
+        return !nullable[nonTerminal] && cycleSuccessor[nonTerminal] == -1;
+    }
+
+    /**
+     * @return a non-terminal generated before the given one that can start a production, -1 if none was found
+     */
+    private int pickLeadingNonTerminal(int nonTerminal) {
+
+        int candidates = nonTerminalCount - nonTerminal - 1;
+
+        if (candidates == 0) {
+            return -1;
+        }
+
+        for (int attempt = 0; attempt < LEADING_NON_TERMINAL_ATTEMPTS; attempt++) {
+
+            int candidate = nonTerminal + 1 + random.nextInt(candidates);
+
+            if (canLead(candidate)) {
+                return candidate;
+            }
+
+        }
+
+        return -1;
+
+    }
+
+    private int pickUnusedTerminal(BitSet used) {
+
+        int terminal = used.nextClearBit(random.nextInt(terminalCount));
+
+        if (terminal >= terminalCount) {
+            terminal = used.nextClearBit(0);
+        }
+
+        assert terminal < terminalCount;
+
+        return terminal;
+
+    }
+
+    private int pickLeadingSymbol(int nonTerminal, BitSet used, int remaining) {
+
+        if (cycleSuccessor[nonTerminal] == -1 && random.nextDouble() < LEADING_NON_TERMINAL_PROBABILITY) {
+
+            int leading = pickLeadingNonTerminal(nonTerminal);
+
+            if (leading != -1 && options.ll1) {
+
+                // the FIRST set of the production has to be disjoint from the ones before it,
+                // and enough terminals have to remain for the productions after it
+
+                BitSet first = firstSets[leading];
+
+                if (first.intersects(used) || terminalCount - used.cardinality() - first.cardinality() < remaining - 1) {
+                    leading = -1;
+                }
+
+            }
+
+            if (leading != -1) {
+
+                if (options.ll1) {
+                    used.or(firstSets[leading]);
+                }
+
+                return SyntheticGrammar.nonTerminalSymbol(leading);
+
+            }
+
+        }
+
+        if (!options.ll1) {
+            return random.nextInt(terminalCount);
+        }
+
+        int terminal = pickUnusedTerminal(used);
+
+        used.set(terminal);
+
+        return terminal;
+
+    }
+
+    /**
+     * @param onlyGenerated whether only non-terminals generated before the current one may be used
+     */
+    private int pickSymbol(int nonTerminal, boolean onlyGenerated) {
+
+        if (random.nextDouble() < NON_TERMINAL_PROBABILITY) {
+
+            if (!onlyGenerated) {
+                return SyntheticGrammar.nonTerminalSymbol(random.nextInt(nonTerminalCount));
+            }
+
+            if (nonTerminal != nonTerminalCount - 1) {
+                return SyntheticGrammar.nonTerminalSymbol(nonTerminal + 1 + random.nextInt(nonTerminalCount - nonTerminal - 1));
+            }
+
+        }
+
+        return random.nextInt(terminalCount);
+
+    }
+
+    private void generateProductions(int nonTerminal) {
+
+        ArrayList<int[]> nonTerminalProductions = productions.get(nonTerminal);
+
+        BitSet used = new BitSet(terminalCount);
+
+        int count = productionCounts[nonTerminal];
+
+        for (int i = 0; i < count; i++) {
+
+            int[] body = new int[sampleLength()];
+
+            body[0] = pickLeadingSymbol(nonTerminal, used, count - i);
+
+            for (int position = 1; position < body.length; position++) {
+                body[position] = pickSymbol(nonTerminal, i == 0);
+            }
+
+            nonTerminalProductions.add(body);
+
+        }
+
+        if (nullable[nonTerminal]) {
+            nonTerminalProductions.add(new int[0]);
+        }
+
+        firstSets[nonTerminal] = used;
+
+    }
+
+    private void closeCycles() {
+
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+
+            if (cycleSuccessor[nonTerminal] == -1) {
+                continue;
+            }
+
+            // a terminal after the left-recursive symbol keeps the cycle from deriving the non-terminal itself,
+            // even after its epsilon productions are eliminated
+
+            int[] body = new int[Math.max(2, sampleLength())];
+
+            body[0] = SyntheticGrammar.nonTerminalSymbol(cycleSuccessor[nonTerminal]);
+
+            body[1] = random.nextInt(terminalCount);
+
+            for (int position = 2; position < body.length; position++) {
+                body[position] = pickSymbol(nonTerminal, false);
+            }
+
+            productions.get(nonTerminal).add(body);
+
+        }
+
+    }
+
+    private void markReachable(int start, boolean[] reachable) {
+
+        int[] stack = new int[nonTerminalCount];
+
+        int top = 0;
+
+        reachable[start] = true;
+
+        stack[top++] = start;
+
+        while (top != 0) {
+
+            int nonTerminal = stack[--top];
+
+            for (int[] body : productions.get(nonTerminal)) {
+
+                for (int symbol : body) {
+
+                    if (SyntheticGrammar.isTerminal(symbol)) {
+                        continue;
+                    }
+
+                    int target = SyntheticGrammar.nonTerminalIndex(symbol);
+
+                    if (!reachable[target]) {
+                        reachable[target] = true;
+                        stack[top++] = target;
+                    }
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Makes every non-terminal reachable by appending it to a production of a random non-terminal before it.
+     * Appending leaves the first symbol, and with it the FIRST set of the production, unchanged.
+     */
+    private void connect() {
+
+        boolean[] reachable = new boolean[nonTerminalCount];
+
+        markReachable(0, reachable);
+
+        for (int nonTerminal = 1; nonTerminal < nonTerminalCount; nonTerminal++) {
+
+            if (reachable[nonTerminal]) {
+                continue;
+            }
+
+            ArrayList<int[]> parentProductions = productions.get(random.nextInt(nonTerminal));
+
+            // the first production is never the epsilon one
+
+            int index = random.nextInt(parentProductions.size());
+
+            if (parentProductions.get(index).length == 0) {
+                index = 0;
+            }
+
+            int[] body = parentProductions.get(index);
+
+            body = Arrays.copyOf(body, body.length + 1);
+
+            body[body.length - 1] = SyntheticGrammar.nonTerminalSymbol(nonTerminal);
+
+            parentProductions.set(index, body);
+
+            markReachable(nonTerminal, reachable);
+
+        }
+
+    }
+
+    private BitSet[] computeFollowSets() {
+
+        // bit terminalCount stands for the end of input
+
+        BitSet[] followSets = new BitSet[nonTerminalCount];
+
+        for (int i = 0; i < nonTerminalCount; i++) {
+            followSets[i] = new BitSet(terminalCount + 1);
+        }
+
+        followSets[0].set(terminalCount);
+
+        BitSet trailer = new BitSet(terminalCount + 1);
+
+        boolean changed = true;
+
+        while (changed) {
+
+            changed = false;
+
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+
+                for (int[] body : productions.get(nonTerminal)) {
+
+                    // walk the body backwards, trailer is what can follow the current symbol
+
+                    trailer.clear();
+                    trailer.or(followSets[nonTerminal]);
+
+                    for (int position = body.length - 1; position >= 0; position--) {
+
+                        int symbol = body[position];
+
+                        if (SyntheticGrammar.isTerminal(symbol)) {
+                            trailer.clear();
+                            trailer.set(symbol);
+                            continue;
+                        }
+
+                        int target = SyntheticGrammar.nonTerminalIndex(symbol);
+
+                        BitSet followSet = followSets[target];
+
+                        int before = followSet.cardinality();
+
+                        followSet.or(trailer);
+
+                        if (followSet.cardinality() != before) {
+                            changed = true;
+                        }
+
+                        if (!nullable[target]) {
+                            trailer.clear();
+                        }
+
+                        trailer.or(firstSets[target]);
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return followSets;
+
+    }
+
+    /**
+     * The productions of a non-terminal start with disjoint sets of terminals, so the only possible conflicts are
+     * between an epsilon production and a terminal in both the FIRST and the FOLLOW set of its non-terminal.
+     *
+     * Such a non-terminal first gets its only other production started with a terminal outside of its FOLLOW set.
+     * As this changes the FOLLOW sets of other non-terminals, it is only tried for a limited number of rounds.
+     * Afterwards the epsilon production is dropped, which only shrinks FOLLOW sets, so this terminates.
+     */
+    private void resolveConflicts() {
+
+        boolean resolved = false;
+
+        for (int round = 0; !resolved; round++) {
+
+            resolved = true;
+
+            BitSet[] followSets = computeFollowSets();
+
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+
+                BitSet followSet = followSets[nonTerminal];
+
+                if (!nullable[nonTerminal] || !firstSets[nonTerminal].intersects(followSet)) {
+                    continue;
+                }
+
+                resolved = false;
+
+                ArrayList<int[]> nonTerminalProductions = productions.get(nonTerminal);
+
+                int terminal = followSet.nextClearBit(random.nextInt(terminalCount));
+
+                if (terminal >= terminalCount) {
+                    terminal = followSet.nextClearBit(0);
+                }
+
+                if (round < RELEADING_ROUNDS && terminal < terminalCount) {
+
+                    // the first production is the only non-epsilon one, its non-terminals stay referenced
+
+                    int[] body = nonTerminalProductions.get(0);
+
+                    if (!SyntheticGrammar.isTerminal(body[0])) {
+                        body = Arrays.copyOf(body, body.length + 1);
+                        System.arraycopy(body, 0, body, 1, body.length - 1);
+                        nonTerminalProductions.set(0, body);
+                    }
+
+                    body[0] = terminal;
+
+                    firstSets[nonTerminal].clear();
+                    firstSets[nonTerminal].set(terminal);
+
+                    continue;
+
+                }
+
+                nonTerminalProductions.remove(nonTerminalProductions.size() - 1);
+
+                nullable[nonTerminal] = false;
+
+            }
+
+        }
+
+    }
+
+    private static boolean parseOption(String option, SynthesizerOptions options) {
+
+        if (option.equals("--ll1")) {
+            options.ll1 = true;
+            return true;
+        }
+
+        int separator = option.indexOf('=');
+
+        if (separator == -1) {
+            return false;
+        }
+
+        String value = option.substring(separator + 1);
+
+        try {
+
+            switch (option.substring(0, separator)) {
+
+                case "--terminals":
+                    options.terminals = Integer.parseInt(value);
+                    return true;
+
+                case "--non-terminals":
+                    options.nonTerminals = Integer.parseInt(value);
+                    return true;
+
+                case "--productions":
+                    options.productions = Integer.parseInt(value);
+                    return true;
+
+                case "--nullable":
+                    options.nullable = Integer.parseInt(value);
+                    return true;
+
+                case "--left-recursive-cycles":
+                    options.leftRecursiveCycles = Integer.parseInt(value);
+                    return true;
+
+                case "--rhs-length":
+                    options.averageRhsLength = Double.parseDouble(value);
+                    return true;
+
+                case "--seed":
+                    options.seed = Long.parseLong(value);
+                    return true;
+
+                default:
+                    return false;
+
+            }
+
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+
+    }
+
+    public static void main(String[] args) {
+
+        SynthesizerOptions options = new SynthesizerOptions();
+
+        String fileName = null;
+
+        for (String arg : args) {
+
+            if (!arg.startsWith("--")) {
+
+                if (fileName != null) {
+                    fileName = null;
+                    break;
+                }
+
+                fileName = arg;
+
+                continue;
+
+            }
+
+            if (!parseOption(arg, options)) {
+                System.err.println("Unknown option '" + arg + "'.");
+                fileName = null;
+                break;
+            }
+
+        }
+
+        if (fileName != null) {
+
+            String optionsError = options.validate();
+
+            if (optionsError != null) {
+                System.err.println("Error: " + optionsError);
+                return;
+            }
+
+            SyntheticGrammar grammar = synthesize(options);
+
+            try {
+
+                BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
+
+                grammar.write(writer);
+
+                writer.close();
+
+            }
+            catch (IOException e) {
+                System.err.println("I/O error: " + e.getMessage());
+                return;
+            }
+
+            System.out.println(
+                "Written " + grammar.getProductionCount() + " productions of " + grammar.getNonTerminalCount() +
+                    " non-terminals over " + grammar.getTerminalCount() + " terminals to '" + fileName + "' (" +
+                    grammar.getNullableCount() + " nullable, average right-hand side length " +
+                    String.format("%.2f", grammar.getAverageRhsLength()) + ")."
+            );
+
+            return;
+
+        }
+
+        System.err.println("Invalid arguments!");
+        System.out.println("Usage: GrammarSynthesizer [options] filename.kn");
+        System.out.println("Options:");
+        System.out.println("  --terminals=N       number of terminals (default 32)");
+        System.out.println("  --non-terminals=N   number of non-terminals (default 100)");
+        System.out.println("  --productions=N     total number of productions (default 400)");
+        System.out.println("  --nullable=N        number of non-terminals with an epsilon production (default 10)");
+        System.out.println("  --left-recursive-cycles=N");
+        System.out.println("                      number of left-recursive cycles of 1 to 3 non-terminals (default 0)");
+        System.out.println("  --rhs-length=X      average length of a non-epsilon production (default 3.0)");
+        System.out.println("  --ll1               make the grammar LL(1), conflicting epsilon productions are dropped");
+        System.out.println("  --seed=N            seed of the random generator (default 0)");
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package net.zerobone.knife.synthetic;
+
+public class Sentence {
+
+    // terminal ids as in the generated parser, the last one is the end of input
+    public final int[] tokenIds;
+
+    public final Object[] tokens;
+
+    // number of tokens deleted, inserted or replaced after generating a valid sentence
+    public final int injectedErrors;
+
+    public Sentence(int[] tokenIds, Object[] tokens, int injectedErrors) {
+        this.tokenIds = tokenIds;
+        this.tokens = tokens;
+        this.injectedErrors = injectedErrors;
+    }
+
+    public int length() {
+        return tokenIds.length;
+    }
+
+}
@@ -0,0 +1,649 @@
+package net.zerobone.knife.synthetic;
+
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.grammar.table.ParsingTableProduction;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Derives random sentences from the productions of a parsing table, optionally with syntax errors injected.
+ *
+ * The depth of a non-terminal is the number of productions it is nested in without being their last symbol,
+ * which is how deep the stack of the table-driven parser gets. Productions that cannot be completed within the
+ * maximum depth are never chosen.
+ *
+ * The length of a sentence is steered through the start symbol: as long as the sentence is shorter than the target
+ * length, it only takes productions containing a non-terminal that can derive arbitrarily long strings, if there
+ * are any, and the last of those non-terminals is steered the same way. All other non-terminals take a production
+ * at random according to the weights. Once the target length is reached, every pending non-terminal is completed
+ * by its shallowest production.
+ */
+public class SentenceGenerator {
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // expansions per token of the target length after which the sentence is completed in any case
+    private static final int EXPANSIONS_PER_TOKEN = 64;
+
+    private final ParsingTable table;
+
+    private final Random random;
+
+    // body of every production, terminals have positive ids and non-terminal rows are encoded as -(row + 1)
+    private final int[][] bodies;
+
+    // row of the label of every production
+    private final int[] labels;
+
+    // productions of every row
+    private final int[][] rowProductions;
+
+    private final int startRow;
+
+    private final double[] weights;
+
+    // minimal depth needed to complete every production and row
+    private final int[] productionHeights;
+
+    private final int[] heights;
+
+    // production of every row reaching its height, following these always ends
+    private final int[] shallowestProductions;
+
+    // minimal number of tokens every row derives
+    private final int[] minLengths;
+
+    // position of the last non-terminal able to derive arbitrarily long strings in every production, -1 if none
+    private final int[] carriers;
+
+    private int targetLength = 100;
+
+    private int maxDepth = 64;
+
+    private double errorRate = 0;
+
+    private IntFunction<Object> tokenFactory = null;
+
+    // pending symbols of the derivation
+
+    private int[] stackSymbols = new int[64];
+
+    private int[] stackDepths = new int[64];
+
+    private boolean[] stackCarriers = new boolean[64];
+
+    private int top = 0;
+
+    // tokens derived so far
+
+    private int[] tokenIds = new int[64];
+
+    private Object[] tokens = new Object[64];
+
+    private int length = 0;
+
+    public SentenceGenerator(ParsingTable table, long seed) {
+
+        if (table.conflicts.length != 0) {
+            throw new IllegalArgumentException("The parsing table has conflicts, so the parser might reject derived sentences.");
+        }
+
+        this.table = table;
+
+        random = new Random(seed);
+
+        final int productionCount = table.productionActions.length;
+
+        final int rowCount = table.nonTerminalCount;
+
+        bodies = new int[productionCount][];
+
+        labels = new int[productionCount];
+
+        int[] rowSizes = new int[rowCount];
+
+        for (int p = 0; p < productionCount; p++) {
+
+            ParsingTableProduction production = table.productionActions[p];
+
+            int[] body = new int[production.body.size()];
+
+            for (int i = 0; i < body.length; i++) {
+                // the table already numbers non-terminal rows as -(row + 1)
+                body[i] = table.mapping.mapKey(production.body.get(i).id);
+            }
+
+            bodies[p] = body;
+
+            labels[p] = -table.mapping.mapKey(production.label) - 1;
+
+            rowSizes[labels[p]]++;
+
+        }
+
+        rowProductions = new int[rowCount][];
+
+        for (int row = 0; row < rowCount; row++) {
+            rowProductions[row] = new int[rowSizes[row]];
+            rowSizes[row] = 0;
+        }
+
+        for (int p = 0; p < productionCount; p++) {
+            rowProductions[labels[p]][rowSizes[labels[p]]++] = p;
+        }
+
+        startRow = -table.mapping.mapKey(table.startSymbol) - 1;
+
+        weights = new double[productionCount];
+
+        Arrays.fill(weights, 1);
+
+        productionHeights = new int[productionCount];
+
+        heights = new int[rowCount];
+
+        shallowestProductions = new int[rowCount];
+
+        computeHeights();
+
+        if (heights[startRow] == UNBOUNDED) {
+            throw new IllegalArgumentException("The start symbol does not derive any finite sentence.");
+        }
+
+        minLengths = new int[rowCount];
+
+        computeMinLengths();
+
+        carriers = new int[productionCount];
+
+        computeCarriers();
+
+    }
+
+    private static int row(int symbol) {
+        return -symbol - 1;
+    }
+
+    private int productionHeight(int production) {
+
+        int[] body = bodies[production];
+
+        int height = 0;
+
+        for (int i = 0; i < body.length; i++) {
+
+            if (body[i] > 0) {
+                continue;
+            }
+
+            int childHeight = heights[row(body[i])];
+
+            if (childHeight == UNBOUNDED) {
+                return UNBOUNDED;
+            }
+
+            // the last symbol replaces its parent on the parse stack
+            height = Math.max(height, i == body.length - 1 ? childHeight : childHeight + 1);
+
+        }
+
+        return height;
+
+    }
+
+    private void computeHeights() {
+
+        Arrays.fill(heights, UNBOUNDED);
+
+        Arrays.fill(shallowestProductions, -1);
+
+        // rows are settled in the order of their heights, so the shallowest production of a row
+        // only refers to rows settled before it
+
+        int unsettled = heights.length;
+
+        for (int level = 0; level <= heights.length && unsettled != 0; level++) {
+
+            boolean settled = true;
+
+            while (settled) {
+
+                settled = false;
+
+                for (int p = 0; p < bodies.length; p++) {
+
+                    int row = labels[p];
+
+                    if (heights[row] != UNBOUNDED) {
+                        continue;
+                    }
+
+                    int height = productionHeight(p);
+
+                    if (height <= level) {
+                        heights[row] = height;
+                        shallowestProductions[row] = p;
+                        settled = true;
+                        unsettled--;
+                    }
+
+                }
+
+            }
+
+        }
+
+        for (int p = 0; p < bodies.length; p++) {
+            productionHeights[p] = productionHeight(p);
+        }
+
+    }
+
+    private void computeMinLengths() {
+
+        Arrays.fill(minLengths, UNBOUNDED);
+
+        boolean changed = true;
+
+        while (changed) {
+
+            changed = false;
+
+            for (int p = 0; p < bodies.length; p++) {
+
+                long length = 0;
+
+                for (int symbol : bodies[p]) {
+                    length += symbol > 0 ? 1 : minLengths[row(symbol)];
+                }
+
+                if (length < minLengths[labels[p]]) {
+                    minLengths[labels[p]] = (int)length;
+                    changed = true;
+                }
+
+            }
+
+        }
+
+    }
+
+    private void computeCarriers() {
+
+        // a row is bounded if all non-terminals it refers to are bounded, the others lead to a cycle
+
+        boolean[] bounded = new boolean[heights.length];
+
+        boolean changed = true;
+
+        while (changed) {
+
+            changed = false;
+
+            for (int row = 0; row < heights.length; row++) {
+
+                if (bounded[row]) {
+                    continue;
+                }
+
+                boolean childrenBounded = true;
+
+                for (int p : rowProductions[row]) {
+
+                    for (int symbol : bodies[p]) {
+
+                        if (symbol < 0 && !bounded[row(symbol)]) {
+                            childrenBounded = false;
+                        }
+
+                    }
+
+                }
+
+                if (childrenBounded) {
+                    bounded[row] = true;
+                    changed = true;
+                }
+
+            }
+
+        }
+
+        for (int p = 0; p < bodies.length; p++) {
+
+            carriers[p] = -1;
+
+            int[] body = bodies[p];
+
+            for (int i = body.length - 1; i >= 0; i--) {
+
+                if (body[i] < 0 && !bounded[row(body[i])]) {
+                    carriers[p] = i;
+                    break;
+                }
+
+            }
+
+        }
+
+    }
+
+    public int getProductionCount() {
+        return bodies.length;
+    }
+
+    /**
+     * @param length number of tokens, not counting the end of input, sentences should have
+     */
+    public void setTargetLength(int length) {
+
+        if (length < 0) {
+            throw new IllegalArgumentException("The target length cannot be negative.");
+        }
+
+        targetLength = length;
+
+    }
+
+    /**
+     * Sets the maximum depth, which is raised to the minimal depth of the start symbol if it is lower.
+     */
+    public void setMaxDepth(int depth) {
+        maxDepth = depth;
+    }
+
+    /**
+     * @param production index of the production in the productionActions of the table
+     * @param weight relative probability of choosing this production among the others of its non-terminal,
+     *               0 to only choose it when no other production fits
+     */
+    public void setWeight(int production, double weight) {
+
+        if (!(weight >= 0)) {
+            throw new IllegalArgumentException("Production weights cannot be negative.");
+        }
+
+        weights[production] = weight;
+
+    }
+
+    /**
+     * @param rate probability of every token to be deleted, replaced or preceded by a random token
+     */
+    public void setErrorRate(double rate) {
+
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("The error rate has to be between 0 and 1.");
+        }
+
+        errorRate = rate;
+
+    }
+
+    /**
+     * @param factory creates the token value for a terminal id, null for tokens without values
+     */
+    public void setTokenFactory(IntFunction<Object> factory) {
+        tokenFactory = factory;
+    }
+
+    private void push(int symbol, int depth, boolean carrier) {
+
+        if (top == stackSymbols.length) {
+            stackSymbols = Arrays.copyOf(stackSymbols, top << 1);
+            stackDepths = Arrays.copyOf(stackDepths, top << 1);
+            stackCarriers = Arrays.copyOf(stackCarriers, top << 1);
+        }
+
+        stackSymbols[top] = symbol;
+        stackDepths[top] = depth;
+        stackCarriers[top] = carrier;
+        top++;
+
+    }
+
+    private void emit(int tokenId) {
+
+        if (length == tokenIds.length) {
+            tokenIds = Arrays.copyOf(tokenIds, length << 1);
+            tokens = Arrays.copyOf(tokens, length << 1);
+        }
+
+        tokenIds[length] = tokenId;
+        tokens[length] = createToken(tokenId);
+        length++;
+
+    }
+
+    private int chooseProduction(int row, int depthLeft, boolean carrier) {
+
+        int[] candidates = rowProductions[row];
+
+        // the carrier of the sentence keeps growing while it can
+
+        boolean growing = false;
+
+        if (carrier) {
+
+            for (int p : candidates) {
+
+                if (productionHeights[p] <= depthLeft && carriers[p] != -1 && weights[p] > 0) {
+                    growing = true;
+                    break;
+                }
+
+            }
+
+        }
+
+        double total = 0;
+
+        for (int p : candidates) {
+
+            if (productionHeights[p] <= depthLeft && (!growing || carriers[p] != -1)) {
+                total += weights[p];
+            }
+
+        }
+
+        if (total == 0) {
+            return shallowestProductions[row];
+        }
+
+        double threshold = random.nextDouble() * total;
+
+        int chosen = shallowestProductions[row];
+
+        for (int p : candidates) {
+
+            if (productionHeights[p] > depthLeft || (growing && carriers[p] == -1) || weights[p] == 0) {
+                continue;
+            }
+
+            chosen = p;
+
+            threshold -= weights[p];
+
+            if (threshold < 0) {
+                break;
+            }
+
+        }
+
+        return chosen;
+
+    }
+
+    private void derive() {
+
+        final int depthLimit = Math.max(maxDepth, heights[startRow]);
+
+        final long expansionLimit = (long)EXPANSIONS_PER_TOKEN * targetLength + heights.length;
+
+        long expansions = 0;
+
+        // minimal number of tokens the pending symbols derive
+        long pending = minLengths[startRow];
+
+        top = 0;
+
+        push(-(startRow + 1), 0, true);
+
+        while (top != 0) {
+
+            top--;
+
+            int symbol = stackSymbols[top];
+
+            if (symbol > 0) {
+                pending--;
+                emit(symbol);
+                continue;
+            }
+
+            int row = row(symbol);
+
+            int depth = stackDepths[top];
+
+            boolean carrier = stackCarriers[top];
+
+            int production;
+
+            if (length + pending >= targetLength || expansions >= expansionLimit) {
+                production = shallowestProductions[row];
+            }
+            else {
+                production = chooseProduction(row, depthLimit - depth, carrier);
+            }
+
+            expansions++;
+
+            pending -= minLengths[row];
+
+            int[] body = bodies[production];
+
+            for (int i = body.length - 1; i >= 0; i--) {
+
+                int bodySymbol = body[i];
+
+                push(bodySymbol, i == body.length - 1 ? depth : depth + 1, carrier && i == carriers[production]);
+
+                pending += bodySymbol > 0 ? 1 : minLengths[row(bodySymbol)];
+
+            }
+
+        }
+
+    }
+
+    private Object createToken(int tokenId) {
+        return tokenFactory == null ? null : tokenFactory.apply(tokenId);
+    }
+
+    private int randomTerminal() {
+        // terminal ids are 1 to terminalCount - 1, 0 is the end of input
+        return 1 + random.nextInt(table.terminalCount - 1);
+    }
+
+    /**
+     * Derives a new sentence, the token values are created by the token factory.
+     */
+    public Sentence generate() {
+
+        length = 0;
+
+        derive();
+
+        int[] resultIds = new int[length + 1];
+
+        Object[] resultTokens = new Object[length + 1];
+
+        int resultLength = 0;
+
+        int injectedErrors = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            // room for an insertion, which adds two tokens, and the end of input
+
+            if (resultLength + 3 > resultIds.length) {
+                resultIds = Arrays.copyOf(resultIds, resultIds.length << 1);
+                resultTokens = Arrays.copyOf(resultTokens, resultTokens.length << 1);
+            }
+
+            if (errorRate == 0 || random.nextDouble() >= errorRate) {
+                resultIds[resultLength] = tokenIds[i];
+                resultTokens[resultLength] = tokens[i];
+                resultLength++;
+                continue;
+            }
+
+            injectedErrors++;
+
+            // without terminals to insert, every error is a deletion
+
+            switch (table.terminalCount == 1 ? 0 : random.nextInt(3)) {
+
+                case 0:
+                    // deletion
+                    break;
+
+                case 1: {
+                    // insertion before the token
+
+                    int inserted = randomTerminal();
+
+                    resultIds[resultLength] = inserted;
+                    resultTokens[resultLength] = createToken(inserted);
+                    resultLength++;
+
+                    resultIds[resultLength] = tokenIds[i];
+                    resultTokens[resultLength] = tokens[i];
+                    resultLength++;
+
+                    break;
+
+                }
+
+                default: {
+                    // replacement by a different terminal, or deletion if there is none
+
+                    if (table.terminalCount == 2) {
+                        break;
+                    }
+
+                    int replacement = randomTerminal();
+
+                    while (replacement == tokenIds[i]) {
+                        replacement = randomTerminal();
+                    }
+
+                    resultIds[resultLength] = replacement;
+                    resultTokens[resultLength] = createToken(replacement);
+                    resultLength++;
+
+                    break;
+
+                }
+
+            }
+
+        }
+
+        // end of input
+        resultIds[resultLength] = 0;
+        resultTokens[resultLength] = null;
+        resultLength++;
+
+        if (resultLength != resultIds.length) {
+            resultIds = Arrays.copyOf(resultIds, resultLength);
+            resultTokens = Arrays.copyOf(resultTokens, resultLength);
+        }
+
+        return new Sentence(resultIds, resultTokens, injectedErrors);
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package net.zerobone.knife.synthetic;
+
+public class SynthesizerOptions {
+
+    public int terminals = 32;
+
+    public int nonTerminals = 100;
+
+    // total number of productions, including the epsilon and left-recursive ones
+    public int productions = 400;
+
+    // number of non-terminals that get an epsilon production
+    public int nullable = 10;
+
+    // number of disjoint left-recursive cycles, each through 1 to 3 non-terminals
+    public int leftRecursiveCycles = 0;
+
+    // average number of symbols in the body of a non-epsilon production
+    public double averageRhsLength = 3.0;
+
+    // whether the grammar has to be LL(1), epsilon productions causing conflicts are dropped
+    public boolean ll1 = false;
+
+    public long seed = 0;
+
+    public SynthesizerOptions() {}
+
+    /**
+     * @return message describing why the options cannot be satisfied or null
+     */
+    public String validate() {
+
+        if (terminals < 1) {
+            return "At least one terminal is required.";
+        }
+
+        if (nonTerminals < 1) {
+            return "At least one non-terminal is required.";
+        }
+
+        if (nullable < 0 || nullable > nonTerminals - leftRecursiveCycles) {
+            return "The number of nullable non-terminals has to be between 0 and the number of non-terminals not taking part in left-recursive cycles.";
+        }
+
+        if (leftRecursiveCycles < 0) {
+            return "The number of left-recursive cycles cannot be negative.";
+        }
+
+        if (ll1 && leftRecursiveCycles != 0) {
+            return "A grammar with left-recursive cycles cannot be LL(1).";
+        }
+
+        if (averageRhsLength < 1) {
+            return "The average right-hand side length has to be at least 1.";
+        }
+
+        // every non-terminal has one production of its own, plus the epsilon and cycle productions
+
+        if (productions < nonTerminals + nullable + leftRecursiveCycles) {
+            return "At least " + (nonTerminals + nullable + leftRecursiveCycles) + " productions are required for these options.";
+        }
+
+        // in an LL(1) grammar the productions of a non-terminal start with pairwise different terminals,
+        // and nullable non-terminals only get one production besides the epsilon one
+
+        long maxLl1Productions = (long)(nonTerminals - nullable) * terminals + 2L * nullable;
+
+        if (ll1 && productions > maxLl1Productions) {
+            return "An LL(1) grammar with " + nonTerminals + " non-terminals, " + nullable + " of them nullable, and " + terminals + " terminals has at most " + maxLl1Productions + " productions.";
+        }
+
+        return null;
+
+    }
+
+}
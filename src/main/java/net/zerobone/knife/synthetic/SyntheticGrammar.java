@@ -0,0 +1,170 @@
+package net.zerobone.knife.synthetic;
+
+import net.zerobone.knife.grammar.Grammar;
+import net.zerobone.knife.grammar.Production;
+import net.zerobone.knife.grammar.Symbol;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+public class SyntheticGrammar {
+
+    // productions of every non-terminal, non-terminal 0 is the start symbol
+    // terminals are encoded as t >= 0 and non-terminals as -(n + 1)
+    private final ArrayList<ArrayList<int[]>> productions;
+
+    private final int terminalCount;
+
+    SyntheticGrammar(ArrayList<ArrayList<int[]>> productions, int terminalCount) {
+        this.productions = productions;
+        this.terminalCount = terminalCount;
+    }
+
+    static boolean isTerminal(int symbol) {
+        return symbol >= 0;
+    }
+
+    static int nonTerminalSymbol(int nonTerminal) {
+        return -(nonTerminal + 1);
+    }
+
+    static int nonTerminalIndex(int symbol) {
+        return -symbol - 1;
+    }
+
+    public static String symbolName(int symbol) {
+        return isTerminal(symbol) ? "T" + symbol : "n" + nonTerminalIndex(symbol);
+    }
+
+    public int getTerminalCount() {
+        return terminalCount;
+    }
+
+    public int getNonTerminalCount() {
+        return productions.size();
+    }
+
+    public int getProductionCount() {
+
+        int count = 0;
+
+        for (ArrayList<int[]> nonTerminalProductions : productions) {
+            count += nonTerminalProductions.size();
+        }
+
+        return count;
+
+    }
+
+    public int getNullableCount() {
+
+        int count = 0;
+
+        for (ArrayList<int[]> nonTerminalProductions : productions) {
+
+            for (int[] body : nonTerminalProductions) {
+
+                if (body.length == 0) {
+                    count++;
+                    break;
+                }
+
+            }
+
+        }
+
+        return count;
+
+    }
+
+    public double getAverageRhsLength() {
+
+        long symbols = 0;
+
+        int bodies = 0;
+
+        for (ArrayList<int[]> nonTerminalProductions : productions) {
+
+            for (int[] body : nonTerminalProductions) {
+
+                if (body.length == 0) {
+                    continue;
+                }
+
+                symbols += body.length;
+                bodies++;
+
+            }
+
+        }
+
+        return bodies == 0 ? 0 : (double)symbols / bodies;
+
+    }
+
+    /**
+     * Writes the grammar in the knife grammar file syntax, the productions of the start symbol come first.
+     */
+    public void write(Writer writer) throws IOException {
+
+        for (int nonTerminal = 0; nonTerminal < productions.size(); nonTerminal++) {
+
+            String label = symbolName(nonTerminalSymbol(nonTerminal));
+
+            for (int[] body : productions.get(nonTerminal)) {
+
+                writer.write(label);
+                writer.write(" =");
+
+                for (int symbol : body) {
+                    writer.write(' ');
+                    writer.write(symbolName(symbol));
+                }
+
+                writer.write(";\n");
+
+            }
+
+        }
+
+    }
+
+    private static Production convertProduction(int[] body) {
+
+        Production production = new Production(null);
+
+        for (int symbol : body) {
+            production.append(new Symbol(symbolName(symbol), isTerminal(symbol), null));
+        }
+
+        return production;
+
+    }
+
+    public Grammar toGrammar() {
+
+        Grammar grammar = null;
+
+        for (int nonTerminal = 0; nonTerminal < productions.size(); nonTerminal++) {
+
+            String label = symbolName(nonTerminalSymbol(nonTerminal));
+
+            for (int[] body : productions.get(nonTerminal)) {
+
+                if (grammar == null) {
+                    grammar = new Grammar(label, convertProduction(body));
+                }
+                else {
+                    grammar.addProduction(label, convertProduction(body));
+                }
+
+            }
+
+        }
+
+        return grammar;
+
+    }
+
+}
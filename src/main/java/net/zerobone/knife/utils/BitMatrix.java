@@ -0,0 +1,121 @@
+package net.zerobone.knife.utils;
+
+public class BitMatrix {
+
+    private final int rows;
+
+    private final int columns;
+
+    // number of longs per row
+    private final int words;
+
+    // row after row, bit c of row r is bit (c & 63) of bits[r * words + (c >>> 6)]
+    private final long[] bits;
+
+    public BitMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        words = (columns + 63) >>> 6;
+        bits = new long[rows * words];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public void set(int row, int column) {
+        assert row < rows;
+        assert column < columns;
+        bits[row * words + (column >>> 6)] |= 1L << column;
+    }
+
+    public boolean get(int row, int column) {
+        assert row < rows;
+        assert column < columns;
+        return (bits[row * words + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    public void clearRow(int row) {
+
+        int offset = row * words;
+
+        for (int w = 0; w < words; w++) {
+            bits[offset + w] = 0;
+        }
+
+    }
+
+    public void copyRow(int row, BitMatrix source, int sourceRow) {
+
+        assert source.words == words;
+
+        System.arraycopy(source.bits, sourceRow * source.words, bits, row * words, words);
+
+    }
+
+    /**
+     * Adds the bits of a row of the source matrix, which has to have as many columns as this one.
+     * @return whether the row has changed
+     */
+    public boolean orRow(int row, BitMatrix source, int sourceRow) {
+
+        assert source.words == words;
+
+        int offset = row * words;
+
+        int sourceOffset = sourceRow * words;
+
+        long added = 0;
+
+        for (int w = 0; w < words; w++) {
+
+            long word = bits[offset + w];
+
+            long sourceWord = source.bits[sourceOffset + w];
+
+            added |= sourceWord & ~word;
+
+            bits[offset + w] = word | sourceWord;
+
+        }
+
+        return added != 0;
+
+    }
+
+    /**
+     * @return the first column set in the row starting from the given one, or -1 if there is none
+     */
+    public int nextSetColumn(int row, int fromColumn) {
+
+        if (fromColumn >= columns) {
+            return -1;
+        }
+
+        int offset = row * words;
+
+        int w = fromColumn >>> 6;
+
+        long word = bits[offset + w] & (-1L << fromColumn);
+
+        while (true) {
+
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+
+            if (++w == words) {
+                return -1;
+            }
+
+            word = bits[offset + w];
+
+        }
+
+    }
+
+}
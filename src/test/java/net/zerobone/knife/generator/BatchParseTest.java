@@ -0,0 +1,114 @@
+package net.zerobone.knife.generator;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchParseTest {
+
+    private static final String GRAMMAR = String.join("\n",
+        "%type list String",
+        "%type rest String",
+        "%type NUM String",
+        "list = NUM(n) rest(r); { v = n + r; }",
+        "rest = COMMA NUM(n) rest(r); { v = \",\" + n + r; }",
+        "rest = ; { v = \"\"; }"
+    );
+
+    private static final String EXPECTED = "1,2,3";
+
+    @Test
+    void tableNodes() throws Exception {
+        assertSplitBatchParses();
+    }
+
+    @Test
+    void tableFrames() throws Exception {
+        assertSplitBatchParses("--stack=frames");
+    }
+
+    @Test
+    void tableValues() throws Exception {
+        assertSplitBatchParses("--stack=values");
+    }
+
+    @Test
+    void recursiveDescent() throws Exception {
+
+        try (GeneratedParser generated = GeneratedParser.generate(GRAMMAR, "--backend=recursive-descent")) {
+
+            int[] tokenIds = tokenIds(generated);
+            Object[] tokens = tokens();
+
+            Class<?> parserClass = generated.load("Parser");
+            Method parse = parserClass.getMethod("parse", int[].class, Object[].class, int.class, int.class);
+
+            Object parser = parserClass.getConstructor().newInstance();
+
+            // the first half has no eof, so the parser cannot finish it
+
+            InvocationTargetException e = assertThrows(
+                InvocationTargetException.class,
+                () -> parse.invoke(parser, tokenIds, tokens, 0, 3)
+            );
+
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertFalse((Boolean)parserClass.getMethod("successfullyParsed").invoke(parser));
+
+            parse.invoke(parser, tokenIds, tokens, 0, tokenIds.length);
+
+            assertTrue((Boolean)parserClass.getMethod("successfullyParsed").invoke(parser));
+            assertEquals(EXPECTED, parserClass.getMethod("getValue").invoke(parser));
+
+        }
+
+    }
+
+    private static int[] tokenIds(GeneratedParser generated) throws ReflectiveOperationException {
+
+        int num = generated.terminal("NUM");
+        int comma = generated.terminal("COMMA");
+
+        return new int[] {num, comma, num, comma, num, 0};
+
+    }
+
+    private static Object[] tokens() {
+        return new Object[] {"1", null, "2", null, "3", null};
+    }
+
+    private static void assertSplitBatchParses(String... options) throws Exception {
+
+        try (GeneratedParser generated = GeneratedParser.generate(GRAMMAR, options)) {
+
+            int[] tokenIds = tokenIds(generated);
+            Object[] tokens = tokens();
+
+            Class<?> parserClass = generated.load("Parser");
+            Method parse = parserClass.getMethod("parse", int[].class, Object[].class, int.class, int.class);
+
+            // every split point, including empty slices at both ends
+
+            for (int split = 0; split <= tokenIds.length; split++) {
+
+                Object parser = parserClass.getConstructor().newInstance();
+
+                parse.invoke(parser, tokenIds, tokens, 0, split);
+                parse.invoke(parser, tokenIds, tokens, split, tokenIds.length - split);
+
+                assertTrue((Boolean)parserClass.getMethod("successfullyParsed").invoke(parser), "split at " + split);
+                assertEquals(EXPECTED, parserClass.getMethod("getValue").invoke(parser), "split at " + split);
+
+            }
+
+        }
+
+    }
+
+}
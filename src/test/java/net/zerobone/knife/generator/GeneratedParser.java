@@ -0,0 +1,151 @@
+package net.zerobone.knife.generator;
+
+import net.zerobone.knife.Knife;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parser generated by knife from a grammar source and compiled into a temporary directory.
+ */
+final class GeneratedParser implements AutoCloseable {
+
+    static final String PACKAGE_NAME = "net.zerobone.knife.test";
+
+    private final Path directory;
+
+    private final URLClassLoader loader;
+
+    private GeneratedParser(Path directory, URLClassLoader loader) {
+        this.directory = directory;
+        this.loader = loader;
+    }
+
+    /**
+     * Runs knife with the options on the grammar and compiles the generated files.
+     */
+    static GeneratedParser generate(String grammar, String... options) throws IOException {
+
+        Path directory = Files.createTempDirectory("knife");
+
+        Path grammarFile = directory.resolve("grammar.kn");
+
+        Files.write(grammarFile, grammar.getBytes(StandardCharsets.UTF_8));
+
+        ArrayList<String> arguments = new ArrayList<>(Arrays.asList(options));
+
+        arguments.add("--package=" + PACKAGE_NAME);
+        arguments.add("--output=" + directory);
+        arguments.add(grammarFile.toString());
+
+        Knife.main(arguments.toArray(new String[0]));
+
+        assertTrue(Files.exists(directory.resolve("Parser.java")), "knife did not generate a parser");
+
+        return compile(directory);
+
+    }
+
+    /**
+     * Generates the parser of the context, whose output directory is replaced by a temporary one, and compiles it.
+     */
+    static GeneratedParser generate(GeneratorContext context) throws IOException {
+
+        Path directory = Files.createTempDirectory("knife");
+
+        context.options.outputDirectory = directory.toString();
+
+        Generator.generate(context);
+
+        return compile(directory);
+
+    }
+
+    /**
+     * Compiles the Java files in the directory with all lint warnings as errors.
+     */
+    static GeneratedParser compile(Path directory) throws IOException {
+
+        Path classes = directory.resolve("classes");
+
+        Files.createDirectory(classes);
+
+        ArrayList<String> compilerArguments = new ArrayList<>();
+
+        compilerArguments.add("-Xlint:all");
+        compilerArguments.add("-Werror");
+        compilerArguments.add("-d");
+        compilerArguments.add(classes.toString());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files
+                .filter(file -> file.toString().endsWith(".java"))
+                .forEach(file -> compilerArguments.add(file.toString()));
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        assertEquals(0, compiler.run(null, null, null, compilerArguments.toArray(new String[0])), "the generated parser does not compile");
+
+        return new GeneratedParser(directory, new URLClassLoader(new URL[] {classes.toUri().toURL()}));
+
+    }
+
+    Class<?> load(String simpleName) throws ClassNotFoundException {
+        return loader.loadClass(PACKAGE_NAME + "." + simpleName);
+    }
+
+    int terminal(String name) throws ReflectiveOperationException {
+        return load("Parser").getField("T_" + name).getInt(null);
+    }
+
+    /**
+     * @param tokenIds ids of the tokens, ending with T_EOF
+     * @return TokenSource reading the tokens once
+     */
+    Object tokenSource(int[] tokenIds, Object[] tokens) throws ClassNotFoundException {
+
+        int[] cursor = {-1};
+
+        return Proxy.newProxyInstance(loader, new Class<?>[] {load("TokenSource")}, (proxy, method, args) -> {
+
+            switch (method.getName()) {
+                case "next":
+                    cursor[0] = Math.min(cursor[0] + 1, tokenIds.length - 1);
+                    return tokenIds[cursor[0]];
+                case "token":
+                    return tokens[cursor[0]];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+
+        });
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        loader.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+
+    }
+
+}
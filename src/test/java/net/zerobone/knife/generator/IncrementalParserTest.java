@@ -0,0 +1,477 @@
+package net.zerobone.knife.generator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalParserTest {
+
+    // right recursive statement lists keep the stack deep,
+    // the optional size of a block has a primitive type
+    private static final String GRAMMAR = String.join("\n",
+        "%type size int",
+        "%type NUM String",
+        "program = stmts(s); { v = s; }",
+        "stmts = stmt(a) stmts(b); { v = new Object[] {a, b}; }",
+        "stmts = ; { v = null; }",
+        "stmt = NUM(n) SEMI; { v = n; }",
+        "stmt = LB stmts(s) RB size(k); { v = new Object[] {s, k}; }",
+        "size = HASH NUM(n); { v = Integer.parseInt(n); }",
+        "size = ; { v = -1; }"
+    );
+
+    private static final int INTERVAL = 16;
+
+    private static final int EDITS = 300;
+
+    @Test
+    void nodes() throws Exception {
+        assertMatchesFullParse();
+    }
+
+    @Test
+    void frames() throws Exception {
+        assertMatchesFullParse("--stack=frames");
+    }
+
+    @Test
+    void values() throws Exception {
+        assertMatchesFullParse("--stack=values");
+    }
+
+    @Test
+    void valuesWithListener() throws Exception {
+        assertMatchesFullParse("--stack=values", "--listener");
+    }
+
+    @Test
+    void nodesReuseTheRestOfTheTree() throws Exception {
+        assertReusesTail();
+    }
+
+    @Test
+    void framesReuseTheRestOfTheTree() throws Exception {
+        assertReusesTail("--stack=frames");
+    }
+
+    @Test
+    void valuesReuseTheRestOfTheValues() throws Exception {
+        assertReusesTail("--stack=values");
+    }
+
+    @Test
+    void nothingIsGeneratedWithoutTheOption() throws Exception {
+
+        for (String stack : new String[] {"--stack=nodes", "--stack=frames", "--stack=values"}) {
+
+            try (GeneratedParser generated = GeneratedParser.generate(GRAMMAR, stack)) {
+
+                assertThrows(ClassNotFoundException.class, () -> generated.load("IncrementalParser"));
+
+                for (Field field : generated.load("Parser").getDeclaredFields()) {
+                    assertFalse(field.getName().startsWith("spine"), field.getName());
+                }
+
+                for (Method method : generated.load("Parser").getDeclaredMethods()) {
+                    assertFalse(method.getName().equals("checkpoint") || method.getName().equals("splice"), method.getName());
+                }
+
+                for (Field field : generated.load("ParseNode").getDeclaredFields()) {
+                    assertFalse(field.getName().equals("spine"), field.getName());
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Token buffer of the test, always ending with T_EOF.
+     */
+    private static final class Buffer {
+
+        final ArrayList<Integer> ids = new ArrayList<>();
+
+        final ArrayList<Object> tokens = new ArrayList<>();
+
+        final int num;
+        final int semi;
+        final int lb;
+        final int rb;
+        final int hash;
+
+        private int counter;
+
+        Buffer(GeneratedParser generated) throws ReflectiveOperationException {
+            num = generated.terminal("NUM");
+            semi = generated.terminal("SEMI");
+            lb = generated.terminal("LB");
+            rb = generated.terminal("RB");
+            hash = generated.terminal("HASH");
+        }
+
+        String number() {
+            return String.valueOf(counter++);
+        }
+
+        void statement(Random random, int depth, List<Integer> ids, List<Object> tokens) {
+
+            if (depth < 3 && random.nextInt(6) == 0) {
+
+                ids.add(lb);
+                tokens.add("{");
+
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    statement(random, depth + 1, ids, tokens);
+                }
+
+                ids.add(rb);
+                tokens.add("}");
+
+                if (random.nextBoolean()) {
+                    ids.add(hash);
+                    tokens.add("#");
+                    ids.add(num);
+                    tokens.add(number());
+                }
+
+                return;
+
+            }
+
+            ids.add(num);
+            tokens.add(number());
+            ids.add(semi);
+            tokens.add(";");
+
+        }
+
+        int[] idArray() {
+            return ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        Object[] tokenArray() {
+            return tokens.toArray();
+        }
+
+        int length() {
+            return ids.size();
+        }
+
+        /**
+         * Replaces the removed tokens starting at start.
+         */
+        void edit(int start, int removed, List<Integer> newIds, List<?> newTokens) {
+            ids.subList(start, start + removed).clear();
+            tokens.subList(start, start + removed).clear();
+            ids.addAll(start, newIds);
+            tokens.addAll(start, newTokens);
+        }
+
+    }
+
+    private static final class Incremental {
+
+        final Object parser;
+
+        final Method reparse;
+
+        Incremental(GeneratedParser generated) throws ReflectiveOperationException {
+            Class<?> incrementalClass = generated.load("IncrementalParser");
+            parser = incrementalClass.getConstructor(int.class).newInstance(INTERVAL);
+            reparse = incrementalClass.getMethod("reparse", int[].class, Object[].class, int.class, int.class, int.class, int.class);
+        }
+
+        void parse(Buffer buffer) throws ReflectiveOperationException {
+            parser.getClass().getMethod("parse", int[].class, Object[].class, int.class)
+                .invoke(parser, buffer.idArray(), buffer.tokenArray(), buffer.length());
+        }
+
+        void reparse(Buffer buffer, int start, int removed, int inserted) throws ReflectiveOperationException {
+            reparse.invoke(parser, buffer.idArray(), buffer.tokenArray(), buffer.length(), start, removed, inserted);
+        }
+
+        Object value() throws ReflectiveOperationException {
+            return parser.getClass().getMethod("getValue").invoke(parser);
+        }
+
+    }
+
+    private static Buffer document(GeneratedParser generated, Random random, int statements) throws ReflectiveOperationException {
+
+        Buffer buffer = new Buffer(generated);
+
+        for (int i = 0; i < statements; i++) {
+            buffer.statement(random, 0, buffer.ids, buffer.tokens);
+        }
+
+        buffer.ids.add(0);
+        buffer.tokens.add(null);
+
+        return buffer;
+
+    }
+
+    /**
+     * @return the outcome of the parser as a string, compared by equality of the values
+     */
+    private static String describe(Object parser) throws ReflectiveOperationException {
+
+        StringBuilder builder = new StringBuilder();
+
+        boolean success = (Boolean)parser.getClass().getMethod("successfullyParsed").invoke(parser);
+
+        builder.append(success);
+
+        if (success) {
+            builder.append(' ').append(Arrays.deepToString(new Object[] {parser.getClass().getMethod("getValue").invoke(parser)}));
+        }
+
+        Object errors = parser.getClass().getMethod("getErrors").invoke(parser);
+
+        for (int i = 0; i < Array.getLength(errors); i++) {
+            Object error = Array.get(errors, i);
+            builder
+                .append(" error ")
+                .append(error.getClass().getField("expected").get(error))
+                .append(' ')
+                .append(error.getClass().getField("got").get(error))
+                .append(' ')
+                .append(error.getClass().getField("token").get(error));
+        }
+
+        return builder.toString();
+
+    }
+
+    private static String fullParse(GeneratedParser generated, Buffer buffer) throws ReflectiveOperationException {
+
+        Class<?> parserClass = generated.load("Parser");
+
+        Object parser = parserClass.getConstructor().newInstance();
+
+        parserClass.getMethod("parse", int[].class, Object[].class, int.class, int.class)
+            .invoke(parser, buffer.idArray(), buffer.tokenArray(), 0, buffer.length());
+
+        return describe(parser);
+
+    }
+
+    private static GeneratedParser generate(String... options) throws IOException {
+
+        String[] arguments = Arrays.copyOf(options, options.length + 1);
+
+        arguments[options.length] = "--incremental";
+
+        return GeneratedParser.generate(GRAMMAR, arguments);
+
+    }
+
+    private static void assertMatchesFullParse(String... options) throws Exception {
+
+        try (GeneratedParser generated = generate(options)) {
+
+            Random random = new Random(EDITS);
+
+            Buffer buffer = document(generated, random, 60);
+
+            Incremental incremental = new Incremental(generated);
+
+            incremental.parse(buffer);
+
+            assertEquals(fullParse(generated, buffer), describe(incremental.parser));
+
+            // the last valid buffer, so that errors are fixed again
+            ArrayList<Integer> validIds = new ArrayList<>(buffer.ids);
+            ArrayList<Object> validTokens = new ArrayList<>(buffer.tokens);
+
+            for (int e = 0; e < EDITS; e++) {
+
+                // the eof token is never edited
+                int length = buffer.length() - 1;
+
+                int start = random.nextInt(length + 1);
+                int removed = 0;
+
+                ArrayList<Integer> newIds = new ArrayList<>();
+                ArrayList<Object> newTokens = new ArrayList<>();
+
+                switch (random.nextInt(6)) {
+
+                    case 0:
+                        // a different number, the stack stays the same
+                        if (buffer.ids.get(Math.min(start, length - 1)) == buffer.num) {
+                            start = Math.min(start, length - 1);
+                            removed = 1;
+                            newIds.add(buffer.num);
+                            newTokens.add(buffer.number());
+                        }
+                        break;
+
+                    case 1:
+                        // a new statement after a complete one
+                        if (start > 0 && buffer.ids.get(start - 1) == buffer.semi) {
+                            buffer.statement(random, 1, newIds, newTokens);
+                        }
+                        break;
+
+                    case 2:
+                        // a statement is removed
+                        if (start + 1 < length && buffer.ids.get(start) == buffer.num && buffer.ids.get(start + 1) == buffer.semi) {
+                            removed = 2;
+                        }
+                        break;
+
+                    case 3: {
+                        // the edit introduces syntax errors
+                        int[] choices = {buffer.num, buffer.semi, buffer.lb, buffer.rb, buffer.hash};
+                        removed = Math.min(random.nextInt(3), length - start);
+                        for (int i = random.nextInt(3); i > 0; i--) {
+                            newIds.add(choices[random.nextInt(choices.length)]);
+                            newTokens.add(buffer.number());
+                        }
+                        break;
+                    }
+
+                    case 4: {
+                        // back to the last valid buffer, given as the difference to it
+                        int prefix = 0;
+                        while (prefix < length && prefix < validIds.size() - 1 && buffer.ids.get(prefix).equals(validIds.get(prefix)) && buffer.tokens.get(prefix) == validTokens.get(prefix)) {
+                            prefix++;
+                        }
+                        int suffix = 0;
+                        while (
+                            suffix < length - prefix && suffix < validIds.size() - 1 - prefix &&
+                            buffer.ids.get(length - 1 - suffix).equals(validIds.get(validIds.size() - 2 - suffix)) &&
+                            buffer.tokens.get(length - 1 - suffix) == validTokens.get(validIds.size() - 2 - suffix)
+                        ) {
+                            suffix++;
+                        }
+                        start = prefix;
+                        removed = length - prefix - suffix;
+                        newIds.addAll(validIds.subList(prefix, validIds.size() - 1 - suffix));
+                        newTokens.addAll(validTokens.subList(prefix, validIds.size() - 1 - suffix));
+                        break;
+                    }
+
+                    default:
+                        // a block is inserted at the end of a statement
+                        if (start > 0 && buffer.ids.get(start - 1) == buffer.semi) {
+                            newIds.add(buffer.lb);
+                            newTokens.add("{");
+                            buffer.statement(random, 2, newIds, newTokens);
+                            newIds.add(buffer.rb);
+                            newTokens.add("}");
+                        }
+                        break;
+
+                }
+
+                buffer.edit(start, removed, newIds, newTokens);
+
+                incremental.reparse(buffer, start, removed, newIds.size());
+
+                String expected = fullParse(generated, buffer);
+
+                assertEquals(expected, describe(incremental.parser), "edit " + e);
+
+                if (expected.startsWith("true")) {
+                    validIds = new ArrayList<>(buffer.ids);
+                    validTokens = new ArrayList<>(buffer.tokens);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * @return the statement list cells of the program, from the first one
+     */
+    private static ArrayList<Object> cells(Object program) {
+
+        ArrayList<Object> cells = new ArrayList<>();
+
+        for (Object cell = program; cell != null; cell = ((Object[])cell)[1]) {
+            cells.add(cell);
+        }
+
+        return cells;
+
+    }
+
+    private static void assertReusesTail(String... options) throws Exception {
+
+        try (GeneratedParser generated = generate(options)) {
+
+            Buffer buffer = new Buffer(generated);
+
+            for (int i = 0; i < 200; i++) {
+                buffer.ids.add(buffer.num);
+                buffer.tokens.add(buffer.number());
+                buffer.ids.add(buffer.semi);
+                buffer.tokens.add(";");
+            }
+
+            buffer.ids.add(0);
+            buffer.tokens.add(null);
+
+            Incremental incremental = new Incremental(generated);
+
+            incremental.parse(buffer);
+
+            ArrayList<Object> before = cells(incremental.value());
+
+            // the number of the third statement changes
+            buffer.edit(4, 1, Arrays.asList(buffer.num), Arrays.asList(buffer.number()));
+
+            incremental.reparse(buffer, 4, 1, 1);
+
+            assertEquals(fullParse(generated, buffer), describe(incremental.parser));
+
+            ArrayList<Object> after = cells(incremental.value());
+
+            assertEquals(before.size(), after.size());
+
+            // the statements after the first checkpoint following the edit come from the previous parse
+            for (int i = INTERVAL; i < after.size(); i++) {
+                assertSame(before.get(i), after.get(i), "statement " + i);
+            }
+
+            // a statement is inserted before the edited one, the later ones are moved by two tokens
+            buffer.edit(2, 0, Arrays.asList(buffer.num, buffer.semi), Arrays.asList(buffer.number(), ";"));
+
+            incremental.reparse(buffer, 2, 0, 2);
+
+            assertEquals(fullParse(generated, buffer), describe(incremental.parser));
+
+            ArrayList<Object> inserted = cells(incremental.value());
+
+            assertEquals(after.size() + 1, inserted.size());
+
+            for (int i = INTERVAL + 1; i < inserted.size(); i++) {
+                assertSame(after.get(i - 1), inserted.get(i), "statement " + i);
+            }
+
+            assertTrue((Boolean)incremental.parser.getClass().getMethod("successfullyParsed").invoke(incremental.parser));
+
+        }
+
+    }
+
+}
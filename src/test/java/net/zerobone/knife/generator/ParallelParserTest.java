@@ -0,0 +1,173 @@
+package net.zerobone.knife.generator;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ParallelParserTest {
+
+    private static final String GRAMMAR = String.join("\n",
+        "%type list String",
+        "%type rest String",
+        "%type NUM String",
+        "list = NUM(n) rest(r); { v = n + r; }",
+        "rest = COMMA NUM(n) rest(r); { v = \",\" + n + r; }",
+        "rest = ; { v = \"\"; }"
+    );
+
+    private static final int WORKERS = 4;
+
+    // many more documents than workers, so that every worker reuses its parsers
+    private static final int DOCUMENTS = 200;
+
+    @Test
+    void nodes() throws Exception {
+        assertMatchesSequentialParsing();
+    }
+
+    @Test
+    void frames() throws Exception {
+        assertMatchesSequentialParsing("--stack=frames");
+    }
+
+    @Test
+    void values() throws Exception {
+        assertMatchesSequentialParsing("--stack=values");
+    }
+
+    @Test
+    void valuesWithListener() throws Exception {
+        assertMatchesSequentialParsing("--stack=values", "--listener");
+    }
+
+    @Test
+    void compressedTable() throws Exception {
+        assertMatchesSequentialParsing("--stack=values", "--table=compressed");
+    }
+
+    @Test
+    void recursiveDescent() throws Exception {
+        assertMatchesSequentialParsing("--backend=recursive-descent");
+    }
+
+    private static void assertMatchesSequentialParsing(String... options) throws Exception {
+
+        try (GeneratedParser generated = GeneratedParser.generate(GRAMMAR, options)) {
+
+            int num = generated.terminal("NUM");
+            int comma = generated.terminal("COMMA");
+
+            Random random = new Random(DOCUMENTS);
+
+            ArrayList<int[]> tokenIds = new ArrayList<>();
+            ArrayList<Object[]> tokens = new ArrayList<>();
+
+            for (int d = 0; d < DOCUMENTS; d++) {
+
+                int numbers = 1 + random.nextInt(5);
+
+                int[] ids = new int[2 * numbers];
+                Object[] values = new Object[2 * numbers];
+
+                for (int i = 0; i < numbers; i++) {
+                    ids[2 * i] = num;
+                    values[2 * i] = String.valueOf(random.nextInt(1000));
+                    ids[2 * i + 1] = comma;
+                }
+
+                // the last comma becomes the end of input, every seventh document ends with two commas instead
+
+                if (d % 7 == 0 && numbers > 1) {
+                    ids[2 * numbers - 2] = comma;
+                }
+
+                ids[2 * numbers - 1] = 0;
+
+                tokenIds.add(ids);
+                tokens.add(values);
+
+            }
+
+            Class<?> tokenSource = generated.load("TokenSource");
+            Class<?> parserClass = generated.load("Parser");
+
+            String[] expected = new String[DOCUMENTS];
+
+            for (int d = 0; d < DOCUMENTS; d++) {
+
+                Object parser = parserClass.getConstructor().newInstance();
+
+                parserClass.getMethod("parseAll", tokenSource).invoke(parser, generated.tokenSource(tokenIds.get(d), tokens.get(d)));
+
+                expected[d] = describe(
+                    (Boolean)parserClass.getMethod("successfullyParsed").invoke(parser),
+                    parserClass.getMethod("getValue").invoke(parser),
+                    parserClass.getMethod("getErrors").invoke(parser)
+                );
+
+            }
+
+            ArrayList<Object> sources = new ArrayList<>();
+
+            for (int d = 0; d < DOCUMENTS; d++) {
+                sources.add(generated.tokenSource(tokenIds.get(d), tokens.get(d)));
+            }
+
+            Class<?> parallelParserClass = generated.load("ParallelParser");
+            Class<?> resultClass = generated.load("ParallelParser$Result");
+
+            ForkJoinPool pool = new ForkJoinPool(WORKERS);
+
+            Object[] results;
+
+            try {
+                Object parallelParser = parallelParserClass.getConstructor(ForkJoinPool.class).newInstance(pool);
+                results = (Object[])parallelParserClass.getMethod("parse", java.util.Collection.class).invoke(parallelParser, sources);
+            }
+            finally {
+                pool.shutdown();
+            }
+
+            String[] actual = new String[DOCUMENTS];
+
+            for (int d = 0; d < DOCUMENTS; d++) {
+                actual[d] = describe(
+                    (Boolean)resultClass.getMethod("successfullyParsed").invoke(results[d]),
+                    resultClass.getField("value").get(results[d]),
+                    resultClass.getField("errors").get(results[d])
+                );
+            }
+
+            assertArrayEquals(expected, actual);
+
+        }
+
+    }
+
+    private static String describe(boolean success, Object value, Object errors) throws ReflectiveOperationException {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(success).append(' ').append(value);
+
+        for (int i = 0; i < Array.getLength(errors); i++) {
+
+            Object error = Array.get(errors, i);
+
+            sb.append(' ')
+                .append(error.getClass().getField("expected").getInt(error))
+                .append('/')
+                .append(error.getClass().getField("got").getInt(error));
+
+        }
+
+        return sb.toString();
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package net.zerobone.knife.generator;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeSpec;
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.synthetic.GrammarSynthesizer;
+import net.zerobone.knife.synthetic.Sentence;
+import net.zerobone.knife.synthetic.SentenceGenerator;
+import net.zerobone.knife.synthetic.SynthesizerOptions;
+import org.junit.jupiter.api.Test;
+
+import javax.lang.model.element.Modifier;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableEncodingTest {
+
+    @Test
+    void packedArraysDecodeToTheirValues() throws Exception {
+
+        int[] values = new int[1500];
+
+        int[] special = {
+            0, -1, 1, 47, 48, 95, 96, '"', '\\', '\n', '\r', 0x2028, 0x7fef, 0x7ff0,
+            0xffff, -0x8000, Integer.MAX_VALUE, Integer.MIN_VALUE
+        };
+
+        System.arraycopy(special, 0, values, 0, special.length);
+
+        // the rest crosses the boundaries between the string constants
+        for (int i = special.length; i < values.length; i++) {
+            values[i] = (i * 7919) % 40000 - 20000;
+        }
+
+        TypeSpec tables = TypeSpec.classBuilder("Tables")
+            .addModifiers(Modifier.FINAL)
+            .addField(MetaGenerator.constructIntArray("values", values))
+            .addField(MetaGenerator.constructIntArray("empty", new int[0]))
+            .addMethod(MetaGenerator.constructUnpackMethod())
+            .build();
+
+        Path directory = Files.createTempDirectory("knife");
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(directory.resolve("Tables.java").toFile()))) {
+            JavaFile.builder(GeneratedParser.PACKAGE_NAME, tables).build().writeTo(writer);
+        }
+
+        try (GeneratedParser generated = GeneratedParser.compile(directory)) {
+
+            Field valuesField = generated.load("Tables").getDeclaredField("values");
+            Field emptyField = generated.load("Tables").getDeclaredField("empty");
+
+            valuesField.setAccessible(true);
+            emptyField.setAccessible(true);
+
+            assertArrayEquals(values, (int[])valuesField.get(null));
+            assertEquals(0, ((int[])emptyField.get(null)).length);
+
+        }
+
+    }
+
+    /**
+     * The tables of this grammar used to exceed the 64 KB limit of the static initializer.
+     */
+    private static ParsingTable largeTable() {
+
+        SynthesizerOptions options = new SynthesizerOptions();
+
+        options.terminals = 96;
+        options.nonTerminals = 300;
+        options.productions = 1200;
+        options.ll1 = true;
+
+        ParsingTable table = GrammarSynthesizer.synthesize(options).toGrammar().constructParsingTable();
+
+        assertEquals(0, table.conflicts.length);
+
+        return table;
+
+    }
+
+    private static void assertParsesLargeGrammar(GeneratorOptions.StackMode stack, GeneratorOptions.TableEncoding encoding) throws Exception {
+
+        ParsingTable table = largeTable();
+
+        GeneratorOptions options = new GeneratorOptions();
+
+        options.packageName = GeneratedParser.PACKAGE_NAME;
+        options.stack = stack;
+        options.table = encoding;
+
+        try (GeneratedParser generated = GeneratedParser.generate(new GeneratorContext(options.packageName, table, new HashMap<>(), options))) {
+
+            Class<?> parserClass = generated.load("Parser");
+
+            SentenceGenerator sentences = new SentenceGenerator(table, 0);
+
+            for (int i = 0; i < 20; i++) {
+
+                Sentence sentence = sentences.generate();
+
+                Object parser = parserClass.getConstructor().newInstance();
+
+                parserClass.getMethod("parseAll", generated.load("TokenSource"))
+                    .invoke(parser, generated.tokenSource(sentence.tokenIds, sentence.tokens));
+
+                assertTrue((Boolean)parserClass.getMethod("successfullyParsed").invoke(parser));
+
+            }
+
+        }
+
+    }
+
+    @Test
+    void largeGrammarWithDenseTable() throws Exception {
+        assertParsesLargeGrammar(GeneratorOptions.StackMode.NODES, GeneratorOptions.TableEncoding.DENSE);
+    }
+
+    @Test
+    void largeGrammarWithFrames() throws Exception {
+        assertParsesLargeGrammar(GeneratorOptions.StackMode.FRAMES, GeneratorOptions.TableEncoding.DENSE);
+    }
+
+    @Test
+    void largeGrammarWithCompressedTable() throws Exception {
+        assertParsesLargeGrammar(GeneratorOptions.StackMode.VALUES, GeneratorOptions.TableEncoding.COMPRESSED);
+    }
+
+}
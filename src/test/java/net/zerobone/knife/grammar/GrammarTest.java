@@ -0,0 +1,175 @@
+package net.zerobone.knife.grammar;
+
+import net.zerobone.knife.grammar.table.ParsingTable;
+import net.zerobone.knife.grammar.table.ParsingTableConflict;
+import net.zerobone.knife.grammar.table.ParsingTableProduction;
+import net.zerobone.knife.utils.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GrammarTest {
+
+    /**
+     * Builds a grammar from productions written as "label = symbols", the first one defines the start symbol.
+     */
+    private static Grammar grammar(String... productions) {
+
+        Grammar grammar = null;
+
+        for (String production : productions) {
+
+            String[] sides = production.split("=");
+
+            Production converted = new Production(null);
+
+            for (String symbol : sides[1].trim().split("\\s+")) {
+
+                if (symbol.isEmpty()) {
+                    continue;
+                }
+
+                converted.append(new Symbol(symbol, StringUtils.isTerminal(symbol), null));
+
+            }
+
+            if (grammar == null) {
+                grammar = new Grammar(sides[0].trim(), converted);
+            }
+            else {
+                grammar.addProduction(sides[0].trim(), converted);
+            }
+
+        }
+
+        return grammar;
+
+    }
+
+    /**
+     * @return the production in the cell written as "label -> symbols", or null if the cell holds no production
+     */
+    private static String action(ParsingTable table, String nonTerminal, String terminal) {
+
+        int cell = table.table[-table.mapping.mapKey(nonTerminal) - 1][table.mapping.mapKey(terminal)];
+
+        if (cell <= 0) {
+            return null;
+        }
+
+        ParsingTableProduction production = table.productionActions[cell - 1];
+
+        StringBuilder sb = new StringBuilder(production.label);
+
+        sb.append(" ->");
+
+        for (Symbol symbol : production.body) {
+            sb.append(' ');
+            sb.append(symbol.id);
+        }
+
+        return sb.toString();
+
+    }
+
+    @Test
+    void nonTerminalDefinedBeforeItsUseGetsItsOwnId() {
+
+        // b is new when its production is added, and so is c in its body
+        Grammar grammar = grammar(
+            "s = a",
+            "b = c",
+            "a = b",
+            "c = ID"
+        );
+
+        assertTrue(grammar.verify().isEmpty());
+
+        assertEquals(4, grammar.getNonTerminalCount());
+
+        ParsingTable table = grammar.constructParsingTable();
+
+        assertEquals(0, table.conflicts.length);
+
+        assertNotEquals(table.mapping.mapKey("b"), table.mapping.mapKey("c"));
+        assertEquals("b -> c", action(table, "b", "ID"));
+        assertEquals("c -> ID", action(table, "c", "ID"));
+
+    }
+
+    @Test
+    void productionStartingWithNonTerminalIsSelectedByFirstOfItsBody() {
+
+        Grammar grammar = grammar(
+            "s = a ID",
+            "a = b c",
+            "a = SEMI",
+            "b = ",
+            "b = LP",
+            "c = RP"
+        );
+
+        assertTrue(grammar.verify().isEmpty());
+
+        ParsingTable table = grammar.constructParsingTable();
+
+        assertEquals(0, table.conflicts.length);
+
+        assertEquals("a -> b c", action(table, "a", "LP"));
+        assertEquals("a -> b c", action(table, "a", "RP"));
+        assertEquals("a -> SEMI", action(table, "a", "SEMI"));
+
+    }
+
+    @Test
+    void nullableBodyIsSelectedByFollowOfItsLabel() {
+
+        Grammar grammar = grammar(
+            "s = a ID",
+            "a = b",
+            "b = ",
+            "b = LP"
+        );
+
+        assertTrue(grammar.verify().isEmpty());
+
+        ParsingTable table = grammar.constructParsingTable();
+
+        assertEquals(0, table.conflicts.length);
+
+        assertEquals("a -> b", action(table, "a", "LP"));
+        assertEquals("a -> b", action(table, "a", "ID"));
+        assertEquals("b ->", action(table, "b", "ID"));
+
+    }
+
+    @Test
+    void productionWrittenTwiceToTheSameCellIsNoConflict() {
+
+        // X is both in FIRST(b) and FOLLOW(a), so a -> b is written to the cell of X twice,
+        // only the choice between the productions of b is a conflict
+        Grammar grammar = grammar(
+            "s = a X",
+            "a = b",
+            "b = ",
+            "b = X"
+        );
+
+        assertTrue(grammar.verify().isEmpty());
+
+        ParsingTable table = grammar.constructParsingTable();
+
+        assertEquals("a -> b", action(table, "a", "X"));
+
+        assertEquals(1, table.conflicts.length);
+
+        ParsingTableConflict conflict = table.conflicts[0];
+
+        assertEquals("b", conflict.nonTerminal);
+        assertEquals("X", conflict.terminal);
+
+    }
+
+}